@@ -0,0 +1,107 @@
+package javax.measure;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * This class resolves the converters from any number of source units to a single target unit, and remembers them.
+ * Looking up a converter through {@link Unit#getConverterTo(Unit)} is relatively expensive (it walks the standard units
+ * and concatenates the converters), so code that converts many values should resolve each converter only once:
+ *
+ * <pre>
+ * ConversionCache&lt;Power&gt; cache = new ConversionCache&lt;Power&gt;(SI.WATT);
+ * double total = 0;
+ * for (Measurable&lt;Power&gt; power : powers) {
+ *     total += cache.convert(power);
+ * }
+ * </pre>
+ *
+ * Instances of this class are <b>not</b> thread-safe; use one instance per thread (or per task).
+ *
+ * @param <Q>
+ *            The quantity of the target unit (e.g. Power)
+ */
+public final class ConversionCache<Q extends Quantity> {
+    private final Unit<Q> targetUnit;
+    private final Map<Unit<?>, UnitConverter> converters = new HashMap<Unit<?>, UnitConverter>();
+
+    private Unit<?> lastUnit;
+    private UnitConverter lastConverter;
+
+    /**
+     * Creates a new cache that converts to the given unit.
+     *
+     * @param targetUnit
+     *            The unit in which all converted values will be stated.
+     */
+    public ConversionCache(Unit<Q> targetUnit) {
+        if (targetUnit == null) {
+            throw new NullPointerException("targetUnit");
+        }
+        this.targetUnit = targetUnit;
+        lastUnit = targetUnit;
+        lastConverter = UnitConverter.IDENTITY;
+    }
+
+    /**
+     * @return The unit in which all converted values are stated.
+     */
+    public Unit<Q> getTargetUnit() {
+        return targetUnit;
+    }
+
+    /**
+     * @param sourceUnit
+     *            The unit in which the values are stated.
+     * @return The converter from the given unit to the {@link #getTargetUnit() target unit}.
+     */
+    public UnitConverter converterFrom(Unit<Q> sourceUnit) {
+        if (sourceUnit == lastUnit) {
+            return lastConverter;
+        }
+        UnitConverter converter = converters.get(sourceUnit);
+        if (converter == null) {
+            converter = sourceUnit.getConverterTo(targetUnit);
+            converters.put(sourceUnit, converter);
+        }
+        lastUnit = sourceUnit;
+        lastConverter = converter;
+        return converter;
+    }
+
+    /**
+     * Converts a value to the {@link #getTargetUnit() target unit}.
+     *
+     * @param value
+     *            The value to convert.
+     * @param sourceUnit
+     *            The unit in which the value is stated.
+     * @return The value stated in the target unit.
+     */
+    public double convert(double value, Unit<Q> sourceUnit) {
+        return converterFrom(sourceUnit).convert(value);
+    }
+
+    /**
+     * Returns the value of the measurable stated in the {@link #getTargetUnit() target unit}. For {@link Measure}s the
+     * value is read in their own unit (which needs no conversion) and then converted with the cached converter. Other
+     * {@link Measurable}s are asked for the value directly.
+     *
+     * @param measurable
+     *            The measurable of which the value is needed.
+     * @return The value stated in the target unit.
+     */
+    public double convert(Measurable<Q> measurable) {
+        if (measurable instanceof Measure) {
+            Measure<?, Q> measure = (Measure<?, Q>) measurable;
+            Unit<Q> unit = measure.getUnit();
+            return converterFrom(unit).convert(measure.doubleValue(unit));
+        } else {
+            return measurable.doubleValue(targetUnit);
+        }
+    }
+}
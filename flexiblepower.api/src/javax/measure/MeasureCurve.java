@@ -0,0 +1,493 @@
+package javax.measure;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * This class represents a piecewise-linear curve of measures, for example a bid curve that gives the power demand for
+ * each price:
+ *
+ * <pre>
+ * MeasureCurve&lt;MoneyFlow, Power&gt; bid = MeasureCurve.valueOf(new double[] { 0, 10, 20 },
+ *                                                              new double[] { 2000, 2000, 0 },
+ *                                                              EUR_PER_HOUR,
+ *                                                              WATT);
+ * MeasureCurve&lt;MoneyFlow, Power&gt; aggregated = MeasureCurve.aggregate(bids, pool);
+ * double price = aggregated.solve(0); // The equilibrium price
+ * </pre>
+ *
+ * The curve is defined by its breakpoints, which are stored in two primitive arrays in one x-unit and one y-unit. The
+ * x-values must be strictly increasing. Between breakpoints the curve is interpolated linearly and outside of its
+ * breakpoints the curve is extended with the first or last y-value.
+ *
+ * Instances of this class are immutable.
+ *
+ * @param <X>
+ *            The quantity on the x-axis (e.g. MoneyFlow)
+ * @param <Y>
+ *            The quantity on the y-axis (e.g. Power)
+ */
+public final class MeasureCurve<X extends Quantity, Y extends Quantity> implements Serializable {
+    private static final long serialVersionUID = 4925137340316785482L;
+
+    /**
+     * The number of curves below which an aggregation is no longer split into parallel tasks.
+     */
+    private static final int AGGREGATION_THRESHOLD = 16;
+
+    /**
+     * Holds the pool that is used when no {@link ForkJoinPool} is given. It is only created when it is first needed.
+     */
+    private static final class DefaultPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * Creates a new curve from the given breakpoints. The arrays are copied.
+     *
+     * @param xs
+     *            The x-values of the breakpoints, which must be strictly increasing.
+     * @param ys
+     *            The y-values of the breakpoints.
+     * @param xUnit
+     *            The unit of the x-values.
+     * @param yUnit
+     *            The unit of the y-values.
+     * @param <X>
+     *            The quantity on the x-axis
+     * @param <Y>
+     *            The quantity on the y-axis
+     * @return The new curve.
+     * @throws IllegalArgumentException
+     *             When the arrays are empty, have different lengths or the x-values are not strictly increasing.
+     */
+    public static <X extends Quantity, Y extends Quantity> MeasureCurve<X, Y>
+            valueOf(double[] xs, double[] ys, Unit<X> xUnit, Unit<Y> yUnit) {
+        if (xs.length == 0 || xs.length != ys.length) {
+            throw new IllegalArgumentException("The curve needs an equal, non-zero number of x and y values");
+        }
+        for (int i = 0; i < xs.length; i++) {
+            if (Double.isNaN(xs[i]) || Double.isNaN(ys[i]) || (i > 0 && xs[i - 1] >= xs[i])) {
+                throw new IllegalArgumentException("The x-values must be strictly increasing numbers");
+            }
+        }
+        return new MeasureCurve<X, Y>(xs.clone(), ys.clone(), xUnit, yUnit);
+    }
+
+    /**
+     * Creates a horizontal curve.
+     *
+     * @param y
+     *            The y-value of the curve everywhere.
+     * @param xUnit
+     *            The unit of the x-values.
+     * @param yUnit
+     *            The unit of the y-values.
+     * @param <X>
+     *            The quantity on the x-axis
+     * @param <Y>
+     *            The quantity on the y-axis
+     * @return The new curve.
+     */
+    public static <X extends Quantity, Y extends Quantity> MeasureCurve<X, Y>
+            constant(double y, Unit<X> xUnit, Unit<Y> yUnit) {
+        return new MeasureCurve<X, Y>(new double[] { 0 }, new double[] { y }, xUnit, yUnit);
+    }
+
+    /**
+     * Aggregates the curves using the default pool.
+     *
+     * @see #aggregate(Collection, ForkJoinPool)
+     * @param curves
+     *            The curves that will be summed, which must not be empty.
+     * @param <X>
+     *            The quantity on the x-axis
+     * @param <Y>
+     *            The quantity on the y-axis
+     * @return The sum of all the curves.
+     */
+    public static <X extends Quantity, Y extends Quantity> MeasureCurve<X, Y>
+            aggregate(Collection<? extends MeasureCurve<X, Y>> curves) {
+        return aggregate(curves, null);
+    }
+
+    /**
+     * Aggregates the curves, such that the y-value of the result is the sum of the y-values of the curves for every x.
+     * The breakpoints of the result are the union of the breakpoints of all curves. The curves are merged pairwise in a
+     * balanced tree, of which the branches are merged in parallel on the given pool. The result is stated in the units
+     * of the first curve.
+     *
+     * @param curves
+     *            The curves that will be summed, which must not be empty.
+     * @param pool
+     *            The pool on which large aggregations are done, or <code>null</code> to use a default pool.
+     * @param <X>
+     *            The quantity on the x-axis
+     * @param <Y>
+     *            The quantity on the y-axis
+     * @return The sum of all the curves.
+     * @throws IllegalArgumentException
+     *             When there are no curves.
+     */
+    public static <X extends Quantity, Y extends Quantity> MeasureCurve<X, Y>
+            aggregate(Collection<? extends MeasureCurve<X, Y>> curves, ForkJoinPool pool) {
+        if (curves.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one curve to aggregate");
+        }
+        Object[] array = curves.toArray();
+        AggregationTask<X, Y> task = new AggregationTask<X, Y>(array, 0, array.length);
+        if (array.length <= AGGREGATION_THRESHOLD) {
+            return task.invoke();
+        }
+        return (pool == null ? DefaultPool.INSTANCE : pool).invoke(task);
+    }
+
+    private final double[] xs;
+    private final double[] ys;
+    private final Unit<X> xUnit;
+    private final Unit<Y> yUnit;
+    /**
+     * 1 when the y-values are non-decreasing, -1 when they are non-increasing (and not constant) and 0 otherwise.
+     */
+    private final int direction;
+
+    private MeasureCurve(double[] xs, double[] ys, Unit<X> xUnit, Unit<Y> yUnit) {
+        this.xs = xs;
+        this.ys = ys;
+        this.xUnit = xUnit;
+        this.yUnit = yUnit;
+
+        boolean increasing = true, decreasing = true;
+        for (int i = 1; i < ys.length; i++) {
+            increasing &= ys[i - 1] <= ys[i];
+            decreasing &= ys[i - 1] >= ys[i];
+        }
+        direction = increasing ? 1 : (decreasing ? -1 : 0);
+    }
+
+    /**
+     * @return The unit of the x-values.
+     */
+    public Unit<X> getXUnit() {
+        return xUnit;
+    }
+
+    /**
+     * @return The unit of the y-values.
+     */
+    public Unit<Y> getYUnit() {
+        return yUnit;
+    }
+
+    /**
+     * @return The number of breakpoints.
+     */
+    public int size() {
+        return xs.length;
+    }
+
+    /**
+     * @param index
+     *            The index of the breakpoint.
+     * @return The x-value of the breakpoint, stated in {@link #getXUnit()}.
+     */
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @param index
+     *            The index of the breakpoint.
+     * @return The y-value of the breakpoint, stated in {@link #getYUnit()}.
+     */
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * Evaluates the curve in O(log n) time.
+     *
+     * @param x
+     *            The x-value, stated in {@link #getXUnit()}.
+     * @return The y-value at x, stated in {@link #getYUnit()}.
+     */
+    public double valueAt(double x) {
+        int n = xs.length;
+        if (x <= xs[0]) {
+            return ys[0];
+        } else if (x >= xs[n - 1]) {
+            return ys[n - 1];
+        }
+        int ix = Arrays.binarySearch(xs, x);
+        if (ix >= 0) {
+            return ys[ix];
+        }
+        int hi = -ix - 1;
+        return interpolate(xs[hi - 1], ys[hi - 1], xs[hi], ys[hi], x);
+    }
+
+    /**
+     * Evaluates the curve in O(log n) time.
+     *
+     * @param x
+     *            The x-value.
+     * @return The y-value at x.
+     */
+    public Measure<Double, Y> valueAt(Measurable<X> x) {
+        return Measure.valueOf(valueAt(x.doubleValue(xUnit)), yUnit);
+    }
+
+    /**
+     * Returns the curve equivalent to this one but stated in the specified units.
+     *
+     * @param xUnit
+     *            The new unit of the x-values.
+     * @param yUnit
+     *            The new unit of the y-values.
+     * @return The converted curve.
+     */
+    public MeasureCurve<X, Y> to(Unit<X> xUnit, Unit<Y> yUnit) {
+        UnitConverter xConverter = this.xUnit.getConverterTo(xUnit);
+        UnitConverter yConverter = this.yUnit.getConverterTo(yUnit);
+        if (xConverter == UnitConverter.IDENTITY && yConverter == UnitConverter.IDENTITY) {
+            return this;
+        }
+        double[] newXs = new double[xs.length];
+        double[] newYs = new double[ys.length];
+        for (int i = 0; i < xs.length; i++) {
+            newXs[i] = xConverter.convert(xs[i]);
+            newYs[i] = yConverter.convert(ys[i]);
+        }
+        return new MeasureCurve<X, Y>(newXs, newYs, xUnit, yUnit);
+    }
+
+    /**
+     * Returns this curve with all y-values multiplied by the given factor.
+     *
+     * @param factor
+     *            The scaling factor.
+     * @return The scaled curve.
+     */
+    public MeasureCurve<X, Y> scale(double factor) {
+        double[] newYs = new double[ys.length];
+        for (int i = 0; i < ys.length; i++) {
+            newYs[i] = factor * ys[i];
+        }
+        return new MeasureCurve<X, Y>(xs, newYs, xUnit, yUnit);
+    }
+
+    /**
+     * Returns the sum of this curve and the specified one, stated in the units of this curve. The breakpoints of the
+     * result are the union of the breakpoints of both curves, which are merged in O(n + m) time.
+     *
+     * @param other
+     *            The curve to add.
+     * @return <code>this + other</code>
+     */
+    public MeasureCurve<X, Y> add(MeasureCurve<X, Y> other) {
+        return merge(other, 1);
+    }
+
+    /**
+     * Returns the difference of this curve and the specified one, stated in the units of this curve.
+     *
+     * @param other
+     *            The curve to subtract.
+     * @return <code>this - other</code>
+     */
+    public MeasureCurve<X, Y> subtract(MeasureCurve<X, Y> other) {
+        return merge(other, -1);
+    }
+
+    /**
+     * Finds the first x at which the curve reaches the given y-value. For monotonic curves (such as bid curves) this
+     * takes O(log n) time, otherwise the breakpoints are scanned.
+     *
+     * @param y
+     *            The y-value, stated in {@link #getYUnit()}.
+     * @return The smallest x-value, stated in {@link #getXUnit()}, at which the curve equals y, or {@link Double#NaN}
+     *         when the curve never reaches y. When the curve starts (or ends) at y, the first (or last) breakpoint is
+     *         returned.
+     */
+    public double solve(double y) {
+        int n = ys.length;
+        if (direction != 0) {
+            // Find the first breakpoint that is at or beyond y in the direction of the curve
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (direction * ys[mid] >= direction * y) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+            }
+            if (lo == n || (lo == 0 && ys[0] != y)) {
+                return Double.NaN;
+            } else if (lo == 0 || ys[lo] == y) {
+                return xs[lo];
+            }
+            return interpolate(ys[lo - 1], xs[lo - 1], ys[lo], xs[lo], y);
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (ys[i] == y) {
+                return xs[i];
+            } else if (i > 0 && (ys[i - 1] < y) != (ys[i] < y)) {
+                return interpolate(ys[i - 1], xs[i - 1], ys[i], xs[i], y);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Finds the first x at which the curve reaches the given value.
+     *
+     * @see #solve(double)
+     * @param y
+     *            The y-value.
+     * @return The smallest x at which the curve equals y, or <code>null</code> when the curve never reaches y.
+     */
+    public Measure<Double, X> solve(Measurable<Y> y) {
+        double x = solve(y.doubleValue(yUnit));
+        return Double.isNaN(x) ? null : Measure.valueOf(x, xUnit);
+    }
+
+    /**
+     * Finds the first x at which this curve intersects with the other curve. For example, for a demand and a supply
+     * curve this gives the equilibrium.
+     *
+     * @param other
+     *            The other curve.
+     * @return The smallest x-value, stated in {@link #getXUnit()}, at which both curves have the same y-value, or
+     *         {@link Double#NaN} when they do not intersect.
+     */
+    public double intersect(MeasureCurve<X, Y> other) {
+        return subtract(other).solve(0);
+    }
+
+    private MeasureCurve<X, Y> merge(MeasureCurve<X, Y> other, double factor) {
+        MeasureCurve<X, Y> that = other.to(xUnit, yUnit);
+        double[] thatXs = that.xs, thatYs = that.ys;
+        int n = xs.length, m = thatXs.length;
+
+        double[] newXs = new double[n + m];
+        double[] newYs = new double[n + m];
+        int i = 0, j = 0, size = 0;
+        while (i < n || j < m) {
+            double x;
+            if (j == m || (i < n && xs[i] < thatXs[j])) {
+                x = xs[i];
+                newYs[size] = ys[i] + factor * that.valueAtMerge(j, x);
+                i++;
+            } else if (i == n || thatXs[j] < xs[i]) {
+                x = thatXs[j];
+                newYs[size] = valueAtMerge(i, x) + factor * thatYs[j];
+                j++;
+            } else {
+                x = xs[i];
+                newYs[size] = ys[i] + factor * thatYs[j];
+                i++;
+                j++;
+            }
+            newXs[size++] = x;
+        }
+        if (size < n + m) {
+            newXs = Arrays.copyOf(newXs, size);
+            newYs = Arrays.copyOf(newYs, size);
+        }
+        return new MeasureCurve<X, Y>(newXs, newYs, xUnit, yUnit);
+    }
+
+    /**
+     * Evaluates the curve at x during a merge, where <code>next</code> is the index of the first breakpoint beyond x.
+     * This takes O(1) time.
+     */
+    private double valueAtMerge(int next, double x) {
+        if (next == 0) {
+            return ys[0];
+        } else if (next == xs.length) {
+            return ys[xs.length - 1];
+        }
+        return interpolate(xs[next - 1], ys[next - 1], xs[next], ys[next], x);
+    }
+
+    private static double interpolate(double x0, double y0, double x1, double y1, double x) {
+        return y0 + (y1 - y0) * ((x - x0) / (x1 - x0));
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(xs) + Arrays.hashCode(ys)) + xUnit.hashCode() + yUnit.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof MeasureCurve)) {
+            return false;
+        }
+        MeasureCurve<?, ?> other = (MeasureCurve<?, ?>) obj;
+        return xUnit.equals(other.xUnit) && yUnit.equals(other.yUnit)
+               && Arrays.equals(xs, other.xs)
+               && Arrays.equals(ys, other.ys);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < xs.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('(').append(xs[i]).append(' ').append(xUnit);
+            sb.append(", ").append(ys[i]).append(' ').append(yUnit).append(')');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Sums the curves in a range of the array by splitting it in halves. The split only depends on the number of
+     * curves, so the result does not depend on the scheduling of the tasks.
+     */
+    private static final class AggregationTask<X extends Quantity, Y extends Quantity>
+            extends RecursiveTask<MeasureCurve<X, Y>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] curves;
+        private final int from;
+        private final int to;
+
+        AggregationTask(Object[] curves, int from, int to) {
+            this.curves = curves;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected MeasureCurve<X, Y> compute() {
+            if (to - from == 1) {
+                return (MeasureCurve<X, Y>) curves[from];
+            }
+            int mid = (from + to) >>> 1;
+            AggregationTask<X, Y> left = new AggregationTask<X, Y>(curves, from, mid);
+            AggregationTask<X, Y> right = new AggregationTask<X, Y>(curves, mid, to);
+            if (to - from <= AGGREGATION_THRESHOLD) {
+                return left.compute().add(right.compute());
+            }
+            right.fork();
+            MeasureCurve<X, Y> leftResult = left.compute();
+            return leftResult.add(right.join());
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package javax.measure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * This utility class sorts, searches and selects {@link Measurable}s by their value. Using
+ * {@link Measurable#compareTo(Measurable)} for this converts both sides on every comparison, which for large
+ * collections means millions of converter lookups. Instead, the methods in this class first extract a primitive
+ * <code>double</code> key for every element (stated in one common unit, typically the standard unit of the quantity),
+ * resolving each converter only once (see {@link ConversionCache}), and then work on the keys alone. For example:
+ *
+ * <pre>
+ * MeasureKeys.sort(offers, SI.WATT);
+ * List&lt;Measurable&lt;Power&gt;&gt; top = MeasureKeys.largest(offers, 10, SI.WATT);
+ * </pre>
+ *
+ * The ordering of the keys is the one of {@link Double#compare(double, double)}, so it matches
+ * {@link Measure#compareTo(Measurable)}. Sorting is stable and ties in the top-k selection are resolved in favor of
+ * the element that comes first.
+ */
+public final class MeasureKeys {
+    private MeasureKeys() {
+    }
+
+    /**
+     * Extracts the keys of the given measurables.
+     *
+     * @param measurables
+     *            The measurables of which the keys are needed.
+     * @param unit
+     *            The unit in which the keys will be stated.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return An array with the value of each measurable stated in the given unit, in iteration order.
+     */
+    public static <Q extends Quantity> double[] keys(Collection<? extends Measurable<Q>> measurables, Unit<Q> unit) {
+        ConversionCache<Q> cache = new ConversionCache<Q>(unit);
+        double[] keys = new double[measurables.size()];
+        int ix = 0;
+        for (Measurable<Q> measurable : measurables) {
+            keys[ix++] = cache.convert(measurable);
+        }
+        return keys;
+    }
+
+    /**
+     * Sorts the given list in ascending order of the values. This has the same result as
+     * <code>Collections.sort(list)</code> for a list of {@link Measure}s, but converts each element only once.
+     *
+     * @param list
+     *            The list that will be sorted.
+     * @param unit
+     *            The unit in which the values will be compared.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @param <T>
+     *            The type of the elements in the list
+     */
+    public static <Q extends Quantity, T extends Measurable<Q>> void sort(List<T> list, Unit<Q> unit) {
+        int[] order = order(keys(list, unit));
+        Object[] elements = list.toArray();
+        ListIterator<T> it = list.listIterator();
+        for (int ix : order) {
+            it.next();
+            @SuppressWarnings("unchecked")
+            T element = (T) elements[ix];
+            it.set(element);
+        }
+    }
+
+    /**
+     * Determines the (stable) ascending order of the keys, without changing the keys themselves.
+     *
+     * @param keys
+     *            The keys, as returned by {@link #keys(Collection, Unit)}.
+     * @return The indexes of the keys, such that <code>keys[result[0]] &lt;= keys[result[1]] &lt;= ...</code>
+     */
+    public static int[] order(double[] keys) {
+        int n = keys.length;
+        long[] sortable = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortable[i] = sortable(keys[i]);
+            order[i] = i;
+        }
+
+        // Bottom-up merge sort of the indexes, which keeps equal keys in their original order
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int left = lo, right = mid, out = lo;
+                while (left < mid && right < hi) {
+                    buffer[out++] = sortable[order[right]] < sortable[order[left]] ? order[right++] : order[left++];
+                }
+                while (left < mid) {
+                    buffer[out++] = order[left++];
+                }
+                while (right < hi) {
+                    buffer[out++] = order[right++];
+                }
+            }
+            int[] tmp = order;
+            order = buffer;
+            buffer = tmp;
+        }
+        return order;
+    }
+
+    /**
+     * Searches the sorted keys for the value of the given measurable.
+     *
+     * @param sortedKeys
+     *            The keys, sorted in ascending order (e.g. with {@link Arrays#sort(double[])}).
+     * @param key
+     *            The measurable to search for.
+     * @param unit
+     *            The unit in which the keys are stated.
+     * @param <Q>
+     *            The quantity of the measurable
+     * @return The index of the key, or <code>(-(insertion point) - 1)</code> when it is not found (see
+     *         {@link Arrays#binarySearch(double[], double)}).
+     */
+    public static <Q extends Quantity> int binarySearch(double[] sortedKeys, Measurable<Q> key, Unit<Q> unit) {
+        return Arrays.binarySearch(sortedKeys, key.doubleValue(unit));
+    }
+
+    /**
+     * Selects the <code>k</code> measurables with the largest values, in O(n log k) time.
+     *
+     * @param measurables
+     *            The measurables from which to select.
+     * @param k
+     *            The maximum number of measurables that will be selected.
+     * @param unit
+     *            The unit in which the values will be compared.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @param <T>
+     *            The type of the measurables
+     * @return The (at most <code>k</code>) largest measurables, in descending order.
+     */
+    public static <Q extends Quantity, T extends Measurable<Q>> List<T> largest(Collection<T> measurables,
+                                                                                int k,
+                                                                                Unit<Q> unit) {
+        return select(measurables, k, unit, false);
+    }
+
+    /**
+     * Selects the <code>k</code> measurables with the smallest values, in O(n log k) time.
+     *
+     * @param measurables
+     *            The measurables from which to select.
+     * @param k
+     *            The maximum number of measurables that will be selected.
+     * @param unit
+     *            The unit in which the values will be compared.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @param <T>
+     *            The type of the measurables
+     * @return The (at most <code>k</code>) smallest measurables, in ascending order.
+     */
+    public static <Q extends Quantity, T extends Measurable<Q>> List<T> smallest(Collection<T> measurables,
+                                                                                 int k,
+                                                                                 Unit<Q> unit) {
+        return select(measurables, k, unit, true);
+    }
+
+    /**
+     * Creates a {@link Comparator} that compares the values of measurables stated in the given unit. The comparator
+     * remembers the converters it has used, so it is cheaper than {@link Measurable#compareTo(Measurable)} for
+     * collections with mixed units. The comparator is <b>not</b> thread-safe; create one per sort operation.
+     *
+     * @param unit
+     *            The unit in which the values will be compared.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The comparator.
+     */
+    public static <Q extends Quantity> Comparator<Measurable<Q>> comparator(Unit<Q> unit) {
+        final ConversionCache<Q> cache = new ConversionCache<Q>(unit);
+        return new Comparator<Measurable<Q>>() {
+            @Override
+            public int compare(Measurable<Q> o1, Measurable<Q> o2) {
+                return Double.compare(cache.convert(o1), cache.convert(o2));
+            }
+        };
+    }
+
+    private static <Q extends Quantity, T extends Measurable<Q>> List<T> select(Collection<T> measurables,
+                                                                                int k,
+                                                                                Unit<Q> unit,
+                                                                                boolean smallest) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        Object[] elements = measurables.toArray();
+        double[] keys = keys(measurables, unit);
+        int size = Math.min(k, elements.length);
+
+        // The ranks are ordered such that the wanted elements have the highest rank. The heap is a min-heap on rank,
+        // so its root is the worst element that has been selected so far.
+        long[] heapRanks = new long[size];
+        int[] heapIndexes = new int[size];
+        int count = 0;
+        for (int ix = 0; ix < elements.length && size > 0; ix++) {
+            long rank = smallest ? ~sortable(keys[ix]) : sortable(keys[ix]);
+            if (count < size) {
+                heapRanks[count] = rank;
+                heapIndexes[count] = ix;
+                siftUp(heapRanks, heapIndexes, count++);
+            } else if (rank > heapRanks[0]) {
+                // Equal ranks do not replace the root, so the earlier element wins the tie
+                heapRanks[0] = rank;
+                heapIndexes[0] = ix;
+                siftDown(heapRanks, heapIndexes, count);
+            }
+        }
+
+        // Pop the heap from worst to best, filling the result from the back
+        Object[] selected = new Object[count];
+        while (count > 0) {
+            selected[--count] = elements[heapIndexes[0]];
+            heapRanks[0] = heapRanks[count];
+            heapIndexes[0] = heapIndexes[count];
+            siftDown(heapRanks, heapIndexes, count);
+        }
+        List<T> result = new ArrayList<T>(selected.length);
+        for (Object element : selected) {
+            @SuppressWarnings("unchecked")
+            T t = (T) element;
+            result.add(t);
+        }
+        return result;
+    }
+
+    // Orders first on rank, then prefers the lower index (which is the 'larger' element when ranks are equal)
+    private static boolean less(long[] ranks, int[] indexes, int a, int b) {
+        return ranks[a] < ranks[b] || (ranks[a] == ranks[b] && indexes[a] > indexes[b]);
+    }
+
+    private static void swap(long[] ranks, int[] indexes, int a, int b) {
+        long rank = ranks[a];
+        ranks[a] = ranks[b];
+        ranks[b] = rank;
+        int index = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = index;
+    }
+
+    private static void siftUp(long[] ranks, int[] indexes, int ix) {
+        while (ix > 0) {
+            int parent = (ix - 1) / 2;
+            if (!less(ranks, indexes, ix, parent)) {
+                break;
+            }
+            swap(ranks, indexes, ix, parent);
+            ix = parent;
+        }
+    }
+
+    private static void siftDown(long[] ranks, int[] indexes, int size) {
+        int ix = 0;
+        while (true) {
+            int child = 2 * ix + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(ranks, indexes, child + 1, child)) {
+                child++;
+            }
+            if (!less(ranks, indexes, child, ix)) {
+                break;
+            }
+            swap(ranks, indexes, ix, child);
+            ix = child;
+        }
+    }
+
+    /**
+     * Maps a double onto a long, such that comparing the longs gives the same result as
+     * {@link Double#compare(double, double)} on the doubles.
+     */
+    static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,476 @@
+package javax.measure;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Duration;
+import javax.measure.quantity.Energy;
+import javax.measure.quantity.Power;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+/**
+ * This class represents a profile of measures over time: a sequence of slots of equal duration, starting at a certain
+ * time, each holding one value. For example:
+ *
+ * <pre>
+ * MeasureProfile&lt;Power&gt; power = MeasureProfile.valueOf(start, 15 * 60 * 1000, new double[] { 1.2, 0.8 }, KILO(WATT));
+ * MeasureProfile&lt;Energy&gt; energy = MeasureProfile.integrate(power, KWH);
+ * MeasureProfile&lt;Power&gt; hourly = power.resample(60 * 60 * 1000);
+ * </pre>
+ *
+ * The values are stored in a single primitive array in one unit. Views on a part of the profile (see
+ * {@link #subProfile(int, int)}) and shifted profiles (see {@link #shift(long)}) share that array and are created in
+ * O(1) time.
+ *
+ * Instances of this class are immutable.
+ *
+ * @param <Q>
+ *            The quantity of the values (e.g. Power)
+ */
+public final class MeasureProfile<Q extends Quantity> implements Serializable {
+    private static final long serialVersionUID = -2104567843541328413L;
+
+    private static final Unit<Duration> MS = SI.MILLI(SI.SECOND);
+    private static final double MS_PER_SECOND = 1000;
+
+    /**
+     * Creates a new profile. The values array is copied.
+     *
+     * @param startMillis
+     *            The start time of the first slot, in milliseconds since the epoch.
+     * @param slotMillis
+     *            The duration of each slot in milliseconds, which must be positive.
+     * @param values
+     *            The value of each slot.
+     * @param unit
+     *            The unit of the values.
+     * @param <Q>
+     *            The quantity of the values
+     * @return The new profile.
+     */
+    public static <Q extends Quantity> MeasureProfile<Q> valueOf(long startMillis,
+                                                                 long slotMillis,
+                                                                 double[] values,
+                                                                 Unit<Q> unit) {
+        return new MeasureProfile<Q>(startMillis, slotMillis, values.clone(), 0, values.length, unit);
+    }
+
+    /**
+     * Creates a new profile. The values array is copied.
+     *
+     * @param start
+     *            The start time of the first slot.
+     * @param slotDuration
+     *            The duration of each slot, which must be positive.
+     * @param values
+     *            The value of each slot.
+     * @param unit
+     *            The unit of the values.
+     * @param <Q>
+     *            The quantity of the values
+     * @return The new profile.
+     */
+    public static <Q extends Quantity> MeasureProfile<Q> valueOf(Date start,
+                                                                 Measurable<Duration> slotDuration,
+                                                                 double[] values,
+                                                                 Unit<Q> unit) {
+        return valueOf(start.getTime(), slotDuration.longValue(MS), values, unit);
+    }
+
+    /**
+     * Integrates a power profile, giving the energy per slot.
+     *
+     * @param power
+     *            The power profile.
+     * @param unit
+     *            The unit in which the energy will be stated.
+     * @return The energy profile, with the same start time and slot duration as the power profile.
+     */
+    public static MeasureProfile<Energy> integrate(MeasureProfile<Power> power, Unit<Energy> unit) {
+        // Both converters are linear, so they can be folded with the slot duration into one factor
+        double factor = power.unit.getConverterTo(SI.WATT).convert(1)
+                        * (power.slotMillis / MS_PER_SECOND)
+                        * SI.JOULE.getConverterTo(unit).convert(1);
+        double[] energy = new double[power.length];
+        for (int i = 0; i < energy.length; i++) {
+            energy[i] = factor * power.values[power.offset + i];
+        }
+        return new MeasureProfile<Energy>(power.startMillis, power.slotMillis, energy, 0, energy.length, unit);
+    }
+
+    private final long startMillis;
+    private final long slotMillis;
+    private final double[] values;
+    private final int offset;
+    private final int length;
+    private final Unit<Q> unit;
+
+    private MeasureProfile(long startMillis, long slotMillis, double[] values, int offset, int length, Unit<Q> unit) {
+        if (slotMillis <= 0) {
+            throw new IllegalArgumentException("The slot duration must be positive");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        this.startMillis = startMillis;
+        this.slotMillis = slotMillis;
+        this.values = values;
+        this.offset = offset;
+        this.length = length;
+        this.unit = unit;
+    }
+
+    /**
+     * @return The start time of the first slot, in milliseconds since the epoch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * @return The end time of the last slot (exclusive), in milliseconds since the epoch.
+     */
+    public long getEndMillis() {
+        return startMillis + length * slotMillis;
+    }
+
+    /**
+     * @return The duration of each slot in milliseconds.
+     */
+    public long getSlotMillis() {
+        return slotMillis;
+    }
+
+    /**
+     * @return The duration of each slot.
+     */
+    public Measurable<Duration> getSlotDuration() {
+        return Measure.valueOf(slotMillis, MS);
+    }
+
+    /**
+     * @return The unit of the values.
+     */
+    public Unit<Q> getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return The number of slots.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * @param index
+     *            The index of the slot.
+     * @return The value of the slot, stated in {@link #getUnit()}.
+     * @throws IndexOutOfBoundsException
+     *             When the index is out of range.
+     */
+    public double get(int index) {
+        checkIndex(index);
+        return values[offset + index];
+    }
+
+    /**
+     * @param index
+     *            The index of the slot.
+     * @return The value of the slot as a measure.
+     * @throws IndexOutOfBoundsException
+     *             When the index is out of range.
+     */
+    public Measure<Double, Q> getMeasure(int index) {
+        return Measure.valueOf(get(index), unit);
+    }
+
+    /**
+     * @param timeMillis
+     *            A time in milliseconds since the epoch.
+     * @return The index of the slot that contains the given time, or -1 when the time is outside of this profile.
+     */
+    public int indexOf(long timeMillis) {
+        if (timeMillis < startMillis || timeMillis >= getEndMillis()) {
+            return -1;
+        }
+        return (int) ((timeMillis - startMillis) / slotMillis);
+    }
+
+    /**
+     * @param timeMillis
+     *            A time in milliseconds since the epoch.
+     * @return The value of the slot that contains the given time, or {@link Double#NaN} when the time is outside of
+     *         this profile.
+     */
+    public double valueAt(long timeMillis) {
+        int ix = indexOf(timeMillis);
+        return ix < 0 ? Double.NaN : values[offset + ix];
+    }
+
+    /**
+     * Copies the values into the given array.
+     *
+     * @param buffer
+     *            The array into which the values are written, with a length of at least {@link #size()}.
+     * @return The given buffer.
+     */
+    public double[] getValues(double[] buffer) {
+        System.arraycopy(values, offset, buffer, 0, length);
+        return buffer;
+    }
+
+    /**
+     * @return A copy of the values.
+     */
+    public double[] getValues() {
+        return Arrays.copyOfRange(values, offset, offset + length);
+    }
+
+    /**
+     * Creates a view on a part of this profile in O(1) time.
+     *
+     * @param fromIndex
+     *            The index of the first slot (inclusive).
+     * @param toIndex
+     *            The index of the last slot (exclusive).
+     * @return The profile that contains the given slots.
+     * @throws IndexOutOfBoundsException
+     *             When the range is not within this profile.
+     */
+    public MeasureProfile<Q> subProfile(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range [" + fromIndex + ", " + toIndex + ") is not within [0, "
+                                                + length
+                                                + ")");
+        }
+        return new MeasureProfile<Q>(startMillis + fromIndex * slotMillis,
+                                     slotMillis,
+                                     values,
+                                     offset + fromIndex,
+                                     toIndex - fromIndex,
+                                     unit);
+    }
+
+    /**
+     * Creates a view on the slots that overlap with the given period in O(1) time.
+     *
+     * @param fromMillis
+     *            The start of the period, in milliseconds since the epoch.
+     * @param toMillis
+     *            The end of the period (exclusive), in milliseconds since the epoch.
+     * @return The profile with all the slots that overlap the period, which may be empty.
+     */
+    public MeasureProfile<Q> between(long fromMillis, long toMillis) {
+        long from = Math.max(fromMillis, startMillis);
+        long to = Math.min(toMillis, getEndMillis());
+        if (from >= to) {
+            return subProfile(0, 0);
+        }
+        int fromIndex = (int) ((from - startMillis) / slotMillis);
+        int toIndex = (int) ((to - startMillis + slotMillis - 1) / slotMillis);
+        return subProfile(fromIndex, toIndex);
+    }
+
+    /**
+     * Creates a view on this profile that is moved in time, in O(1) time.
+     *
+     * @param millis
+     *            The number of milliseconds to move the profile (negative values move it backwards).
+     * @return The shifted profile.
+     */
+    public MeasureProfile<Q> shift(long millis) {
+        return new MeasureProfile<Q>(startMillis + millis, slotMillis, values, offset, length, unit);
+    }
+
+    /**
+     * Returns the profile equivalent to this one but stated in the specified unit.
+     *
+     * @param unit
+     *            The new unit.
+     * @return The converted profile.
+     */
+    public MeasureProfile<Q> to(Unit<Q> unit) {
+        UnitConverter converter = this.unit.getConverterTo(unit);
+        if (converter == UnitConverter.IDENTITY) {
+            return this;
+        }
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = converter.convert(values[offset + i]);
+        }
+        return new MeasureProfile<Q>(startMillis, slotMillis, result, 0, length, unit);
+    }
+
+    /**
+     * Returns the element-wise sum of this profile and the other one, stated in the unit of this profile.
+     *
+     * @param other
+     *            The profile to add, which must have the same start time, slot duration and size.
+     * @return <code>this + other</code>
+     * @throws IllegalArgumentException
+     *             When the profiles are not aligned.
+     */
+    public MeasureProfile<Q> add(MeasureProfile<Q> other) {
+        return combine(other, 1);
+    }
+
+    /**
+     * Returns the element-wise difference of this profile and the other one, stated in the unit of this profile.
+     *
+     * @param other
+     *            The profile to subtract, which must have the same start time, slot duration and size.
+     * @return <code>this - other</code>
+     * @throws IllegalArgumentException
+     *             When the profiles are not aligned.
+     */
+    public MeasureProfile<Q> subtract(MeasureProfile<Q> other) {
+        return combine(other, -1);
+    }
+
+    /**
+     * Returns this profile with all values multiplied by the given factor.
+     *
+     * @param factor
+     *            The scaling factor.
+     * @return The scaled profile.
+     */
+    public MeasureProfile<Q> scale(double factor) {
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = factor * values[offset + i];
+        }
+        return new MeasureProfile<Q>(startMillis, slotMillis, result, 0, length, unit);
+    }
+
+    /**
+     * @return The sum of all values, stated in {@link #getUnit()}.
+     */
+    public Measure<Double, Q> sum() {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += values[offset + i];
+        }
+        return Measure.valueOf(sum, unit);
+    }
+
+    /**
+     * Resamples this profile to another slot duration, starting at the same time. Each new slot gets the time-weighted
+     * average of the old slots that it overlaps, which is correct for quantities like power or temperature. For
+     * quantities that accumulate over a slot (like energy) the result should be scaled by
+     * <code>newSlotMillis / getSlotMillis()</code>. When the duration of this profile is not a multiple of the new slot
+     * duration, the last slot holds the average over the part that it overlaps.
+     *
+     * @param newSlotMillis
+     *            The new slot duration in milliseconds, which must be positive.
+     * @return The resampled profile.
+     */
+    public MeasureProfile<Q> resample(long newSlotMillis) {
+        if (newSlotMillis == slotMillis) {
+            return this;
+        } else if (newSlotMillis <= 0) {
+            throw new IllegalArgumentException("The slot duration must be positive");
+        }
+
+        long duration = length * slotMillis;
+        int newLength = (int) ((duration + newSlotMillis - 1) / newSlotMillis);
+        double[] result = new double[newLength];
+        int ix = 0;
+        for (int newIx = 0; newIx < newLength; newIx++) {
+            long from = newIx * newSlotMillis;
+            long to = Math.min(from + newSlotMillis, duration);
+            double weightedSum = 0;
+            while (from < to) {
+                long slotEnd = (ix + 1) * slotMillis;
+                long end = Math.min(slotEnd, to);
+                weightedSum += values[offset + ix] * (end - from);
+                if (end == slotEnd) {
+                    ix++;
+                }
+                from = end;
+            }
+            result[newIx] = weightedSum / (Math.min((newIx + 1) * newSlotMillis, duration) - newIx * newSlotMillis);
+        }
+        return new MeasureProfile<Q>(startMillis, newSlotMillis, result, 0, newLength, unit);
+    }
+
+    /**
+     * Resamples this profile to another slot duration.
+     *
+     * @see #resample(long)
+     * @param slotDuration
+     *            The new slot duration.
+     * @return The resampled profile.
+     */
+    public MeasureProfile<Q> resample(Measurable<Duration> slotDuration) {
+        return resample(slotDuration.longValue(MS));
+    }
+
+    private MeasureProfile<Q> combine(MeasureProfile<Q> other, double factor) {
+        if (other.startMillis != startMillis || other.slotMillis != slotMillis || other.length != length) {
+            throw new IllegalArgumentException("The profiles are not aligned");
+        }
+        UnitConverter converter = other.unit.getConverterTo(unit);
+        double[] result = new double[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = values[offset + i] + factor * converter.convert(other.values[other.offset + i]);
+        }
+        return new MeasureProfile<Q>(startMillis, slotMillis, result, 0, length, unit);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + length);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (int) (startMillis ^ (startMillis >>> 32));
+        hash = 31 * hash + (int) (slotMillis ^ (slotMillis >>> 32));
+        for (int i = 0; i < length; i++) {
+            long bits = Double.doubleToLongBits(values[offset + i]);
+            hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+        }
+        return 31 * hash + unit.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof MeasureProfile)) {
+            return false;
+        }
+        MeasureProfile<?> other = (MeasureProfile<?>) obj;
+        if (startMillis != other.startMillis || slotMillis != other.slotMillis
+            || length != other.length
+            || !unit.equals(other.unit)) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Double.doubleToLongBits(values[offset + i]) != Double.doubleToLongBits(other.values[other.offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("MeasureProfile [start=").append(new Date(startMillis));
+        sb.append(", slot=").append(slotMillis).append(" ms, values=[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[offset + i]);
+        }
+        return sb.append("] ").append(unit).append(']').toString();
+    }
+}
@@ -0,0 +1,524 @@
+package javax.measure;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * This utility class reduces large collections of {@link Measurable}s (or primitive arrays of values in a known unit)
+ * to their sum, mean, minimum, maximum, variance and quantiles. The work is split into blocks that are reduced in
+ * parallel on a {@link ForkJoinPool}. Each block resolves the converter for each unit only once (see
+ * {@link ConversionCache}) and uses compensated (Kahan-Neumaier) summation. For example:
+ *
+ * <pre>
+ * MeasureReductions.Summary&lt;Power&gt; summary = MeasureReductions.summarize(devicePowers, SI.WATT);
+ * double total = summary.getSum();
+ * double median = MeasureReductions.quantiles(devicePowers, SI.WATT, 0.5)[0];
+ * </pre>
+ *
+ * The way the work is split only depends on the number of elements, never on the number of threads or the scheduling
+ * of the tasks. Therefore the results are bit-for-bit the same on every run and on every pool.
+ */
+public final class MeasureReductions {
+    /**
+     * The number of elements that is reduced sequentially by one task.
+     */
+    static final int BLOCK_SIZE = 4096;
+
+    private MeasureReductions() {
+    }
+
+    /**
+     * Holds the pool that is used when no {@link ForkJoinPool} is given. It is only created when it is first needed.
+     */
+    private static final class DefaultPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * The result of a reduction. All values are stated in {@link #getUnit()}. An empty summary has a count and sum of
+     * 0, all other values are {@link Double#NaN}.
+     *
+     * Instances of this class are immutable.
+     *
+     * @param <Q>
+     *            The quantity of the reduced values
+     */
+    public static final class Summary<Q extends Quantity> {
+        private final Unit<Q> unit;
+        private final long count;
+        private final double sum;
+        private final double min;
+        private final double max;
+        private final double m2;
+
+        Summary(Unit<Q> unit, Accumulator accumulator) {
+            this.unit = unit;
+            count = accumulator.count;
+            sum = accumulator.sum();
+            min = accumulator.min;
+            max = accumulator.max;
+            m2 = accumulator.m2;
+        }
+
+        /**
+         * @return The unit in which all values of this summary are stated.
+         */
+        public Unit<Q> getUnit() {
+            return unit;
+        }
+
+        /**
+         * @return The number of values that have been reduced.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return The sum of the values.
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * @return The arithmetic mean of the values.
+         */
+        public double getMean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /**
+         * @return The smallest value.
+         */
+        public double getMin() {
+            return min;
+        }
+
+        /**
+         * @return The largest value.
+         */
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * @return The population variance of the values, stated in the square of {@link #getUnit()}.
+         */
+        public double getVariance() {
+            return count == 0 ? Double.NaN : m2 / count;
+        }
+
+        /**
+         * @return The sample variance (with Bessel's correction) of the values, stated in the square of
+         *         {@link #getUnit()}.
+         */
+        public double getSampleVariance() {
+            return count < 2 ? Double.NaN : m2 / (count - 1);
+        }
+
+        /**
+         * @return The population standard deviation of the values.
+         */
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        @Override
+        public String toString() {
+            return "Summary [count=" + count
+                   + ", sum="
+                   + sum
+                   + ", mean="
+                   + getMean()
+                   + ", min="
+                   + min
+                   + ", max="
+                   + max
+                   + ", variance="
+                   + getVariance()
+                   + ", unit="
+                   + unit
+                   + "]";
+        }
+    }
+
+    /**
+     * Reduces the measurables using the default pool.
+     *
+     * @see #summarize(Collection, Unit, ForkJoinPool)
+     * @param measurables
+     *            The measurables that will be reduced.
+     * @param unit
+     *            The unit in which the result will be stated.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The summary of the values.
+     */
+    public static <Q extends Quantity> Summary<Q> summarize(Collection<? extends Measurable<Q>> measurables,
+                                                            Unit<Q> unit) {
+        return summarize(measurables, unit, null);
+    }
+
+    /**
+     * Reduces the measurables to their count, sum, mean, minimum, maximum and variance.
+     *
+     * @param measurables
+     *            The measurables that will be reduced.
+     * @param unit
+     *            The unit in which the result will be stated.
+     * @param pool
+     *            The pool on which the work will be done, or <code>null</code> to use a default pool.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The summary of the values.
+     */
+    public static <Q extends Quantity> Summary<Q> summarize(Collection<? extends Measurable<Q>> measurables,
+                                                            Unit<Q> unit,
+                                                            ForkJoinPool pool) {
+        Object[] elements = measurables.toArray();
+        SummaryTask<Q> task = new SummaryTask<Q>(elements, null, unit, 0, elements.length);
+        return new Summary<Q>(unit, invoke(pool, task, elements.length));
+    }
+
+    /**
+     * Reduces the values using the default pool.
+     *
+     * @see #summarize(double[], Unit, ForkJoinPool)
+     * @param values
+     *            The values that will be reduced.
+     * @param unit
+     *            The unit in which the values are stated.
+     * @param <Q>
+     *            The quantity of the values
+     * @return The summary of the values.
+     */
+    public static <Q extends Quantity> Summary<Q> summarize(double[] values, Unit<Q> unit) {
+        return summarize(values, unit, null);
+    }
+
+    /**
+     * Reduces the values to their count, sum, mean, minimum, maximum and variance.
+     *
+     * @param values
+     *            The values that will be reduced.
+     * @param unit
+     *            The unit in which the values are stated.
+     * @param pool
+     *            The pool on which the work will be done, or <code>null</code> to use a default pool.
+     * @param <Q>
+     *            The quantity of the values
+     * @return The summary of the values.
+     */
+    public static <Q extends Quantity> Summary<Q> summarize(double[] values, Unit<Q> unit, ForkJoinPool pool) {
+        SummaryTask<Q> task = new SummaryTask<Q>(null, values, unit, 0, values.length);
+        return new Summary<Q>(unit, invoke(pool, task, values.length));
+    }
+
+    /**
+     * Sums the measurables using the default pool. This gives the same value as adding them up with
+     * {@link Measurable#add(Measurable)}, but is faster and more accurate for large collections.
+     *
+     * @param measurables
+     *            The measurables that will be summed.
+     * @param unit
+     *            The unit in which the result will be stated.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The sum of the measurables.
+     */
+    public static <Q extends Quantity> Measure<Double, Q> sum(Collection<? extends Measurable<Q>> measurables,
+                                                              Unit<Q> unit) {
+        return Measure.valueOf(summarize(measurables, unit, null).getSum(), unit);
+    }
+
+    /**
+     * Determines quantiles of the measurables using the default pool.
+     *
+     * @see #quantiles(Collection, Unit, ForkJoinPool, double...)
+     * @param measurables
+     *            The measurables of which the quantiles are needed.
+     * @param unit
+     *            The unit in which the result will be stated.
+     * @param probabilities
+     *            The probabilities (between 0 and 1) for which the quantiles are needed.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The quantile for each of the probabilities.
+     */
+    public static <Q extends Quantity> double[] quantiles(Collection<? extends Measurable<Q>> measurables,
+                                                          Unit<Q> unit,
+                                                          double... probabilities) {
+        return quantiles(measurables, unit, null, probabilities);
+    }
+
+    /**
+     * Determines quantiles of the measurables. The values are sorted in parallel, after which the quantiles are
+     * interpolated linearly between the closest ranks (so a probability of 0.5 gives the median).
+     *
+     * @param measurables
+     *            The measurables of which the quantiles are needed.
+     * @param unit
+     *            The unit in which the result will be stated.
+     * @param pool
+     *            The pool on which the work will be done, or <code>null</code> to use a default pool.
+     * @param probabilities
+     *            The probabilities (between 0 and 1) for which the quantiles are needed.
+     * @param <Q>
+     *            The quantity of the measurables
+     * @return The quantile for each of the probabilities.
+     * @throws IllegalArgumentException
+     *             when a probability is not between 0 and 1.
+     */
+    public static <Q extends Quantity> double[] quantiles(Collection<? extends Measurable<Q>> measurables,
+                                                          Unit<Q> unit,
+                                                          ForkJoinPool pool,
+                                                          double... probabilities) {
+        checkProbabilities(probabilities);
+        Object[] elements = measurables.toArray();
+        double[] keys = new double[elements.length];
+        invoke(pool, new SortTask<Q>(elements, keys, new double[keys.length], unit, 0, keys.length), keys.length);
+        return interpolate(keys, probabilities);
+    }
+
+    /**
+     * Determines quantiles of the values. The given array is not modified.
+     *
+     * @see #quantiles(Collection, Unit, ForkJoinPool, double...)
+     * @param values
+     *            The values of which the quantiles are needed.
+     * @param pool
+     *            The pool on which the work will be done, or <code>null</code> to use a default pool.
+     * @param probabilities
+     *            The probabilities (between 0 and 1) for which the quantiles are needed.
+     * @return The quantile for each of the probabilities.
+     * @throws IllegalArgumentException
+     *             when a probability is not between 0 and 1.
+     */
+    public static double[] quantiles(double[] values, ForkJoinPool pool, double... probabilities) {
+        checkProbabilities(probabilities);
+        double[] keys = values.clone();
+        invoke(pool, new SortTask<Quantity>(null, keys, new double[keys.length], null, 0, keys.length), keys.length);
+        return interpolate(keys, probabilities);
+    }
+
+    private static void checkProbabilities(double[] probabilities) {
+        for (double p : probabilities) {
+            if (!(p >= 0 && p <= 1)) {
+                throw new IllegalArgumentException("Probability " + p + " is not between 0 and 1");
+            }
+        }
+    }
+
+    private static double[] interpolate(double[] sortedKeys, double[] probabilities) {
+        double[] result = new double[probabilities.length];
+        int n = sortedKeys.length;
+        for (int i = 0; i < probabilities.length; i++) {
+            if (n == 0) {
+                result[i] = Double.NaN;
+            } else {
+                double h = (n - 1) * probabilities[i];
+                int lo = (int) Math.floor(h);
+                int hi = Math.min(lo + 1, n - 1);
+                result[i] = sortedKeys[lo] + (h - lo) * (sortedKeys[hi] - sortedKeys[lo]);
+            }
+        }
+        return result;
+    }
+
+    // Small inputs fit in one block, which is computed directly by the calling thread
+    private static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task, int size) {
+        if (size <= BLOCK_SIZE) {
+            return task.invoke();
+        }
+        return (pool == null ? DefaultPool.INSTANCE : pool).invoke(task);
+    }
+
+    /**
+     * Accumulates count, compensated sum, minimum, maximum and the sum of squared deviations (Welford). Two
+     * accumulators can be merged (Chan et al.), so blocks can be reduced independently.
+     */
+    static final class Accumulator {
+        long count;
+        double sum;
+        double compensation;
+        double mean;
+        double m2;
+        double min = Double.NaN;
+        double max = Double.NaN;
+
+        void add(double value) {
+            // Neumaier's variant of Kahan summation
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+
+            if (count == 0) {
+                min = value;
+                max = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+        }
+
+        void merge(Accumulator other) {
+            if (other.count == 0) {
+                return;
+            } else if (count == 0) {
+                count = other.count;
+                sum = other.sum;
+                compensation = other.compensation;
+                mean = other.mean;
+                m2 = other.m2;
+                min = other.min;
+                max = other.max;
+                return;
+            }
+
+            double otherSum = other.sum();
+            double t = sum + otherSum;
+            if (Math.abs(sum) >= Math.abs(otherSum)) {
+                compensation += (sum - t) + otherSum;
+            } else {
+                compensation += (otherSum - t) + sum;
+            }
+            sum = t;
+
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+            count = total;
+        }
+
+        double sum() {
+            return sum + compensation;
+        }
+    }
+
+    private static final class SummaryTask<Q extends Quantity> extends RecursiveTask<Accumulator> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] measurables;
+        private final double[] values;
+        private final Unit<Q> unit;
+        private final int from;
+        private final int to;
+
+        SummaryTask(Object[] measurables, double[] values, Unit<Q> unit, int from, int to) {
+            this.measurables = measurables;
+            this.values = values;
+            this.unit = unit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Accumulator compute() {
+            if (to - from > BLOCK_SIZE) {
+                int mid = (from + to) >>> 1;
+                SummaryTask<Q> left = new SummaryTask<Q>(measurables, values, unit, from, mid);
+                SummaryTask<Q> right = new SummaryTask<Q>(measurables, values, unit, mid, to);
+                left.fork();
+                Accumulator result = right.compute();
+                Accumulator leftResult = left.join();
+                // Always merge in index order, so the result does not depend on which task finished first
+                leftResult.merge(result);
+                return leftResult;
+            }
+
+            Accumulator accumulator = new Accumulator();
+            if (values != null) {
+                for (int i = from; i < to; i++) {
+                    accumulator.add(values[i]);
+                }
+            } else {
+                ConversionCache<Q> cache = new ConversionCache<Q>(unit);
+                for (int i = from; i < to; i++) {
+                    @SuppressWarnings("unchecked")
+                    Measurable<Q> measurable = (Measurable<Q>) measurables[i];
+                    accumulator.add(cache.convert(measurable));
+                }
+            }
+            return accumulator;
+        }
+    }
+
+    /**
+     * Fills the keys from the measurables (when given) and sorts them with a parallel merge sort.
+     */
+    private static final class SortTask<Q extends Quantity> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] measurables;
+        private final double[] keys;
+        private final double[] buffer;
+        private final Unit<Q> unit;
+        private final int from;
+        private final int to;
+
+        SortTask(Object[] measurables, double[] keys, double[] buffer, Unit<Q> unit, int from, int to) {
+            this.measurables = measurables;
+            this.keys = keys;
+            this.buffer = buffer;
+            this.unit = unit;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BLOCK_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SortTask<Q>(measurables, keys, buffer, unit, from, mid),
+                          new SortTask<Q>(measurables, keys, buffer, unit, mid, to));
+                merge(mid);
+                return;
+            }
+
+            if (measurables != null) {
+                ConversionCache<Q> cache = new ConversionCache<Q>(unit);
+                for (int i = from; i < to; i++) {
+                    @SuppressWarnings("unchecked")
+                    Measurable<Q> measurable = (Measurable<Q>) measurables[i];
+                    keys[i] = cache.convert(measurable);
+                }
+            }
+            Arrays.sort(keys, from, to);
+        }
+
+        private void merge(int mid) {
+            System.arraycopy(keys, from, buffer, from, to - from);
+            int left = from, right = mid, out = from;
+            while (left < mid && right < to) {
+                keys[out++] = Double.compare(buffer[right], buffer[left]) < 0 ? buffer[right++] : buffer[left++];
+            }
+            while (left < mid) {
+                keys[out++] = buffer[left++];
+            }
+            while (right < to) {
+                keys[out++] = buffer[right++];
+            }
+        }
+    }
+}
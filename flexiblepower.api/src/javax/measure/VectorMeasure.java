@@ -63,22 +63,275 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
     @Override
     public Measurable<Q> add(Measurable<Q> other) {
         if (other instanceof VectorMeasure) {
-            VectorMeasure<Q> otherVector = (VectorMeasure<Q>) other;
-            double[] left = getValue();
-            double[] right = otherVector.to(getUnit()).getValue();
-            if (left.length != right.length) {
-                throw new UnsupportedOperationException("The 2 vectors have different lengths");
-            }
-            double[] result = new double[left.length];
-            for (int ix = 0; ix < result.length; ix++) {
-                result[ix] = left[ix] + right[ix];
-            }
-            return valueOf(result, getUnit());
+            return add((VectorMeasure<Q>) other);
         } else {
             return Measure.valueOf(doubleValue(getUnit()) + other.doubleValue(getUnit()), getUnit());
         }
     }
 
+    /**
+     * Returns the number of components of this measurement vector. The default implementation copies the components
+     * through {@link #getValue()}, subclasses should override it when they can do without.
+     *
+     * @return the number of components.
+     */
+    public int size() {
+        return getValue().length;
+    }
+
+    /**
+     * Returns a single component of this measurement vector, stated in the unit of this vector. Unlike
+     * {@link #getValue()} this does not copy the components, unless a subclass relies on the default implementation
+     * (which uses {@link #getValue()}).
+     *
+     * @param index
+     *            the index of the component, between <code>0</code> and <code>size() - 1</code>.
+     * @return the value of the component.
+     * @throws IndexOutOfBoundsException
+     *             if the index is out of range.
+     */
+    public double getComponent(int index) {
+        return getValue()[index];
+    }
+
+    /**
+     * Copies the components of this measurement vector, stated in the unit of this vector, into the given buffer.
+     *
+     * @param buffer
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the given buffer.
+     */
+    public double[] getValue(double[] buffer) {
+        checkBuffer(buffer);
+        for (int i = 0, n = size(); i < n; i++) {
+            buffer[i] = getComponent(i);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the sum of this measurement vector and the specified one, stated in the unit of this vector.
+     *
+     * @param that
+     *            the vector to add, which must have the same number of components.
+     * @return <code>this + that</code>
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public VectorMeasure<Q> add(VectorMeasure<Q> that) {
+        return create(add(that, new double[size()]), getUnit());
+    }
+
+    /**
+     * Writes the sum of this measurement vector and the specified one, stated in the unit of this vector, into the
+     * given buffer. No intermediate objects are created.
+     *
+     * @param that
+     *            the vector to add, which must have the same number of components.
+     * @param result
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the result buffer.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public double[] add(VectorMeasure<Q> that, double[] result) {
+        checkSize(that);
+        checkBuffer(result);
+        UnitConverter cvtr = converterFrom(that);
+        for (int i = 0, n = size(); i < n; i++) {
+            result[i] = getComponent(i) + cvtr.convert(that.getComponent(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the difference of this measurement vector and the specified one, stated in the unit of this vector.
+     *
+     * @param that
+     *            the vector to subtract, which must have the same number of components.
+     * @return <code>this - that</code>
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public VectorMeasure<Q> subtract(VectorMeasure<Q> that) {
+        return create(subtract(that, new double[size()]), getUnit());
+    }
+
+    /**
+     * Writes the difference of this measurement vector and the specified one, stated in the unit of this vector, into
+     * the given buffer. No intermediate objects are created.
+     *
+     * @param that
+     *            the vector to subtract, which must have the same number of components.
+     * @param result
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the result buffer.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public double[] subtract(VectorMeasure<Q> that, double[] result) {
+        checkSize(that);
+        checkBuffer(result);
+        UnitConverter cvtr = converterFrom(that);
+        for (int i = 0, n = size(); i < n; i++) {
+            result[i] = getComponent(i) - cvtr.convert(that.getComponent(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns this measurement vector with every component multiplied by the given factor.
+     *
+     * @param factor
+     *            the scaling factor.
+     * @return <code>factor * this</code>
+     */
+    public VectorMeasure<Q> scale(double factor) {
+        return create(scale(factor, new double[size()]), getUnit());
+    }
+
+    /**
+     * Writes the components of this measurement vector multiplied by the given factor into the given buffer.
+     *
+     * @param factor
+     *            the scaling factor.
+     * @param result
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the result buffer.
+     */
+    public double[] scale(double factor, double[] result) {
+        checkBuffer(result);
+        for (int i = 0, n = size(); i < n; i++) {
+            result[i] = factor * getComponent(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the dot product of this measurement vector and the specified one. Both vectors are stated in the unit of
+     * this vector, so the result is stated in the square of that unit.
+     *
+     * @param that
+     *            the other vector, which must have the same number of components.
+     * @return <code>this &middot; that</code>
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public double dot(VectorMeasure<Q> that) {
+        checkSize(that);
+        UnitConverter cvtr = converterFrom(that);
+        double sum = 0;
+        for (int i = 0, n = size(); i < n; i++) {
+            sum += getComponent(i) * cvtr.convert(that.getComponent(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the per-component minimum of this measurement vector and the specified one, stated in the unit of this
+     * vector.
+     *
+     * @param that
+     *            the other vector, which must have the same number of components.
+     * @return the vector holding the smallest value of each component.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public VectorMeasure<Q> min(VectorMeasure<Q> that) {
+        return create(min(that, new double[size()]), getUnit());
+    }
+
+    /**
+     * Writes the per-component minimum of this measurement vector and the specified one, stated in the unit of this
+     * vector, into the given buffer.
+     *
+     * @param that
+     *            the other vector, which must have the same number of components.
+     * @param result
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the result buffer.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public double[] min(VectorMeasure<Q> that, double[] result) {
+        checkSize(that);
+        checkBuffer(result);
+        UnitConverter cvtr = converterFrom(that);
+        for (int i = 0, n = size(); i < n; i++) {
+            result[i] = Math.min(getComponent(i), cvtr.convert(that.getComponent(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the per-component maximum of this measurement vector and the specified one, stated in the unit of this
+     * vector.
+     *
+     * @param that
+     *            the other vector, which must have the same number of components.
+     * @return the vector holding the largest value of each component.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public VectorMeasure<Q> max(VectorMeasure<Q> that) {
+        return create(max(that, new double[size()]), getUnit());
+    }
+
+    /**
+     * Writes the per-component maximum of this measurement vector and the specified one, stated in the unit of this
+     * vector, into the given buffer.
+     *
+     * @param that
+     *            the other vector, which must have the same number of components.
+     * @param result
+     *            the array into which the components are written, with a length of at least {@link #size()}.
+     * @return the result buffer.
+     * @throws UnsupportedOperationException
+     *             if the vectors have a different number of components.
+     */
+    public double[] max(VectorMeasure<Q> that, double[] result) {
+        checkSize(that);
+        checkBuffer(result);
+        UnitConverter cvtr = converterFrom(that);
+        for (int i = 0, n = size(); i < n; i++) {
+            result[i] = Math.max(getComponent(i), cvtr.convert(that.getComponent(i)));
+        }
+        return result;
+    }
+
+    private void checkSize(VectorMeasure<Q> that) {
+        if (size() != that.size()) {
+            throw new UnsupportedOperationException("The 2 vectors have different lengths");
+        }
+    }
+
+    private void checkBuffer(double[] buffer) {
+        if (buffer.length < size()) {
+            throw new IllegalArgumentException("The buffer can hold " + buffer.length + " components, but "
+                                               + size() + " are needed");
+        }
+    }
+
+    private UnitConverter converterFrom(VectorMeasure<Q> that) {
+        Unit<Q> unit = getUnit();
+        if ((that.getUnit() == unit) || (that.getUnit().equals(unit))) {
+            return UnitConverter.IDENTITY;
+        }
+        return that.getUnit().getConverterTo(unit);
+    }
+
+    // Creates a vector that takes ownership of the given (freshly allocated) components.
+    private static <Q extends Quantity> VectorMeasure<Q> create(double[] components, Unit<Q> unit) {
+        switch (components.length) {
+        case 2:
+            return new TwoDimensional<Q>(components[0], components[1], unit);
+        case 3:
+            return new ThreeDimensional<Q>(components[0], components[1], components[2], unit);
+        default:
+            return new MultiDimensional<Q>(components, unit, false);
+        }
+    }
+
     /**
      * Returns a 2-dimensional measurement vector.
      *
@@ -201,6 +454,23 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
             return new double[] { this.x, y };
         }
 
+        @Override
+        public int size() {
+            return 2;
+        }
+
+        @Override
+        public double getComponent(int index) {
+            switch (index) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            default:
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 2");
+            }
+        }
+
         @Override
         public TwoDimensional<Q> to(Unit<Q> unit) {
             if ((this.unit == unit) || (this.unit.equals(unit))) {
@@ -251,6 +521,25 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
             return new double[] { x, y, z };
         }
 
+        @Override
+        public int size() {
+            return 3;
+        }
+
+        @Override
+        public double getComponent(int index) {
+            switch (index) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            case 2:
+                return z;
+            default:
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: 3");
+            }
+        }
+
         @Override
         public ThreeDimensional<Q> to(Unit<Q> unit) {
             if ((this.unit == unit) || (this.unit.equals(unit))) {
@@ -271,22 +560,39 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
 
         private final Unit<Q> unit;
 
+        // Lazily computed norm (in this.unit), published through the volatile normKnown flag.
+        private transient double norm;
+
+        private transient volatile boolean normKnown;
+
         private MultiDimensional(double[] components, Unit<Q> unit) {
-            this.components = components.clone();
+            this(components, unit, true);
+        }
+
+        private MultiDimensional(double[] components, Unit<Q> unit, boolean copy) {
+            this.components = copy ? components.clone() : components;
             this.unit = unit;
         }
 
+        private double norm() {
+            if (!this.normKnown) {
+                double normSquare = this.components[0] * this.components[0];
+                for (int i = 1, n = this.components.length; i < n;) {
+                    double d = this.components[i++];
+                    normSquare += d * d;
+                }
+                this.norm = Math.sqrt(normSquare);
+                this.normKnown = true;
+            }
+            return this.norm;
+        }
+
         @Override
         public double doubleValue(final Unit<Q> unit) {
-            double normSquare = this.components[0] * this.components[0];
-            for (int i = 1, n = this.components.length; i < n;) {
-                double d = this.components[i++];
-                normSquare += d * d;
-            }
             if ((unit == this.unit) || (unit.equals(this.unit))) {
-                return Math.sqrt(normSquare);
+                return norm();
             }
-            return this.unit.getConverterTo(unit).convert(Math.sqrt(normSquare));
+            return this.unit.getConverterTo(unit).convert(norm());
         }
 
         @Override
@@ -299,6 +605,25 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
             return this.components.clone();
         }
 
+        @Override
+        public double[] getValue(double[] buffer) {
+            if (buffer.length < this.components.length) {
+                return super.getValue(buffer);
+            }
+            System.arraycopy(this.components, 0, buffer, 0, this.components.length);
+            return buffer;
+        }
+
+        @Override
+        public int size() {
+            return this.components.length;
+        }
+
+        @Override
+        public double getComponent(int index) {
+            return this.components[index];
+        }
+
         @Override
         public MultiDimensional<Q> to(Unit<Q> unit) {
             if ((unit == this.unit) || (unit.equals(this.unit))) {
@@ -309,7 +634,7 @@ public abstract class VectorMeasure<Q extends Quantity> extends Measure<double[]
             for (int i = 0; i < this.components.length; i++) {
                 newValues[i] = cvtr.convert(this.components[i]);
             }
-            return new MultiDimensional<Q>(newValues, unit);
+            return new MultiDimensional<Q>(newValues, unit, false);
         }
 
         private static final long serialVersionUID = 1L;
@@ -0,0 +1,29 @@
+package org.flexiblepower.observation;
+
+import java.util.List;
+
+/**
+ * A {@link BatchObservationConsumer} is an {@link ObservationConsumer} that can also receive several observations at
+ * once. Providers that publish observations in batches (e.g. a meter that is read out at a high rate) can hand over the
+ * whole batch with a single call of {@link #consumeBatch(ObservationProvider, List)}. Providers that do not know about
+ * batches just call {@link #consume(ObservationProvider, Observation)} for each observation, so an implementation must
+ * support both.
+ *
+ * @param <T>
+ *            The type of observation values that can be consumed.
+ */
+public interface BatchObservationConsumer<T> extends ObservationConsumer<T> {
+    /**
+     * This method may be called by any {@link ObservationProvider} to which this consumer is bound, instead of calling
+     * {@link #consume(ObservationProvider, Observation)} for each of the observations.
+     *
+     * @param source
+     *            The {@link ObservationProvider} that has sent the observations.
+     * @param observations
+     *            The {@link Observation}s that have been sent, in the order in which they have been published. This
+     *            list is never empty and must not be modified.
+     * @throws NullPointerException
+     *             When the source or the observations is <code>null</code>.
+     */
+    void consumeBatch(ObservationProvider<? extends T> source, List<? extends Observation<? extends T>> observations);
+}
@@ -0,0 +1,146 @@
+package org.flexiblepower.observation;
+
+import javax.measure.Measure;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * A {@link DoubleObservation} is an {@link Observation} of a single scalar value with a unit, such as a power in W.
+ * The value is stored as a primitive double, so creating the observation does not need a {@link Measure} or a boxed
+ * {@link Double}. It can be published and consumed as any other
+ * <code>Observation&lt;Measure&lt;Double, Q&gt;&gt;</code>: the {@link Measure} is only created when
+ * {@link #getValue()} (or one of the methods that depend on it, like {@link #getValueMap()}) is called, and it is
+ * created only once.
+ *
+ * @param <Q>
+ *            The quantity of the value.
+ */
+public class DoubleObservation<Q extends Quantity> extends Observation<Measure<Double, Q>> {
+    private static final int HASH_CONSTANT = 31;
+    private static final int INT_BITS = 32;
+
+    /**
+     * Creates a new {@link DoubleObservation}. This static helper method removes the need for specifying Q explicitly.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @param <Q>
+     *            The quantity of the value.
+     * @return The newly created DoubleObservation object.
+     */
+    public static <Q extends Quantity> DoubleObservation<Q> create(long observedAtMillis, double value, Unit<Q> unit) {
+        return new DoubleObservation<Q>(observedAtMillis, 0, value, unit);
+    }
+
+    private final double value;
+    private final Unit<Q> unit;
+    /**
+     * The value as a {@link Measure}, which is created the first time it is asked for. The measure is immutable, so it
+     * can safely be shared between threads without synchronization (at worst it is created more than once).
+     */
+    private Measure<Double, Q> measure;
+
+    /**
+     * Creates a new {@link DoubleObservation}.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @throws NullPointerException
+     *             When the unit is <code>null</code>.
+     */
+    public DoubleObservation(long observedAtMillis, double value, Unit<Q> unit) {
+        this(observedAtMillis, 0, value, unit);
+    }
+
+    /**
+     * Creates a new {@link DoubleObservation}, with a time that is more precise than a millisecond.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param nanosOfMilli
+     *            The nanoseconds within that millisecond, from 0 to 999,999.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @throws NullPointerException
+     *             When the unit is <code>null</code>.
+     * @throws IllegalArgumentException
+     *             When the nanosOfMilli is out of range.
+     */
+    public DoubleObservation(long observedAtMillis, int nanosOfMilli, double value, Unit<Q> unit) {
+        super(observedAtMillis, nanosOfMilli);
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+        this.value = value;
+        this.unit = unit;
+    }
+
+    /**
+     * @return The value, expressed in the {@link #getUnit() unit} of this observation.
+     */
+    public double doubleValue() {
+        return value;
+    }
+
+    /**
+     * @param targetUnit
+     *            The unit in which the value should be expressed.
+     * @return The value, converted to the given unit.
+     */
+    public double doubleValue(Unit<Q> targetUnit) {
+        return unit == targetUnit ? value : unit.getConverterTo(targetUnit).convert(value);
+    }
+
+    /**
+     * @return The unit of the value.
+     */
+    public Unit<Q> getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return The value as a {@link Measure}, which is created on the first call.
+     */
+    @Override
+    public Measure<Double, Q> getValue() {
+        Measure<Double, Q> result = measure;
+        if (result == null) {
+            result = Measure.valueOf(value, unit);
+            measure = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(value);
+        long time = getObservedAtMillis();
+        int result = (int) (time ^ (time >>> INT_BITS)) + HASH_CONSTANT * getNanosOfMilli();
+        result = HASH_CONSTANT * result + (int) (bits ^ (bits >>> INT_BITS));
+        return HASH_CONSTANT * result + unit.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            DoubleObservation<?> other = (DoubleObservation<?>) obj;
+            return getObservedAtMillis() == other.getObservedAtMillis() && getNanosOfMilli() == other.getNanosOfMilli()
+                   && Double.doubleToLongBits(value) == Double.doubleToLongBits(other.value)
+                   && unit.equals(other.unit);
+        }
+    }
+}
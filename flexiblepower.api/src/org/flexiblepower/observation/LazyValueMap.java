@@ -0,0 +1,109 @@
+package org.flexiblepower.observation;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.measure.Measure;
+
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
+
+/**
+ * A read-only view on the value map of an {@link Observation} (see {@link Observation#getValueMap(boolean)}). A
+ * {@link #get(Object)} only calls the getters on the path to the requested key, using the cached getters of the
+ * {@link ObservationTranslationHelper}. The results of the getters are remembered, so each getter is called at most
+ * once for each path. Operations that need all the keys (like {@link #entrySet()} and {@link #size()}) create the
+ * complete map once and use that from then on.
+ *
+ * Instances of this class are not thread-safe.
+ */
+final class LazyValueMap extends AbstractMap<String, Object> {
+    private static final char SEPARATOR = '.';
+    private static final String UNIT = "unit";
+    /**
+     * Marks a key that has been looked up, but has no value.
+     */
+    private static final Object ABSENT = new Object();
+
+    private final Object value;
+    private final Map<Object, Object> resolved = new HashMap<Object, Object>();
+    private final Map<String, Object> members = new HashMap<String, Object>();
+    private Map<String, Object> complete;
+
+    LazyValueMap(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (complete != null) {
+            return complete.get(key);
+        }
+        Object result = resolved.get(key);
+        if (result == null) {
+            result = key instanceof String ? resolve(value, (String) key, 0) : null;
+            resolved.put(key, result == null ? ABSENT : result);
+        }
+        return result == ABSENT ? null : result;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        // The value map never contains null values
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (complete == null) {
+            complete = Collections.unmodifiableMap(ValueMapPlan.forClass(value.getClass()).execute(value));
+            resolved.clear();
+            members.clear();
+        }
+        return complete.entrySet();
+    }
+
+    /**
+     * Finds the value for the part of the key that starts at the given index, in the same way as the complete value
+     * map is created: measures are split in their value and ".unit", enumerations are translated to strings and only
+     * java beans are searched any deeper.
+     */
+    private Object resolve(Object object, String key, int start) {
+        int end = key.indexOf(SEPARATOR, start);
+        Object member = member(object, end < 0 ? key : key.substring(0, end), start);
+        if (member == null) {
+            return null;
+        } else if (member instanceof Measure) {
+            if (end < 0) {
+                return ((Measure<?, ?>) member).getValue();
+            } else if (key.length() - end - 1 == UNIT.length() && key.startsWith(UNIT, end + 1)) {
+                return ((Measure<?, ?>) member).getUnit().toString();
+            }
+            return null;
+        } else if (member.getClass().isEnum()) {
+            return end < 0 ? member.toString() : null;
+        } else if (end < 0) {
+            return member;
+        } else if (ObservationTranslationHelper.isJavaBean(member.getClass())) {
+            return resolve(member, key, end + 1);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Calls the getter for the last part of the path (which starts at the given index) on the object, or returns the
+     * remembered result of an earlier call.
+     */
+    private Object member(Object object, String path, int start) {
+        Object member = members.get(path);
+        if (member == null) {
+            Getter getter = ObservationTranslationHelper.getGetters(object.getClass()).get(path.substring(start));
+            member = getter == null ? null : getter.get(object);
+            members.put(path, member == null ? ABSENT : member);
+        }
+        return member == ABSENT ? null : member;
+    }
+}
@@ -0,0 +1,145 @@
+package org.flexiblepower.observation;
+
+import javax.measure.Measure;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+/**
+ * A {@link LongObservation} is an {@link Observation} of a single scalar value with a unit, such as an energy counter
+ * in Wh. The value is stored as a primitive long, so creating the observation does not need a {@link Measure} or a
+ * boxed {@link Long}. It can be published and consumed as any other
+ * <code>Observation&lt;Measure&lt;Long, Q&gt;&gt;</code>: the {@link Measure} is only created when
+ * {@link #getValue()} (or one of the methods that depend on it, like {@link #getValueMap()}) is called, and it is
+ * created only once.
+ *
+ * @param <Q>
+ *            The quantity of the value.
+ */
+public class LongObservation<Q extends Quantity> extends Observation<Measure<Long, Q>> {
+    private static final int HASH_CONSTANT = 31;
+    private static final int INT_BITS = 32;
+
+    /**
+     * Creates a new {@link LongObservation}. This static helper method removes the need for specifying Q explicitly.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @param <Q>
+     *            The quantity of the value.
+     * @return The newly created LongObservation object.
+     */
+    public static <Q extends Quantity> LongObservation<Q> create(long observedAtMillis, long value, Unit<Q> unit) {
+        return new LongObservation<Q>(observedAtMillis, 0, value, unit);
+    }
+
+    private final long value;
+    private final Unit<Q> unit;
+    /**
+     * The value as a {@link Measure}, which is created the first time it is asked for. The measure is immutable, so it
+     * can safely be shared between threads without synchronization (at worst it is created more than once).
+     */
+    private Measure<Long, Q> measure;
+
+    /**
+     * Creates a new {@link LongObservation}.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @throws NullPointerException
+     *             When the unit is <code>null</code>.
+     */
+    public LongObservation(long observedAtMillis, long value, Unit<Q> unit) {
+        this(observedAtMillis, 0, value, unit);
+    }
+
+    /**
+     * Creates a new {@link LongObservation}, with a time that is more precise than a millisecond.
+     *
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param nanosOfMilli
+     *            The nanoseconds within that millisecond, from 0 to 999,999.
+     * @param value
+     *            The value, expressed in the given unit.
+     * @param unit
+     *            The unit of the value.
+     * @throws NullPointerException
+     *             When the unit is <code>null</code>.
+     * @throws IllegalArgumentException
+     *             When the nanosOfMilli is out of range.
+     */
+    public LongObservation(long observedAtMillis, int nanosOfMilli, long value, Unit<Q> unit) {
+        super(observedAtMillis, nanosOfMilli);
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+        this.value = value;
+        this.unit = unit;
+    }
+
+    /**
+     * @return The value, expressed in the {@link #getUnit() unit} of this observation.
+     */
+    public long longValue() {
+        return value;
+    }
+
+    /**
+     * @param targetUnit
+     *            The unit in which the value should be expressed.
+     * @return The value, converted to the given unit (which may no longer be a whole number).
+     */
+    public double doubleValue(Unit<Q> targetUnit) {
+        return unit == targetUnit ? value : unit.getConverterTo(targetUnit).convert(value);
+    }
+
+    /**
+     * @return The unit of the value.
+     */
+    public Unit<Q> getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return The value as a {@link Measure}, which is created on the first call.
+     */
+    @Override
+    public Measure<Long, Q> getValue() {
+        Measure<Long, Q> result = measure;
+        if (result == null) {
+            result = Measure.valueOf(value, unit);
+            measure = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        long time = getObservedAtMillis();
+        int result = (int) (time ^ (time >>> INT_BITS)) + HASH_CONSTANT * getNanosOfMilli();
+        result = HASH_CONSTANT * result + (int) (value ^ (value >>> INT_BITS));
+        return HASH_CONSTANT * result + unit.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        } else {
+            LongObservation<?> other = (LongObservation<?>) obj;
+            return getObservedAtMillis() == other.getObservedAtMillis() && getNanosOfMilli() == other.getNanosOfMilli()
+                   && value == other.value
+                   && unit.equals(other.unit);
+        }
+    }
+}
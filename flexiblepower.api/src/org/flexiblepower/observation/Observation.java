@@ -1,12 +1,8 @@
 package org.flexiblepower.observation;
 
-import java.lang.reflect.Method;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import javax.measure.Measure;
 
 /**
  * An {@link Observation} is a measurement that has been done at a certain time. It is a tuple with the observedAt date
@@ -22,6 +18,19 @@ import javax.measure.Measure;
  */
 public class Observation<T> {
     private static final int HASH_CONSTANT = 31;
+    private static final int NANOS_PER_MILLI = 1000000;
+    private static final int INT_BITS = 32;
+
+    /**
+     * A {@link Comparator} that orders observations by the time at which they have been observed (including the
+     * nanoseconds), without creating any {@link Date} objects.
+     */
+    public static final Comparator<Observation<?>> OBSERVED_AT_ORDER = new Comparator<Observation<?>>() {
+        @Override
+        public int compare(Observation<?> o1, Observation<?> o2) {
+            return o1.compareObservedAt(o2);
+        }
+    };
 
     /**
      * Creates a new {@link Observation} for the given tuple. This static helper method removes the need for specifying
@@ -40,7 +49,24 @@ public class Observation<T> {
         return new Observation<T>(observedAt, value);
     }
 
-    private final Date observedAt;
+    /**
+     * Creates a new {@link Observation} for the given tuple. This is exactly the same as calling
+     * <code>new Observation&lt;T&gt;(observedAtMillis, value)</code>.
+     * 
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value
+     * @param <T>
+     *            The type of the value that is stored in the {@link Observation}.
+     * @return The newly created Observation object.
+     */
+    public static <T> Observation<T> create(long observedAtMillis, T value) {
+        return new Observation<T>(observedAtMillis, value);
+    }
+
+    private final long observedAtMillis;
+    private final int nanosOfMilli;
     private final T value;
 
     /**
@@ -54,23 +80,116 @@ public class Observation<T> {
      *             When either the observedAt or the value is <code>null</code>.
      */
     public Observation(Date observedAt, T value) {
-        if (observedAt == null || value == null) {
+        this(observedAt.getTime(), 0, value);
+    }
+
+    /**
+     * Creates a new {@link Observation} for the given tuple.
+     * 
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param value
+     *            The value
+     * @throws NullPointerException
+     *             When the value is <code>null</code>.
+     */
+    public Observation(long observedAtMillis, T value) {
+        this(observedAtMillis, 0, value);
+    }
+
+    /**
+     * Creates a new {@link Observation} for the given tuple, with a time that is more precise than a millisecond.
+     * 
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param nanosOfMilli
+     *            The nanoseconds within that millisecond, from 0 to 999,999.
+     * @param value
+     *            The value
+     * @throws NullPointerException
+     *             When the value is <code>null</code>.
+     * @throws IllegalArgumentException
+     *             When the nanosOfMilli is out of range.
+     */
+    public Observation(long observedAtMillis, int nanosOfMilli, T value) {
+        if (value == null) {
             throw new NullPointerException();
         }
+        checkNanosOfMilli(nanosOfMilli);
 
-        this.observedAt = observedAt;
+        this.observedAtMillis = observedAtMillis;
+        this.nanosOfMilli = nanosOfMilli;
         this.value = value;
     }
 
     /**
-     * @return The date at which the value has been observed.
+     * Creates a new {@link Observation} without a value object. This is meant for subclasses that store their value in
+     * another form (e.g. as a primitive) and that override {@link #getValue()} to create the value object when it is
+     * needed.
+     * 
+     * @param observedAtMillis
+     *            The time at which the value has been observed, in milliseconds since the epoch.
+     * @param nanosOfMilli
+     *            The nanoseconds within that millisecond, from 0 to 999,999.
+     * @throws IllegalArgumentException
+     *             When the nanosOfMilli is out of range.
+     */
+    protected Observation(long observedAtMillis, int nanosOfMilli) {
+        checkNanosOfMilli(nanosOfMilli);
+
+        this.observedAtMillis = observedAtMillis;
+        this.nanosOfMilli = nanosOfMilli;
+        value = null;
+    }
+
+    private static void checkNanosOfMilli(int nanosOfMilli) {
+        if (nanosOfMilli < 0 || nanosOfMilli >= NANOS_PER_MILLI) {
+            throw new IllegalArgumentException("The nanoseconds of the millisecond must be between 0 and 999999, not "
+                                               + nanosOfMilli);
+        }
+    }
+
+    /**
+     * @return The date at which the value has been observed. A new {@link Date} is created on each call, use
+     *         {@link #getObservedAtMillis()} to avoid that.
      */
     public Date getObservedAt() {
-        return observedAt;
+        return new Date(observedAtMillis);
+    }
+
+    /**
+     * @return The time at which the value has been observed, in milliseconds since the epoch.
+     */
+    public long getObservedAtMillis() {
+        return observedAtMillis;
+    }
+
+    /**
+     * @return The nanoseconds within the millisecond of {@link #getObservedAtMillis()} at which the value has been
+     *         observed, from 0 to 999,999. This is 0 when the observation has been created with a precision of
+     *         milliseconds.
+     */
+    public int getNanosOfMilli() {
+        return nanosOfMilli;
+    }
+
+    /**
+     * Compares the time at which this observation and the other one have been observed.
+     * 
+     * @param other
+     *            The other observation.
+     * @return A negative number, zero or a positive number when this observation has been observed before, at the same
+     *         time as or after the other observation.
+     */
+    public int compareObservedAt(Observation<?> other) {
+        if (observedAtMillis != other.observedAtMillis) {
+            return observedAtMillis < other.observedAtMillis ? -1 : 1;
+        }
+        return nanosOfMilli < other.nanosOfMilli ? -1 : (nanosOfMilli == other.nanosOfMilli ? 0 : 1);
     }
 
     /**
-     * @return The value
+     * @return The value (never <code>null</code>)
      */
     public T getValue() {
         return value;
@@ -87,47 +206,53 @@ public class Observation<T> {
      * @return The object when such a value has been found, <code>null</code> otherwise.
      */
     public Object getValue(String name) {
-        return ObservationTranslationHelper.getMember(value, name);
+        return ObservationTranslationHelper.getMember(getValue(), name);
+    }
+
+    /**
+     * Finds a part of the value using a precompiled path. This is equal to calling
+     * <code>getValueMap().get(path.getPath())</code>, but the getters on the path have already been resolved.
+     * 
+     * @param path
+     *            The path, which must have been compiled for the class of the value (or one of its superclasses).
+     * @return The object when such a value has been found, <code>null</code> otherwise.
+     * @throws IllegalArgumentException
+     *             When the path has been compiled for another class.
+     */
+    public Object getValue(ValuePath path) {
+        return path.get(getValue());
     }
 
     /**
      * Detects all the parts of the value, assuming a Java bean. This will detect all getter methods and return the
-     * corresponding sub-values.
+     * corresponding sub-values. The getters and keys are determined only once for each class of value.
      * 
      * @return A {@link Map} with all the sub-values.
      */
     public Map<String, Object> getValueMap() {
-        Map<String, Object> result = new HashMap<String, Object>();
-        fillValueMap(null, result, value);
-        return result;
-    }
-
-    private static void fillValueMap(String prefix, Map<String, Object> result, Object value) {
-        Map<String, Method> methods = ObservationTranslationHelper.getGetterMethods(value.getClass());
-        for (Entry<String, Method> entry : methods.entrySet()) {
-            String key = prefix == null ? entry.getKey() : prefix + "." + entry.getKey();
-            Method method = entry.getValue();
-            Object object = ObservationTranslationHelper.executeMethod(value, method);
-            if (object != null) {
-                if (object instanceof Measure) {
-                    result.put(key, ((Measure<?, ?>) object).getValue());
-                    result.put(key + ".unit", ((Measure<?, ?>) object).getUnit().toString());
-                } else if (object.getClass().isEnum()) {
-                    result.put(key, object.toString());
-                } else {
-                    result.put(key, object);
-
-                    if (ObservationTranslationHelper.isJavaBean(object.getClass())) {
-                        fillValueMap(key, result, object);
-                    }
-                }
-            }
-        }
+        T object = getValue();
+        return ValueMapPlan.forClass(object.getClass()).execute(object);
+    }
+
+    /**
+     * Gives the same sub-values as {@link #getValueMap()}, but can do so lazily. This is useful when only a couple of
+     * the sub-values are needed, e.g. <code>getValueMap(true).get("power")</code>.
+     * 
+     * @param lazy
+     *            When <code>true</code>, a read-only view is returned that only calls the getters that are needed for
+     *            the keys that are asked for, and remembers their values. Iterating over the view (or asking for its
+     *            size) still needs all the sub-values. This view is not thread-safe. When <code>false</code>, this is
+     *            the same as {@link #getValueMap()}.
+     * @return A {@link Map} with all the sub-values.
+     */
+    public Map<String, Object> getValueMap(boolean lazy) {
+        return lazy ? new LazyValueMap(getValue()) : getValueMap();
     }
 
     @Override
     public int hashCode() {
-        return HASH_CONSTANT * (observedAt.hashCode() + HASH_CONSTANT * value.hashCode());
+        int timeHash = (int) (observedAtMillis ^ (observedAtMillis >>> INT_BITS)) + HASH_CONSTANT * nanosOfMilli;
+        return HASH_CONSTANT * (timeHash + HASH_CONSTANT * getValue().hashCode());
     }
 
     @Override
@@ -138,12 +263,13 @@ public class Observation<T> {
             return false;
         } else {
             Observation<?> other = (Observation<?>) obj;
-            return observedAt.equals(other.observedAt) && value.equals(other.value);
+            return observedAtMillis == other.observedAtMillis && nanosOfMilli == other.nanosOfMilli
+                   && getValue().equals(other.getValue());
         }
     }
 
     @Override
     public String toString() {
-        return "Observation [observedAt=" + observedAt + ", value=" + value + "]";
+        return "Observation [observedAt=" + getObservedAt() + ", value=" + getValue() + "]";
     }
 }
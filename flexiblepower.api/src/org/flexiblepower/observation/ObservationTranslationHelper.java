@@ -1,19 +1,155 @@
 package org.flexiblepower.observation;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Map.Entry;
 
 /**
  * This utility class has a 2 methods that are used by the {@link Observation#getValueMap()} and
  * {@link Observation#getValue(String)} methods. It finds the all the getX() methods of a class using the
  * {@link #getGetterMethods(Class)} function and it can test if it is a valid java bean (see {@link #isJavaBean(Class)}.
+ *
+ * The metadata of each class is determined only once and may be used concurrently by many threads. For each getter
+ * method a {@link Getter} is created once, which is used to call the getter without going through
+ * {@link Method#invoke(Object, Object...)} each time (see {@link #getGetters(Class)}).
  */
 public final class ObservationTranslationHelper {
-    private static WeakHashMap<Class<?>, Map<String, Method>> cache = new WeakHashMap<Class<?>, Map<String, Method>>();
+    /**
+     * A {@link Getter} can read one member of a java bean. It is created once for each getter method of a class, and
+     * then uses a {@link MethodHandle} to call the method. When method handles can not be used (e.g. on restricted
+     * runtimes or because of a security manager), it falls back to reflection.
+     */
+    public abstract static class Getter {
+        private final String name;
+        private final Method method;
+
+        Getter(String name, Method method) {
+            this.name = name;
+            this.method = method;
+        }
+
+        /**
+         * @return The name of the member, as it is used in the {@link Observation#getValueMap()}.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The getter method that is being called.
+         */
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * @return The declared return type of the getter method.
+         */
+        public Class<?> getType() {
+            return method.getReturnType();
+        }
+
+        /**
+         * Calls the getter method on the given object. Any exception thrown by the getter is wrapped in a
+         * {@link RuntimeException}.
+         *
+         * @param object
+         *            The object on which to call the getter method.
+         * @return The result of the invocation.
+         */
+        public abstract Object get(Object object);
+
+        @Override
+        public String toString() {
+            return "Getter [" + name + " -> " + method + "]";
+        }
+    }
+
+    /**
+     * Calls the getter through a {@link MethodHandle} that has been adapted to <code>(Object)Object</code>. This class
+     * is only loaded when the handle can be created, so runtimes without <code>java.lang.invoke</code> never touch it.
+     */
+    private static final class MethodHandleGetter extends Getter {
+        private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class);
+
+        private final MethodHandle handle;
+
+        MethodHandleGetter(String name, Method method) throws IllegalAccessException {
+            super(name, method);
+            MethodHandle target = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                // A static getter ignores the object, just like Method.invoke does
+                target = MethodHandles.dropArguments(target, 0, Object.class);
+            }
+            handle = target.asType(GENERIC_TYPE);
+        }
+
+        @Override
+        public Object get(Object object) {
+            try {
+                return handle.invokeExact(object);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Calls the getter through {@link Method#invoke(Object, Object...)}. This is the fallback when no
+     * {@link MethodHandle} could be created.
+     */
+    private static final class ReflectionGetter extends Getter {
+        ReflectionGetter(String name, Method method) {
+            super(name, method);
+        }
+
+        @Override
+        public Object get(Object object) {
+            return invoke(object, getMethod());
+        }
+    }
+
+    /**
+     * Holds the metadata of a single class.
+     */
+    private static final class ClassInfo {
+        final Map<String, Method> methods;
+        final Map<String, Getter> getters;
+
+        ClassInfo(Map<String, Getter> getters) {
+            Map<String, Method> methods = new HashMap<String, Method>();
+            for (Entry<String, Getter> entry : getters.entrySet()) {
+                methods.put(entry.getKey(), entry.getValue().getMethod());
+            }
+            this.methods = Collections.unmodifiableMap(methods);
+            this.getters = Collections.unmodifiableMap(getters);
+        }
+    }
+
+    private static final ClassInfo EMPTY = new ClassInfo(Collections.<String, Getter> emptyMap());
+
+    private static final String GET_PREFIX = "get";
+    private static final String IS_PREFIX = "is";
+
+    /**
+     * The metadata of each class. A {@link ClassValue} is safe to use concurrently and does not keep the classes (and
+     * thereby their bundle classloaders) from being unloaded.
+     */
+    private static final ClassValue<ClassInfo> CACHE = new ClassValue<ClassInfo>() {
+        @Override
+        protected ClassInfo computeValue(Class<?> clazz) {
+            return createClassInfo(clazz);
+        }
+    };
 
     private ObservationTranslationHelper() {
     }
@@ -21,49 +157,99 @@ public final class ObservationTranslationHelper {
     private static boolean isGetter(Method method) {
         String name = method.getName();
         if (method.getParameterTypes().length == 0 && method.getReturnType() != Void.TYPE) {
-            if (name.startsWith("get") || name.startsWith("is")) {
+            if (name.startsWith(GET_PREFIX) || name.startsWith(IS_PREFIX)) {
                 return !name.equals("getClass");
             }
         }
         return false;
     }
 
-    private static Map<String, Method> createGetterMethods(Class<?> clazz) {
-        Map<String, Method> result = new HashMap<String, Method>();
+    private static Getter createGetter(String name, Method method) {
+        try {
+            method.setAccessible(true);
+        } catch (SecurityException ex) {
+            // Only public methods of public classes can be used then
+        }
+        try {
+            return new MethodHandleGetter(name, method);
+        } catch (IllegalAccessException ex) {
+            return new ReflectionGetter(name, method);
+        } catch (SecurityException ex) {
+            return new ReflectionGetter(name, method);
+        } catch (LinkageError ex) {
+            // The java.lang.invoke package is not available
+            return new ReflectionGetter(name, method);
+        }
+    }
+
+    private static ClassInfo createClassInfo(Class<?> clazz) {
+        Map<String, Getter> result = new HashMap<String, Getter>();
         for (Method method : clazz.getMethods()) {
             if (isGetter(method)) {
-                String name = null;
-                if (name == null || name.isEmpty()) {
-                    name = method.getName();
-                    name = name.startsWith("get") ? name.substring("get".length()) : name.substring("is".length());
-                    name = name.replaceAll("([A-Z])", "_$1").toLowerCase();
-                    if (name.charAt(0) == '_') {
-                        name = name.substring(1);
-                    }
+                String methodName = method.getName();
+                String name = toMemberName(methodName,
+                                           methodName.startsWith(GET_PREFIX) ? GET_PREFIX.length()
+                                                                             : IS_PREFIX.length());
+                if (!name.isEmpty()) {
+                    result.put(name, createGetter(name, method));
                 }
+            }
+        }
+        return new ClassInfo(result);
+    }
 
-                result.put(name, method);
+    /**
+     * Translates the camel-case name of a getter method to the name of the member, by placing an underscore before
+     * each capital (except at the start) and changing everything to lower case (e.g. "getComplexNamingType" becomes
+     * "complex_naming_type").
+     *
+     * @param methodName
+     *            The name of the getter method.
+     * @param start
+     *            The index at which the member name starts (the length of the "get" or "is" prefix).
+     * @return The interned member name.
+     */
+    static String toMemberName(String methodName, int start) {
+        int length = methodName.length();
+        StringBuilder sb = new StringBuilder(length + (length >> 2));
+        for (int ix = start; ix < length; ix++) {
+            char c = methodName.charAt(ix);
+            if (c >= 'A' && c <= 'Z') {
+                if (ix > start) {
+                    sb.append('_');
+                }
+                sb.append((char) (c + ('a' - 'A')));
+            } else {
+                sb.append(Character.toLowerCase(c));
             }
         }
-        return result;
+        return sb.toString().intern();
+    }
+
+    private static ClassInfo getClassInfo(Class<?> clazz) {
+        if (isPrimite(clazz)) {
+            return EMPTY;
+        }
+        return CACHE.get(clazz);
     }
 
     /**
      * @param clazz
      *            The class from which it will detect all the getter methods.
-     * @return A map with the names of the members as key and the {@link Method} as value.
+     * @return An unmodifiable map with the names of the members as key and the {@link Method} as value.
      */
     public static Map<String, Method> getGetterMethods(Class<?> clazz) {
-        if (isPrimite(clazz)) {
-            return Collections.emptyMap();
-        }
+        return getClassInfo(clazz).methods;
+    }
 
-        Map<String, Method> result = cache.get(clazz);
-        if (result == null) {
-            result = createGetterMethods(clazz);
-            cache.put(clazz, result);
-        }
-        return result;
+    /**
+     * @param clazz
+     *            The class from which it will detect all the getter methods.
+     * @return An unmodifiable map with the names of the members as key and the {@link Getter} that calls the getter
+     *         method as value.
+     */
+    public static Map<String, Getter> getGetters(Class<?> clazz) {
+        return getClassInfo(clazz).getters;
     }
 
     /**
@@ -103,11 +289,11 @@ public final class ObservationTranslationHelper {
             String key = name.substring(0, ix);
             String rest = name.substring(ix + 1);
 
-            Method method = getGetterMethods(object.getClass()).get(key);
-            return method != null ? getMember(executeMethod(object, method), rest) : null;
+            Getter getter = getGetters(object.getClass()).get(key);
+            return getter != null ? getMember(getter.get(object), rest) : null;
         } else {
-            Method method = getGetterMethods(object.getClass()).get(name);
-            return method != null ? executeMethod(object, method) : null;
+            Getter getter = getGetters(object.getClass()).get(name);
+            return getter != null ? getter.get(object) : null;
         }
     }
 
@@ -123,8 +309,12 @@ public final class ObservationTranslationHelper {
      * @return The result of the invocation.
      */
     public static Object executeMethod(Object object, Method method) {
+        method.setAccessible(true);
+        return invoke(object, method);
+    }
+
+    private static Object invoke(Object object, Method method) {
         try {
-            method.setAccessible(true);
             return method.invoke(object);
         } catch (IllegalArgumentException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,156 @@
+package org.flexiblepower.observation;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.measure.Measure;
+
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
+
+/**
+ * A {@link ValueMapPlan} is the precompiled form of {@link Observation#getValueMap()} for one class. It holds the
+ * getters of the class in a fixed order, together with their (interned) keys and the way their results should be put
+ * into the map. A plan for a nested bean is compiled once for each key prefix and each runtime class of that bean, the
+ * first time it is encountered, so the keys never have to be concatenated while filling the map. Like the plans of
+ * the root classes, these are kept in a {@link ClassValue}, so a plan never keeps another class (or its bundle)
+ * loaded.
+ */
+final class ValueMapPlan {
+    private static final String SEPARATOR = ".";
+    private static final String UNIT_SUFFIX = ".unit";
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final ClassValue<ValueMapPlan> ROOT_PLANS = new ClassValue<ValueMapPlan>() {
+        @Override
+        protected ValueMapPlan computeValue(Class<?> type) {
+            return new ValueMapPlan(null, type);
+        }
+    };
+
+    private static final Comparator<Getter> BY_NAME = new Comparator<Getter>() {
+        @Override
+        public int compare(Getter o1, Getter o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    /**
+     * @param type
+     *            The class of the value of an {@link Observation}.
+     * @return The plan that fills the value map for values of exactly this class.
+     */
+    static ValueMapPlan forClass(Class<?> type) {
+        return ROOT_PLANS.get(type);
+    }
+
+    /**
+     * The plans for the nested beans of a single getter, one for each runtime class of the bean.
+     */
+    private static final class ChildPlans extends ClassValue<ValueMapPlan> {
+        private final String prefix;
+
+        ChildPlans(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected ValueMapPlan computeValue(Class<?> type) {
+            return new ValueMapPlan(prefix, type);
+        }
+    }
+
+    /**
+     * A single getter of the plan, with its full key.
+     */
+    private static final class Step {
+        final Getter getter;
+        final String key;
+        final String unitKey;
+        /**
+         * True when the declared type guarantees that the result is put into the map as is (e.g. primitives and
+         * strings). Otherwise the runtime type of the result decides.
+         */
+        final boolean plain;
+        /**
+         * The plans for the nested beans, or <code>null</code> when the step is plain.
+         */
+        final ChildPlans children;
+
+        Step(String prefix, Getter getter) {
+            this.getter = getter;
+            key = prefix == null ? getter.getName() : (prefix + SEPARATOR + getter.getName()).intern();
+            unitKey = (key + UNIT_SUFFIX).intern();
+            plain = isPlain(getter.getType());
+            children = plain ? null : new ChildPlans(key);
+        }
+    }
+
+    private static boolean isPlain(Class<?> type) {
+        if (type.isPrimitive()) {
+            return true;
+        }
+        // Final classes from the java library can never be a measure, an enumeration or a java bean
+        Package pkg = type.getPackage();
+        return Modifier.isFinal(type.getModifiers()) && !type.isEnum()
+               && !type.isArray()
+               && pkg != null
+               && pkg.getName().startsWith("java.");
+    }
+
+    private final Step[] steps;
+    /**
+     * The number of entries that have been put in the map the last time, which is used to presize the next map.
+     */
+    private volatile int expectedSize;
+
+    private ValueMapPlan(String prefix, Class<?> type) {
+        List<Getter> getters = new ArrayList<Getter>(ObservationTranslationHelper.getGetters(type).values());
+        Collections.sort(getters, BY_NAME);
+        steps = new Step[getters.size()];
+        for (int ix = 0; ix < steps.length; ix++) {
+            steps[ix] = new Step(prefix, getters.get(ix));
+        }
+        expectedSize = steps.length;
+    }
+
+    /**
+     * Creates the value map for the given value, which must be of the class of this plan.
+     *
+     * @param value
+     *            The value of the observation.
+     * @return A new {@link HashMap} with all the sub-values.
+     */
+    Map<String, Object> execute(Object value) {
+        Map<String, Object> result = new HashMap<String, Object>((int) (expectedSize / LOAD_FACTOR) + 1);
+        fill(result, value);
+        expectedSize = result.size();
+        return result;
+    }
+
+    private void fill(Map<String, Object> result, Object value) {
+        for (Step step : steps) {
+            Object object = step.getter.get(value);
+            if (object == null) {
+                continue;
+            } else if (step.plain) {
+                result.put(step.key, object);
+            } else if (object instanceof Measure) {
+                result.put(step.key, ((Measure<?, ?>) object).getValue());
+                result.put(step.unitKey, ((Measure<?, ?>) object).getUnit().toString());
+            } else if (object.getClass().isEnum()) {
+                result.put(step.key, object.toString());
+            } else {
+                result.put(step.key, object);
+
+                if (ObservationTranslationHelper.isJavaBean(object.getClass())) {
+                    step.children.get(object.getClass()).fill(result, object);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.flexiblepower.observation;
+
+import java.lang.reflect.Modifier;
+
+import javax.measure.Measure;
+
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
+
+/**
+ * A {@link ValuePath} is a precompiled reference to a sub-value of an observation value, such as
+ * "geo.latitude". It is compiled once for a root class, after which the chain of getters is already known:
+ *
+ * <pre>
+ * ValuePath latitude = ValuePath.compile(Location.class, &quot;geo.latitude&quot;);
+ * for (Observation&lt;Location&gt; observation : observations) {
+ *     Object value = observation.getValue(latitude);
+ * }
+ * </pre>
+ *
+ * The path uses the same names as the {@link Observation#getValueMap()} and gives the same value as
+ * <code>getValueMap().get(path)</code>: a {@link Measure} is unwrapped to its value (and its unit can be found with the
+ * ".unit" suffix) and an enumeration is translated to its name. A value that is itself a {@link Measure} is handled
+ * like any other java bean, so its members are "value" and "unit". When any of the getters along the path returns
+ * <code>null</code>, the result is <code>null</code>.
+ *
+ * Getters are resolved using the declared return types of the getters. When a part of the path can only be found on
+ * the runtime class of a sub-value (e.g. because the getter is declared to return an interface), that part is looked
+ * up when the path is evaluated.
+ *
+ * Instances of this class are immutable and thread-safe.
+ */
+public final class ValuePath {
+    private static final String SEPARATOR = "\\.";
+    private static final String UNIT = "unit";
+
+    /**
+     * Compiles the path for values of the given class.
+     *
+     * @param rootClass
+     *            The class of the values on which the path will be evaluated.
+     * @param path
+     *            The path, using dots as a separator.
+     * @return The compiled path.
+     * @throws IllegalArgumentException
+     *             When the path is empty, or one of its parts can not exist for the given root class.
+     */
+    public static ValuePath compile(Class<?> rootClass, String path) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("The path must not be empty");
+        }
+        String[] names = path.split(SEPARATOR, -1);
+        Getter[] getters = new Getter[names.length];
+
+        Class<?> type = rootClass;
+        for (int ix = 0; ix < names.length && type != null; ix++) {
+            if (ix > 0 && Measure.class.isAssignableFrom(type)) {
+                // Only the unit of a nested measure can be addressed, which is handled while evaluating
+                if (ix != names.length - 1 || !UNIT.equals(names[ix])) {
+                    throw new IllegalArgumentException("Only '" + UNIT
+                                                       + "' can follow a measure in path ["
+                                                       + path
+                                                       + "]");
+                }
+                break;
+            }
+
+            getters[ix] = ObservationTranslationHelper.getGetters(type).get(names[ix]);
+            if (getters[ix] == null && Modifier.isFinal(type.getModifiers())) {
+                throw new IllegalArgumentException("No member '" + names[ix]
+                                                   + "' in "
+                                                   + type.getName()
+                                                   + " for path ["
+                                                   + path
+                                                   + "]");
+            }
+            type = getters[ix] == null ? null : getters[ix].getType();
+        }
+        for (int ix = 0; ix < names.length; ix++) {
+            names[ix] = names[ix].intern();
+        }
+
+        return new ValuePath(path, rootClass, getters, names);
+    }
+
+    private final String path;
+    private final Class<?> rootClass;
+    /**
+     * The getter for each part, or <code>null</code> when it has to be found on the runtime class.
+     */
+    private final Getter[] getters;
+    private final String[] names;
+
+    private ValuePath(String path, Class<?> rootClass, Getter[] getters, String[] names) {
+        this.path = path;
+        this.rootClass = rootClass;
+        this.getters = getters;
+        this.names = names;
+    }
+
+    /**
+     * @return The class of the values on which this path can be evaluated.
+     */
+    public Class<?> getRootClass() {
+        return rootClass;
+    }
+
+    /**
+     * @return The path as it has been compiled.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Evaluates this path on the given value.
+     *
+     * @param value
+     *            The value, which must be an instance of the {@link #getRootClass() root class}.
+     * @return The sub-value, or <code>null</code> when it did not exist.
+     * @throws IllegalArgumentException
+     *             When the value is not an instance of the root class.
+     */
+    public Object get(Object value) {
+        if (!rootClass.isInstance(value)) {
+            throw new IllegalArgumentException("The path [" + path + "] can not be used on " + value);
+        }
+
+        Object current = value;
+        int last = getters.length - 1;
+        for (int ix = 0; ix <= last; ix++) {
+            // A measure can not be searched any deeper, except for its unit
+            if (ix > 0 && current instanceof Measure) {
+                return ix == last && UNIT.equals(names[ix]) ? ((Measure<?, ?>) current).getUnit().toString() : null;
+            }
+
+            Getter getter = getters[ix];
+            if (getter == null) {
+                getter = ObservationTranslationHelper.getGetters(current.getClass()).get(names[ix]);
+                if (getter == null) {
+                    return null;
+                }
+            }
+            current = getter.get(current);
+            if (current == null) {
+                return null;
+            }
+        }
+
+        if (current instanceof Measure) {
+            return ((Measure<?, ?>) current).getValue();
+        } else if (current.getClass().isEnum()) {
+            return current.toString();
+        } else {
+            return current;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValuePath [" + path + " on " + rootClass.getName() + "]";
+    }
+}
@@ -1,9 +1,16 @@
 package org.flexiblepower.observation.ext;
 
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.flexiblepower.context.FlexiblePowerContext;
+import org.flexiblepower.observation.BatchObservationConsumer;
 import org.flexiblepower.observation.Observation;
 import org.flexiblepower.observation.ObservationConsumer;
 import org.flexiblepower.observation.ObservationProvider;
@@ -11,24 +18,128 @@ import org.flexiblepower.observation.ObservationProvider;
 /**
  * Gives a basic implementation of an {@link ObservationProvider} where the {@link #subscribe(ObservationConsumer)} and
  * {@link #unsubscribe(ObservationConsumer)} methods are implemented. To publish a new observation, the
- * {@link #publish(Observation)} method should be used.
+ * {@link #publish(Observation)} method should be used. Several observations can be published at once with
+ * {@link #publish(Collection)}, which hands them over as a single batch to each {@link BatchObservationConsumer}.
+ * Subscribing and unsubscribing take constant time, also with thousands of consumers, while publishing iterates over an
+ * immutable snapshot of the consumers without locking.
+ *
+ * By default the observations are delivered synchronously, on the thread that publishes them. A subclass can choose to
+ * dispatch asynchronously instead (see {@link #AbstractObservationProvider(Executor, int, QueueFullPolicy)}). Then
+ * each consumer gets its own bounded queue, which is drained by a task on the executor, so a slow consumer does not
+ * stall the publisher or the other consumers. Each consumer still receives the observations in the order in which they
+ * have been published.
+ *
+ * Optionally the provider keeps an {@link ObservationHistory} of the recent observations, which all its consumers can
+ * query (see {@link #setHistory(ObservationHistory)}), and a {@link DeadbandFilter} that suppresses observations that
+ * have hardly changed (see {@link #setDeadbandFilter(DeadbandFilter)}).
+ *
+ * Consumers that only need a couple of attributes of the values can subscribe to a {@link Projection} of this provider
+ * (see {@link #project(Projection)}), in which case each observation is projected only once for all of them.
  *
  * @param <T>
  *            The type of the value
  */
 public abstract class AbstractObservationProvider<T> implements ObservationProvider<T> {
 
-    private final Set<ObservationConsumer<? super T>> consumers = new CopyOnWriteArraySet<ObservationConsumer<? super T>>();
+    private final SubscriberRegistry<ObservationConsumer<? super T>> consumers =
+            new SubscriberRegistry<ObservationConsumer<? super T>>();
     private final AtomicReference<Observation<? extends T>> lastObservation = new AtomicReference<Observation<? extends T>>(null);
 
+    private final Executor executor;
+    private final int queueCapacity;
+    private final QueueFullPolicy queueFullPolicy;
+    private final ConcurrentMap<ObservationConsumer<? super T>, ConsumerQueue<T>> queues;
+    private volatile ObservationHistory<T> history;
+    private volatile DeadbandFilter<T> deadbandFilter;
+    private final ConcurrentMap<Projection<?>, ProjectingProvider<T>> projections =
+            new ConcurrentHashMap<Projection<?>, ProjectingProvider<T>>();
+
+    /**
+     * Creates a provider that delivers the observations synchronously, on the thread that calls
+     * {@link #publish(Observation)}.
+     */
+    protected AbstractObservationProvider() {
+        executor = null;
+        queueCapacity = 0;
+        queueFullPolicy = null;
+        queues = null;
+    }
+
+    /**
+     * Creates a provider that delivers the observations asynchronously, using the given executor.
+     *
+     * @param executor
+     *            The executor that runs the tasks that deliver the observations to the consumers.
+     * @param queueCapacity
+     *            The maximum number of observations that can be waiting for each consumer.
+     * @param queueFullPolicy
+     *            What to do when a new observation is published while the queue of a consumer is full. Note that with
+     *            {@link QueueFullPolicy#BLOCK} the executor must not run its tasks on the publishing thread.
+     * @throws IllegalArgumentException
+     *             When the queueCapacity is not positive.
+     */
+    protected AbstractObservationProvider(Executor executor, int queueCapacity, QueueFullPolicy queueFullPolicy) {
+        if (executor == null || queueFullPolicy == null) {
+            throw new NullPointerException();
+        } else if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("The queueCapacity must be positive");
+        }
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.queueFullPolicy = queueFullPolicy;
+        queues = new ConcurrentHashMap<ObservationConsumer<? super T>, ConsumerQueue<T>>();
+    }
+
+    /**
+     * Creates a provider that delivers the observations asynchronously, using the
+     * {@link FlexiblePowerContext#submit(Runnable)} method of the context.
+     *
+     * @param context
+     *            The context that runs the tasks that deliver the observations to the consumers.
+     * @param queueCapacity
+     *            The maximum number of observations that can be waiting for each consumer.
+     * @param queueFullPolicy
+     *            What to do when a new observation is published while the queue of a consumer is full.
+     * @throws IllegalArgumentException
+     *             When the queueCapacity is not positive.
+     */
+    protected AbstractObservationProvider(final FlexiblePowerContext context,
+                                          int queueCapacity,
+                                          QueueFullPolicy queueFullPolicy) {
+        this(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                context.submit(command);
+            }
+        }, queueCapacity, queueFullPolicy);
+    }
+
     @Override
     public void subscribe(ObservationConsumer<? super T> consumer) {
-        consumers.add(consumer);
+        if (queues == null) {
+            consumers.add(consumer);
+        } else if (!queues.containsKey(consumer)) {
+            queues.putIfAbsent(consumer,
+                               new ConsumerQueue<T>(this, consumer, executor, queueCapacity, queueFullPolicy));
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * When dispatching asynchronously, the observations that are still queued for the consumer are discarded. An
+     * observation that is being delivered at this moment may still arrive after this method has returned.
+     */
     @Override
     public void unsubscribe(ObservationConsumer<? super T> consumer) {
-        consumers.remove(consumer);
+        if (queues == null) {
+            consumers.remove(consumer);
+        } else {
+            ConsumerQueue<T> queue = queues.remove(consumer);
+            if (queue != null) {
+                queue.close();
+            }
+        }
     }
 
     @Override
@@ -37,15 +148,156 @@ public abstract class AbstractObservationProvider<T> implements ObservationProvi
     }
 
     /**
-     * Publishes an observation to all the subscribed consumers.
+     * @return The history of recent observations, or <code>null</code> when this provider does not keep one.
+     */
+    public ObservationHistory<T> getHistory() {
+        return history;
+    }
+
+    /**
+     * Sets the history in which all the observations that are published from now on will be remembered. The history
+     * is updated before the observations are delivered to the consumers.
+     *
+     * @param history
+     *            The history, or <code>null</code> to stop keeping one.
+     */
+    protected void setHistory(ObservationHistory<T> history) {
+        this.history = history;
+    }
+
+    /**
+     * @return The filter that suppresses observations that have hardly changed, or <code>null</code> when all
+     *         observations are published.
+     */
+    public DeadbandFilter<T> getDeadbandFilter() {
+        return deadbandFilter;
+    }
+
+    /**
+     * Sets the filter that decides which observations are published. A suppressed observation is not delivered to the
+     * consumers, is not added to the history and does not change the {@link #getLastObservation() last observation}.
+     *
+     * @param deadbandFilter
+     *            The filter, or <code>null</code> to publish all observations.
+     */
+    protected void setDeadbandFilter(DeadbandFilter<T> deadbandFilter) {
+        this.deadbandFilter = deadbandFilter;
+    }
+
+    /**
+     * Gives a provider of the projected observations of this provider. A consumer that subscribes to it receives each
+     * published observation as a {@link ProjectedRecord} with only the selected attributes. All the consumers of equal
+     * projections share the same provider, so each observation is projected once for all of them, on the thread that
+     * delivers it to the projection.
+     *
+     * @param projection
+     *            The attributes that are needed.
+     * @return The provider of the projected observations, which is subscribed to this provider as long as it has
+     *         consumers. When its last consumer unsubscribes it is forgotten, so a later call gives a new provider.
+     */
+    public ObservationProvider<ProjectedRecord> project(Projection<? super T> projection) {
+        ProjectingProvider<T> provider = projections.get(projection);
+        if (provider == null) {
+            provider = new ProjectingProvider<T>(this, projection);
+            ProjectingProvider<T> existing = projections.putIfAbsent(projection, provider);
+            if (existing != null) {
+                provider = existing;
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Forgets the provider of a projection once it has no consumers, unless it has already been replaced.
+     */
+    void removeProjection(Projection<?> projection, ProjectingProvider<T> provider) {
+        projections.remove(projection, provider);
+    }
+
+    /**
+     * Publishes an observation to all the subscribed consumers. When dispatching asynchronously, this only adds the
+     * observation to the queues of the consumers.
      *
      * @param observation
      *            The observation that will be sent.
      */
     public void publish(Observation<? extends T> observation) {
+        DeadbandFilter<T> filter = deadbandFilter;
+        if (filter != null && !filter.accept(observation)) {
+            return;
+        }
         lastObservation.set(observation);
-        for (ObservationConsumer<? super T> consumer : consumers) {
-            consumer.consume(this, observation);
+        ObservationHistory<T> currentHistory = history;
+        if (currentHistory != null) {
+            currentHistory.add(observation);
+        }
+        if (queues == null) {
+            for (ObservationConsumer<? super T> consumer : consumers.snapshot()) {
+                consumer.consume(this, observation);
+            }
+        } else {
+            for (ConsumerQueue<T> queue : queues.values()) {
+                queue.offer(observation);
+            }
+        }
+    }
+
+    /**
+     * Publishes several observations to all the subscribed consumers. A {@link BatchObservationConsumer} receives them
+     * with a single call, the other consumers receive them one by one. Afterwards the
+     * {@link #getLastObservation() last observation} is the last one of the collection (that has not been suppressed by
+     * the {@link DeadbandFilter}).
+     *
+     * @param observations
+     *            The observations that will be sent, in the iteration order of the collection.
+     */
+    public void publish(Collection<? extends Observation<? extends T>> observations) {
+        if (observations.isEmpty()) {
+            return;
+        }
+        DeadbandFilter<T> filter = deadbandFilter;
+        List<Observation<? extends T>> copy = new ArrayList<Observation<? extends T>>(observations.size());
+        for (Observation<? extends T> observation : observations) {
+            if (filter == null || filter.accept(observation)) {
+                copy.add(observation);
+            }
+        }
+        if (copy.isEmpty()) {
+            return;
+        }
+        List<Observation<? extends T>> batch = Collections.unmodifiableList(copy);
+        lastObservation.set(batch.get(batch.size() - 1));
+        ObservationHistory<T> currentHistory = history;
+        if (currentHistory != null) {
+            for (Observation<? extends T> observation : batch) {
+                currentHistory.add(observation);
+            }
+        }
+        if (queues == null) {
+            for (ObservationConsumer<? super T> consumer : consumers.snapshot()) {
+                deliver(this, consumer, batch);
+            }
+        } else {
+            for (ConsumerQueue<T> queue : queues.values()) {
+                queue.offerAll(batch);
+            }
+        }
+    }
+
+    /**
+     * Delivers the batch to the consumer, with a single call when it is a {@link BatchObservationConsumer}.
+     */
+    static <T> void deliver(ObservationProvider<T> source,
+                            ObservationConsumer<? super T> consumer,
+                            List<? extends Observation<? extends T>> batch) {
+        if (consumer instanceof BatchObservationConsumer) {
+            @SuppressWarnings("unchecked")
+            BatchObservationConsumer<? super T> batchConsumer = (BatchObservationConsumer<? super T>) consumer;
+            batchConsumer.consumeBatch(source, batch);
+        } else {
+            for (Observation<? extends T> observation : batch) {
+                consumer.consume(source, observation);
+            }
         }
     }
 }
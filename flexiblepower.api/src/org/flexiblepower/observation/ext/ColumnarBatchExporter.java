@@ -0,0 +1,591 @@
+package org.flexiblepower.observation.ext;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.measure.Measurable;
+import javax.measure.Measure;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+import org.flexiblepower.observation.ObservationTranslationHelper;
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
+import org.flexiblepower.observation.ValuePath;
+
+/**
+ * A {@link ColumnarBatchExporter} writes the observations of a single value class to a CSV or a binary file, in
+ * batches of a fixed number of rows. It can be subscribed as an {@link ObservationConsumer} or be given observations
+ * using {@link #add(Observation)}.
+ *
+ * The columns are determined once from the getters of the value class, using the same names as the
+ * {@link Observation#getValueMap()}: the getters of nested java beans are included with their prefix and a
+ * {@link Measure} gives a column for its value and one for its unit. A value class without getters (e.g. a
+ * {@link Double}) gives a single column with the name <code>value</code>, and a {@link Measure} gives the columns
+ * <code>value</code> and <code>unit</code>. Each observation is copied directly into typed arrays (timestamps and
+ * doubles, longs, booleans and strings or, for the binary format, dictionary codes for strings and enumerations),
+ * which are written when the batch is full.
+ *
+ * The binary format consists of a header (the magic number, the version, the number of columns and the type and name
+ * of each column) followed by the batches. A batch starts with the number of rows and the timestamps, followed by each
+ * column:
+ * <ul>
+ * <li>double: the values, where <code>null</code> is stored as {@link Double#NaN};</li>
+ * <li>long: a bitmap of the rows that have a value, followed by the values;</li>
+ * <li>boolean: a byte per row, which is 0, 1 or -1 for <code>null</code>;</li>
+ * <li>string: the index of the first new dictionary entry, the number of new dictionary entries and the entries
+ * themselves, followed by the dictionary index for each row (or -1 for <code>null</code>).</li>
+ * </ul>
+ * All numbers are big-endian and strings are stored as their length followed by their UTF-8 encoding. The dictionary of
+ * a string column is kept between batches, so each batch only holds the entries that have not been written before.
+ * When the dictionary has grown beyond {@value #MAX_DICTIONARY_SIZE} entries it starts over, which is the case when
+ * the index of the first new entry is 0.
+ *
+ * @param <T>
+ *            The type of the value
+ */
+public final class ColumnarBatchExporter<T> implements ObservationConsumer<T>, Flushable, Closeable {
+    private static final int MAGIC = 0x46504342;
+    private static final int VERSION = 1;
+    private static final String VALUE = "value";
+    private static final String UNIT = "unit";
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String LINE_END = "\r\n";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BYTE_BITS = 8;
+    private static final int MAX_DICTIONARY_SIZE = 65536;
+
+    /**
+     * Creates an exporter that writes CSV, with a header line and a line for each observation. The first column is
+     * the timestamp in milliseconds since the epoch, <code>null</code> values are left empty.
+     *
+     * @param type
+     *            The class of the values.
+     * @param batchSize
+     *            The number of observations that are collected before they are written.
+     * @param writer
+     *            The writer to which the CSV is written.
+     * @param <T>
+     *            The type of the value
+     * @return The new exporter.
+     */
+    public static <T> ColumnarBatchExporter<T> toCsv(Class<T> type, int batchSize, Writer writer) {
+        return new ColumnarBatchExporter<T>(type, batchSize, new CsvFormat(writer), false);
+    }
+
+    /**
+     * Creates an exporter that writes the binary columnar format that is described above.
+     *
+     * @param type
+     *            The class of the values.
+     * @param batchSize
+     *            The number of observations in each batch.
+     * @param out
+     *            The stream to which the batches are written.
+     * @param <T>
+     *            The type of the value
+     * @return The new exporter.
+     */
+    public static <T> ColumnarBatchExporter<T> toBinary(Class<T> type, int batchSize, OutputStream out) {
+        return new ColumnarBatchExporter<T>(type, batchSize, new BinaryFormat(out), true);
+    }
+
+    private enum ColumnType {
+        DOUBLE, LONG, BOOLEAN, STRING;
+    }
+
+    /**
+     * A single column, which holds the values of the current batch in the array that fits its type.
+     */
+    private static final class Column {
+        final String name;
+        final ColumnType type;
+        /**
+         * The path to the value, or <code>null</code> when the value itself is used.
+         */
+        final ValuePath path;
+
+        double[] doubles;
+        long[] longs;
+        boolean[] present;
+        byte[] booleans;
+        /**
+         * The strings of the batch, when they are not encoded with a dictionary.
+         */
+        String[] strings;
+        /**
+         * The dictionary codes of the strings of the batch, when they are encoded with a dictionary.
+         */
+        int[] codes;
+        Map<String, Integer> dictionary;
+        List<String> entries;
+        int writtenEntries;
+
+        Column(String name, ColumnType type, ValuePath path, boolean encoded, int batchSize) {
+            this.name = name;
+            this.type = type;
+            this.path = path;
+            switch (type) {
+            case DOUBLE:
+                doubles = new double[batchSize];
+                break;
+            case LONG:
+                longs = new long[batchSize];
+                present = new boolean[batchSize];
+                break;
+            case BOOLEAN:
+                booleans = new byte[batchSize];
+                break;
+            default:
+                if (encoded) {
+                    codes = new int[batchSize];
+                    dictionary = new HashMap<String, Integer>();
+                    entries = new ArrayList<String>();
+                } else {
+                    strings = new String[batchSize];
+                }
+                break;
+            }
+        }
+
+        void set(int row, Object root) {
+            Object value = path == null ? root : path.get(root);
+            switch (type) {
+            case DOUBLE:
+                doubles[row] = value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                break;
+            case LONG:
+                present[row] = value instanceof Number;
+                longs[row] = present[row] ? ((Number) value).longValue() : 0;
+                break;
+            case BOOLEAN:
+                booleans[row] = value == null ? -1 : ((Boolean) value).booleanValue() ? (byte) 1 : (byte) 0;
+                break;
+            default:
+                if (strings != null) {
+                    strings[row] = value == null ? null : value.toString();
+                } else {
+                    codes[row] = value == null ? -1 : code(value.toString());
+                }
+                break;
+            }
+        }
+
+        private int code(String string) {
+            Integer result = dictionary.get(string);
+            if (result == null) {
+                result = entries.size();
+                dictionary.put(string, result);
+                entries.add(string);
+            }
+            return result;
+        }
+
+        /**
+         * Forgets the dictionary when it has become too large, after a batch has been written.
+         */
+        void trimDictionary() {
+            if (entries.size() > MAX_DICTIONARY_SIZE) {
+                dictionary.clear();
+                entries.clear();
+                writtenEntries = 0;
+            }
+        }
+    }
+
+    private final Class<T> type;
+    private final int batchSize;
+    private final Format format;
+    private final boolean encoded;
+    private final Column[] columns;
+    private final List<String> columnNames;
+
+    // The current batch, guarded by this
+    private final long[] timestamps;
+    private int size;
+    private boolean started;
+
+    private ColumnarBatchExporter(Class<T> type, int batchSize, Format format, boolean encoded) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive");
+        }
+        this.type = type;
+        this.batchSize = batchSize;
+        this.format = format;
+        this.encoded = encoded;
+
+        List<Column> result = new ArrayList<Column>();
+        if (Measurable.class.isAssignableFrom(type)) {
+            // Just like in the value map, a measure is a bean with a value and a unit
+            result.add(new Column(VALUE, ColumnType.DOUBLE, ValuePath.compile(type, VALUE), encoded, batchSize));
+            result.add(new Column(UNIT, ColumnType.STRING, ValuePath.compile(type, UNIT), encoded, batchSize));
+        } else if (ObservationTranslationHelper.getGetters(type).isEmpty()) {
+            result.add(new Column(VALUE, typeOf(type), null, encoded, batchSize));
+        } else {
+            addColumns(result, "", type, new HashSet<Class<?>>());
+        }
+        columns = result.toArray(new Column[result.size()]);
+
+        List<String> names = new ArrayList<String>(columns.length);
+        for (Column column : columns) {
+            names.add(column.name);
+        }
+        columnNames = Collections.unmodifiableList(names);
+        timestamps = new long[batchSize];
+    }
+
+    private void addColumns(List<Column> result, String prefix, Class<?> beanType, Set<Class<?>> visiting) {
+        if (!visiting.add(beanType)) {
+            throw new IllegalArgumentException("The type " + type.getName() + " is circular");
+        }
+        Map<String, Getter> getters = ObservationTranslationHelper.getGetters(beanType);
+        List<String> names = new ArrayList<String>(getters.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            Getter getter = getters.get(name);
+            String key = prefix + name;
+            Class<?> getterType = getter.getType();
+            if (Measurable.class.isAssignableFrom(getterType)) {
+                String unitKey = key + "." + UNIT;
+                result.add(new Column(key, ColumnType.DOUBLE, ValuePath.compile(type, key), encoded, batchSize));
+                result.add(new Column(unitKey,
+                                      ColumnType.STRING,
+                                      ValuePath.compile(type, unitKey),
+                                      encoded,
+                                      batchSize));
+            } else if (isNestedBean(getterType)) {
+                addColumns(result, key + ".", getterType, visiting);
+            } else {
+                result.add(new Column(key, typeOf(getterType), ValuePath.compile(type, key), encoded, batchSize));
+            }
+        }
+        visiting.remove(beanType);
+    }
+
+    private static boolean isNestedBean(Class<?> type) {
+        return !type.isInterface() && !Modifier.isAbstract(type.getModifiers())
+               && ObservationTranslationHelper.isJavaBean(type);
+    }
+
+    private static ColumnType typeOf(Class<?> type) {
+        if (type == double.class || type == float.class
+            || type == Double.class
+            || type == Float.class
+            || Measurable.class.isAssignableFrom(type)) {
+            return ColumnType.DOUBLE;
+        } else if (type == long.class || type == int.class
+                   || type == short.class
+                   || type == byte.class
+                   || type == Long.class
+                   || type == Integer.class
+                   || type == Short.class
+                   || type == Byte.class) {
+            return ColumnType.LONG;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return ColumnType.BOOLEAN;
+        } else {
+            return ColumnType.STRING;
+        }
+    }
+
+    /**
+     * @return The names of the columns, in the order in which they are written (not including the timestamp).
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Adds an observation to the current batch, which is written when it is full.
+     *
+     * @param observation
+     *            The observation, of which the value must be an instance of the value class.
+     * @throws IOException
+     *             When the batch could not be written. The observations of that batch are lost, but the exporter can
+     *             still be used for the next batch.
+     */
+    public synchronized void add(Observation<? extends T> observation) throws IOException {
+        Object value = type.cast(observation.getValue());
+        timestamps[size] = observation.getObservedAtMillis();
+        for (Column column : columns) {
+            column.set(size, value);
+        }
+        size++;
+        if (size == batchSize) {
+            writeBatch();
+        }
+    }
+
+    @Override
+    public void consume(ObservationProvider<? extends T> source, Observation<? extends T> observation) {
+        try {
+            add(observation);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not export the observation", ex);
+        }
+    }
+
+    private void writeBatch() throws IOException {
+        if (!started) {
+            format.writeHeader(columns);
+            started = true;
+        }
+        if (size > 0) {
+            try {
+                format.writeBatch(timestamps, size, columns);
+            } finally {
+                // A batch that could not be written is dropped, so that the next batch can start
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Writes the observations that have been added, even when the batch is not full yet.
+     *
+     * @throws IOException
+     *             When the batch could not be written.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        writeBatch();
+        format.flush();
+    }
+
+    /**
+     * Flushes the exporter and closes the underlying writer or stream.
+     *
+     * @throws IOException
+     *             When the batch could not be written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        format.close();
+    }
+
+    /**
+     * The way in which the batches are written.
+     */
+    private interface Format extends Flushable, Closeable {
+        void writeHeader(Column[] columns) throws IOException;
+
+        void writeBatch(long[] timestamps, int size, Column[] columns) throws IOException;
+    }
+
+    private static final class CsvFormat implements Format {
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder();
+
+        CsvFormat(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void writeHeader(Column[] columns) throws IOException {
+            line.setLength(0);
+            line.append("timestamp");
+            for (Column column : columns) {
+                line.append(SEPARATOR);
+                appendString(column.name);
+            }
+            writer.write(line.append(LINE_END).toString());
+        }
+
+        @Override
+        public void writeBatch(long[] timestamps, int size, Column[] columns) throws IOException {
+            for (int row = 0; row < size; row++) {
+                line.setLength(0);
+                line.append(timestamps[row]);
+                for (Column column : columns) {
+                    line.append(SEPARATOR);
+                    switch (column.type) {
+                    case DOUBLE:
+                        if (!Double.isNaN(column.doubles[row])) {
+                            line.append(column.doubles[row]);
+                        }
+                        break;
+                    case LONG:
+                        if (column.present[row]) {
+                            line.append(column.longs[row]);
+                        }
+                        break;
+                    case BOOLEAN:
+                        if (column.booleans[row] >= 0) {
+                            line.append(column.booleans[row] == 1);
+                        }
+                        break;
+                    default:
+                        if (column.strings[row] != null) {
+                            appendString(column.strings[row]);
+                        }
+                        break;
+                    }
+                }
+                writer.write(line.append(LINE_END).toString());
+            }
+        }
+
+        private void appendString(String string) {
+            if (string.indexOf(SEPARATOR) < 0 && string.indexOf(QUOTE) < 0
+                && string.indexOf('\n') < 0
+                && string.indexOf('\r') < 0) {
+                line.append(string);
+            } else {
+                line.append(QUOTE).append(string.replace("\"", "\"\"")).append(QUOTE);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static final class BinaryFormat implements Format {
+        private final OutputStream out;
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+        BinaryFormat(OutputStream out) {
+            this.out = out;
+            channel = Channels.newChannel(out);
+        }
+
+        private ByteBuffer buffer(int capacity) {
+            if (buffer.capacity() < capacity) {
+                buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        private void write() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        private static int sizeOf(List<String> strings, int from) {
+            int result = 0;
+            for (int ix = from; ix < strings.size(); ix++) {
+                result += Integer.SIZE / BYTE_BITS + strings.get(ix).length() * 3;
+            }
+            return result;
+        }
+
+        private static void putString(ByteBuffer target, String string) {
+            byte[] bytes = string.getBytes(UTF8);
+            target.putInt(bytes.length);
+            target.put(bytes);
+        }
+
+        @Override
+        public void writeHeader(Column[] columns) throws IOException {
+            List<String> names = new ArrayList<String>(columns.length);
+            for (Column column : columns) {
+                names.add(column.name);
+            }
+            ByteBuffer target = buffer(3 * Integer.SIZE / BYTE_BITS + columns.length + sizeOf(names, 0));
+            target.putInt(MAGIC);
+            target.putInt(VERSION);
+            target.putInt(columns.length);
+            for (Column column : columns) {
+                target.put((byte) column.type.ordinal());
+                putString(target, column.name);
+            }
+            write();
+        }
+
+        @Override
+        public void writeBatch(long[] timestamps, int size, Column[] columns) throws IOException {
+            int capacity = Integer.SIZE / BYTE_BITS + size * Long.SIZE / BYTE_BITS;
+            for (Column column : columns) {
+                capacity += size * Long.SIZE / BYTE_BITS + size / BYTE_BITS + 1 + Integer.SIZE / BYTE_BITS;
+                if (column.type == ColumnType.STRING) {
+                    capacity += Integer.SIZE / BYTE_BITS + sizeOf(column.entries, column.writtenEntries);
+                }
+            }
+
+            ByteBuffer target = buffer(capacity);
+            target.putInt(size);
+            target.asLongBuffer().put(timestamps, 0, size);
+            target.position(target.position() + size * Long.SIZE / BYTE_BITS);
+            for (Column column : columns) {
+                switch (column.type) {
+                case DOUBLE:
+                    target.asDoubleBuffer().put(column.doubles, 0, size);
+                    target.position(target.position() + size * Double.SIZE / BYTE_BITS);
+                    break;
+                case LONG:
+                    byte[] bitmap = new byte[(size + BYTE_BITS - 1) / BYTE_BITS];
+                    for (int row = 0; row < size; row++) {
+                        if (column.present[row]) {
+                            bitmap[row / BYTE_BITS] |= 1 << (row % BYTE_BITS);
+                        }
+                    }
+                    target.put(bitmap);
+                    target.asLongBuffer().put(column.longs, 0, size);
+                    target.position(target.position() + size * Long.SIZE / BYTE_BITS);
+                    break;
+                case BOOLEAN:
+                    target.put(column.booleans, 0, size);
+                    break;
+                default:
+                    target.putInt(column.writtenEntries);
+                    target.putInt(column.entries.size() - column.writtenEntries);
+                    for (String entry : column.entries.subList(column.writtenEntries, column.entries.size())) {
+                        putString(target, entry);
+                    }
+                    column.writtenEntries = column.entries.size();
+                    target.asIntBuffer().put(column.codes, 0, size);
+                    target.position(target.position() + size * Integer.SIZE / BYTE_BITS);
+                    break;
+                }
+            }
+            write();
+            for (Column column : columns) {
+                if (column.type == ColumnType.STRING) {
+                    column.trimDictionary();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarBatchExporter [type=" + type.getName() + ", columns=" + columnNames + "]";
+    }
+}
@@ -0,0 +1,270 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.flexiblepower.observation.BatchObservationConsumer;
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+
+/**
+ * The bounded queue of observations for a single consumer of an {@link AbstractObservationProvider} that dispatches
+ * asynchronously. At most one drain task of a queue is submitted to the executor at any time, which delivers the
+ * observations in the order in which they have been published. After a limited number of observations the drain task
+ * resubmits itself, so a busy consumer can not hold on to a thread of a shared executor forever. A
+ * {@link BatchObservationConsumer} receives the queued observations in batches.
+ *
+ * When the executor rejects the drain task, the observations stay in the queue and the next offer tries again, so the
+ * publisher and the queues of the other consumers are not affected. Only the first of a series of rejections is
+ * reported to the uncaught exception handler.
+ *
+ * @param <T>
+ *            The type of the value
+ */
+final class ConsumerQueue<T> implements Runnable {
+    private static final int DRAIN_LIMIT = 64;
+
+    private final ObservationProvider<T> source;
+    private final ObservationConsumer<? super T> consumer;
+    private final Executor executor;
+    private final int capacity;
+    private final QueueFullPolicy policy;
+
+    private final ArrayDeque<Observation<? extends T>> queue;
+    private boolean scheduled;
+    private boolean closed;
+    private volatile boolean rejected;
+
+    ConsumerQueue(ObservationProvider<T> source,
+                  ObservationConsumer<? super T> consumer,
+                  Executor executor,
+                  int capacity,
+                  QueueFullPolicy policy) {
+        this.source = source;
+        this.consumer = consumer;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+        queue = new ArrayDeque<Observation<? extends T>>(Math.min(capacity, DRAIN_LIMIT));
+    }
+
+    /**
+     * Adds the observation to the queue, applying the {@link QueueFullPolicy} when it is full, and makes sure that a
+     * drain task has been submitted.
+     *
+     * @param observation
+     *            The observation that should be delivered to the consumer.
+     */
+    void offer(Observation<? extends T> observation) {
+        synchronized (this) {
+            if (!enqueue(observation) || scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        submit();
+    }
+
+    /**
+     * Adds all the observations to the queue, in order, as if {@link #offer(Observation)} has been called for each of
+     * them.
+     *
+     * @param observations
+     *            The observations that should be delivered to the consumer.
+     */
+    void offerAll(List<? extends Observation<? extends T>> observations) {
+        synchronized (this) {
+            for (Observation<? extends T> observation : observations) {
+                if (!enqueue(observation) && closed) {
+                    return;
+                }
+            }
+            if (queue.isEmpty() || scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        submit();
+    }
+
+    /**
+     * Adds a single observation to the queue. Must be called while holding the lock.
+     *
+     * @return <code>true</code> when the observation has been added.
+     */
+    private boolean enqueue(Observation<? extends T> observation) {
+        if (closed) {
+            return false;
+        }
+        if (queue.size() >= capacity) {
+            switch (policy) {
+            case BLOCK:
+                if (!awaitSpace()) {
+                    return false;
+                }
+                break;
+            case DROP_OLDEST:
+                queue.pollFirst();
+                break;
+            case DROP_NEWEST:
+                return false;
+            case COALESCE_TO_LATEST:
+                queue.clear();
+                break;
+            default:
+                throw new AssertionError(policy);
+            }
+        }
+        queue.addLast(observation);
+        return true;
+    }
+
+    /**
+     * Waits until there is room in the queue. Must be called while holding the lock.
+     *
+     * @return <code>true</code> when there is room, <code>false</code> when the queue has been closed, the executor
+     *         rejected the drain task or the thread has been interrupted while waiting (in which case the interrupt
+     *         flag is set again).
+     */
+    private boolean awaitSpace() {
+        try {
+            while (queue.size() >= capacity && !closed) {
+                if (!scheduled) {
+                    // Observations of this batch have filled up the queue (or the drain task could not be submitted
+                    // again), start draining before waiting
+                    scheduled = true;
+                    if (!submit()) {
+                        return false;
+                    }
+                }
+                wait();
+            }
+            return !closed;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Submits the drain task, which must have been marked as scheduled.
+     *
+     * @return <code>true</code> when it has been submitted, <code>false</code> when the executor rejected it (and the
+     *         next offer will try again).
+     */
+    private boolean submit() {
+        try {
+            executor.execute(this);
+            rejected = false;
+            return true;
+        } catch (RuntimeException ex) {
+            boolean report;
+            synchronized (this) {
+                scheduled = false;
+                report = !rejected;
+                rejected = true;
+                // A publisher that waits for room must not wait for a drain task that does not exist
+                notifyAll();
+            }
+            if (report) {
+                handle(ex);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Discards all the queued observations. Observations that are offered after this will be ignored and a publisher
+     * that is waiting for room in the queue is released.
+     */
+    synchronized void close() {
+        closed = true;
+        queue.clear();
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        int delivered = 0;
+        if (consumer instanceof BatchObservationConsumer) {
+            while (delivered < DRAIN_LIMIT) {
+                List<Observation<? extends T>> batch = takeBatch();
+                if (batch == null) {
+                    return;
+                }
+                deliver(batch);
+                delivered += batch.size();
+            }
+        } else {
+            while (delivered < DRAIN_LIMIT) {
+                Observation<? extends T> observation = take();
+                if (observation == null) {
+                    return;
+                }
+                deliver(observation);
+                delivered++;
+            }
+        }
+        // There may be more, give other tasks on the executor a chance first
+        submit();
+    }
+
+    /**
+     * @return The first observation of the queue, or <code>null</code> when it is empty (and the drain task stops).
+     */
+    private synchronized Observation<? extends T> take() {
+        Observation<? extends T> observation = queue.pollFirst();
+        if (observation == null) {
+            scheduled = false;
+        } else if (policy == QueueFullPolicy.BLOCK) {
+            notifyAll();
+        }
+        return observation;
+    }
+
+    /**
+     * @return The observations in the queue (at most {@link #DRAIN_LIMIT}), or <code>null</code> when it is empty (and
+     *         the drain task stops).
+     */
+    private synchronized List<Observation<? extends T>> takeBatch() {
+        if (queue.isEmpty()) {
+            scheduled = false;
+            return null;
+        }
+        List<Observation<? extends T>> batch = new ArrayList<Observation<? extends T>>(Math.min(queue.size(),
+                                                                                                DRAIN_LIMIT));
+        while (batch.size() < DRAIN_LIMIT && !queue.isEmpty()) {
+            batch.add(queue.pollFirst());
+        }
+        if (policy == QueueFullPolicy.BLOCK) {
+            notifyAll();
+        }
+        return Collections.unmodifiableList(batch);
+    }
+
+    private void deliver(Observation<? extends T> observation) {
+        try {
+            consumer.consume(source, observation);
+        } catch (RuntimeException ex) {
+            handle(ex);
+        }
+    }
+
+    private void deliver(List<Observation<? extends T>> observations) {
+        try {
+            AbstractObservationProvider.deliver(source, consumer, observations);
+        } catch (RuntimeException ex) {
+            handle(ex);
+        }
+    }
+
+    private static void handle(RuntimeException ex) {
+        // There is no publisher to throw it to, but the other observations should still be delivered
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+    }
+}
@@ -0,0 +1,309 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.measure.ConversionCache;
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.converter.ConversionException;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationTranslationHelper;
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
+
+/**
+ * A {@link DeadbandFilter} decides which observations of an {@link AbstractObservationProvider} are worth publishing
+ * (see {@link AbstractObservationProvider#setDeadbandFilter(DeadbandFilter)}). An observation is suppressed when none
+ * of the attributes of its value has changed significantly since the last published observation:
+ *
+ * <ul>
+ * <li>A numeric attribute (a number or a {@link Measure}) has changed when the difference is larger than its deadband,
+ * which is the largest of the absolute deadband and the relative deadband times the last published value.</li>
+ * <li>Any other attribute has changed when it is no longer equal.</li>
+ * </ul>
+ *
+ * The deadbands are read from the {@link ObservationAttribute} annotations of the getters of the value type and can be
+ * changed using the {@link Builder}. The absolute deadband of a {@link Measure} is stated in the
+ * {@link ObservationAttribute#unit() unit} of the annotation, so measures are converted to that unit before they are
+ * compared. Without a unit (or with a unit that can not be parsed), the deadband is stated in the unit of the last
+ * published measure.
+ *
+ * A value type without getters (e.g. a {@link Double}) is treated as a single attribute with the name {@link #VALUE}.
+ * When the maximum silence is set, an observation is always published when the last published observation is at least
+ * that much older, so consumers keep receiving a heartbeat.
+ *
+ * @param <T>
+ *            The type of the value
+ */
+public final class DeadbandFilter<T> {
+    /**
+     * The name of the attribute for value types that have no getters, in which case the value itself is compared.
+     */
+    public static final String VALUE = "";
+
+    /**
+     * Starts creating a {@link DeadbandFilter} for values of the given type, with the deadbands from the
+     * {@link ObservationAttribute} annotations.
+     *
+     * @param type
+     *            The class of the values.
+     * @param <T>
+     *            The type of the value
+     * @return The {@link Builder}, on which the {@link Builder#build()} method should be called to finish.
+     */
+    public static <T> Builder<T> create(Class<T> type) {
+        return new Builder<T>(type);
+    }
+
+    /**
+     * The {@link Builder} of a {@link DeadbandFilter}, which can override the deadbands of the annotations.
+     *
+     * @param <T>
+     *            The type of the value
+     */
+    public static final class Builder<T> {
+        private final Map<String, Getter> getters;
+        private final Map<String, double[]> deadbands = new HashMap<String, double[]>();
+        private final Map<String, Unit<Quantity>> units = new HashMap<String, Unit<Quantity>>();
+        private long maxSilenceMillis;
+
+        Builder(Class<T> type) {
+            getters = ObservationTranslationHelper.getGetters(type);
+            if (getters.isEmpty()) {
+                deadbands.put(VALUE, new double[2]);
+            }
+            for (Getter getter : getters.values()) {
+                ObservationAttribute annotation = getter.getMethod().getAnnotation(ObservationAttribute.class);
+                deadbands.put(getter.getName(), annotation == null ? new double[2]
+                                                                  : new double[] { annotation.deadband(),
+                                                                                  annotation.relativeDeadband() });
+                if (annotation != null) {
+                    units.put(getter.getName(), parseUnit(annotation.unit()));
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Unit<Quantity> parseUnit(String unit) {
+            if (unit.isEmpty()) {
+                return null;
+            }
+            try {
+                return (Unit<Quantity>) Unit.valueOf(unit);
+            } catch (IllegalArgumentException ex) {
+                // Not every unit of an attribute is a unit of measurement (e.g. a currency)
+                return null;
+            }
+        }
+
+        private double[] deadbands(String attribute) {
+            double[] result = deadbands.get(attribute);
+            if (result == null) {
+                throw new IllegalArgumentException("Unknown attribute '" + attribute + "'");
+            }
+            return result;
+        }
+
+        /**
+         * Sets the absolute deadband of an attribute.
+         *
+         * @param attribute
+         *            The name of the attribute, as it is used in the {@link Observation#getValueMap()}.
+         * @param deadband
+         *            The largest change (in the unit of the {@link ObservationAttribute} annotation, or else in the
+         *            unit of the last published value) that will be suppressed.
+         * @return this
+         * @throws IllegalArgumentException
+         *             When the value type has no such attribute.
+         */
+        public Builder<T> absolute(String attribute, double deadband) {
+            deadbands(attribute)[0] = deadband;
+            return this;
+        }
+
+        /**
+         * Sets the relative deadband of an attribute.
+         *
+         * @param attribute
+         *            The name of the attribute, as it is used in the {@link Observation#getValueMap()}.
+         * @param deadband
+         *            The largest change, as a fraction of the last published value, that will be suppressed.
+         * @return this
+         * @throws IllegalArgumentException
+         *             When the value type has no such attribute.
+         */
+        public Builder<T> relative(String attribute, double deadband) {
+            deadbands(attribute)[1] = deadband;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time between two published observations.
+         *
+         * @param millis
+         *            The maximum silence in milliseconds, or 0 to suppress observations for any length of time.
+         * @return this
+         */
+        public Builder<T> maxSilence(long millis) {
+            maxSilenceMillis = millis;
+            return this;
+        }
+
+        /**
+         * @return The new {@link DeadbandFilter}.
+         */
+        public DeadbandFilter<T> build() {
+            List<String> names = new ArrayList<String>(deadbands.keySet());
+            Collections.sort(names);
+
+            Attribute[] attributes = new Attribute[names.size()];
+            for (int ix = 0; ix < attributes.length; ix++) {
+                double[] deadband = deadbands.get(names.get(ix));
+                attributes[ix] = new Attribute(getters.get(names.get(ix)),
+                                               units.get(names.get(ix)),
+                                               deadband[0],
+                                               deadband[1]);
+            }
+            return new DeadbandFilter<T>(attributes, maxSilenceMillis);
+        }
+    }
+
+    /**
+     * A single attribute that is compared.
+     */
+    private static final class Attribute {
+        /**
+         * The getter of the attribute, or <code>null</code> when the value itself is compared.
+         */
+        final Getter getter;
+        /**
+         * Converts measures to the unit of the deadband, or <code>null</code> when the unit of the last published
+         * measure is used. Only used while holding the lock of the filter.
+         */
+        final ConversionCache<Quantity> conversions;
+        final double absolute;
+        final double relative;
+
+        Attribute(Getter getter, Unit<Quantity> unit, double absolute, double relative) {
+            this.getter = getter;
+            conversions = unit == null ? null : new ConversionCache<Quantity>(unit);
+            this.absolute = absolute;
+            this.relative = relative;
+        }
+
+        Object get(Object value) {
+            return getter == null ? value : getter.get(value);
+        }
+
+        boolean hasChanged(Object current, Object last) {
+            if (current == null || last == null) {
+                return current != last;
+            } else if (absolute <= 0 && relative <= 0) {
+                return !current.equals(last);
+            }
+
+            double lastNumber;
+            double currentNumber;
+            if (current instanceof Number && last instanceof Number) {
+                lastNumber = ((Number) last).doubleValue();
+                currentNumber = ((Number) current).doubleValue();
+            } else if (current instanceof Measurable && last instanceof Measure) {
+                @SuppressWarnings("unchecked")
+                Measure<?, Quantity> lastMeasure = (Measure<?, Quantity>) last;
+                @SuppressWarnings("unchecked")
+                Measurable<Quantity> currentMeasure = (Measurable<Quantity>) current;
+                try {
+                    if (conversions == null) {
+                        lastNumber = lastMeasure.doubleValue(lastMeasure.getUnit());
+                        currentNumber = currentMeasure.doubleValue(lastMeasure.getUnit());
+                    } else {
+                        lastNumber = conversions.convert(lastMeasure);
+                        currentNumber = conversions.convert(currentMeasure);
+                    }
+                } catch (ConversionException ex) {
+                    return true;
+                }
+
+            } else {
+                return !current.equals(last);
+            }
+            return Math.abs(currentNumber - lastNumber) > Math.max(absolute, relative * Math.abs(lastNumber))
+                   || Double.isNaN(currentNumber) != Double.isNaN(lastNumber);
+        }
+    }
+
+    private final Attribute[] attributes;
+    private final long maxSilenceMillis;
+
+    // The state of the last published observation, guarded by this
+    private final Object[] lastValues;
+    private final Object[] currentValues;
+    private boolean published;
+    private long lastPublishedMillis;
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    private DeadbandFilter(Attribute[] attributes, long maxSilenceMillis) {
+        this.attributes = attributes;
+        this.maxSilenceMillis = maxSilenceMillis;
+        lastValues = new Object[attributes.length];
+        currentValues = new Object[attributes.length];
+    }
+
+    /**
+     * Decides if the observation should be published. When it should, it is remembered as the last published
+     * observation.
+     *
+     * @param observation
+     *            The new observation.
+     * @return <code>true</code> when the observation should be published, <code>false</code> when it should be
+     *         suppressed.
+     */
+    public boolean accept(Observation<? extends T> observation) {
+        Object value = observation.getValue();
+        long time = observation.getObservedAtMillis();
+        boolean changed;
+        synchronized (this) {
+            changed = !published || (maxSilenceMillis > 0 && time - lastPublishedMillis >= maxSilenceMillis);
+            for (int ix = 0; ix < attributes.length; ix++) {
+                currentValues[ix] = attributes[ix].get(value);
+                changed = changed || attributes[ix].hasChanged(currentValues[ix], lastValues[ix]);
+            }
+            if (changed) {
+                System.arraycopy(currentValues, 0, lastValues, 0, attributes.length);
+                published = true;
+                lastPublishedMillis = time;
+            }
+            Arrays.fill(currentValues, null);
+        }
+        if (changed) {
+            publishedCount.incrementAndGet();
+        } else {
+            suppressedCount.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * @return The number of observations that have been accepted for publishing.
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return The number of observations that have been suppressed.
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+}
@@ -0,0 +1,754 @@
+package org.flexiblepower.observation.ext;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.measure.converter.ConversionException;
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.Unit;
+
+import org.flexiblepower.observation.Observation;
+
+/**
+ * The {@link GorillaCodec} compresses series of timestamped numbers, in the way that is described in the paper
+ * "Gorilla: A Fast, Scalable, In-Memory Time Series Database" (Pelkonen et al., 2015):
+ *
+ * <ul>
+ * <li>Timestamps are stored as the difference between consecutive deltas, which is 0 (and takes a single bit) for
+ * observations at a regular interval.</li>
+ * <li>Doubles are stored as the XOR with the previous value, of which only the meaningful bits are written. A value
+ * that did not change takes a single bit.</li>
+ * </ul>
+ *
+ * The encoders write to a {@link ByteBuffer} that has been given to them, one value at a time, until it is full (in
+ * which case the value is refused and a new block can be started). Every block starts with an uncompressed value, so it
+ * can be decoded on its own. The {@link SeriesEncoder} and {@link SeriesDecoder} use these to store observations as a
+ * column of timestamps and a column for each numeric attribute of the {@link Observation#getValueMap()}.
+ */
+public final class GorillaCodec {
+    private static final int LONG_BITS = 64;
+    private static final int INT_BITS = 32;
+    private static final int BYTE_BITS = 8;
+    private static final long BYTE_MASK = 0xFF;
+    private static final String VALUE = "value";
+    private static final String UNIT = "unit";
+    private static final String UNIT_SUFFIX = "." + UNIT;
+
+    // The number of bits for the delta-of-delta ranges, a larger delta-of-delta is stored as a long
+    private static final int SMALL_DELTA_BITS = 7;
+    private static final int MEDIUM_DELTA_BITS = 9;
+    private static final int LARGE_DELTA_BITS = 12;
+
+    // The number of bits to store the number of leading zeros and the length of the meaningful bits of an XOR
+    private static final int LEADING_ZEROS_BITS = 5;
+    private static final int MAX_LEADING_ZEROS = (1 << LEADING_ZEROS_BITS) - 1;
+    private static final int LENGTH_BITS = 6;
+
+    /**
+     * The delta-of-delta that marks the end of a block of timestamps.
+     */
+    private static final long END_OF_BLOCK = Long.MIN_VALUE;
+
+    // The largest number of bytes that a single value can take, including the bits that have not been written yet
+    private static final int MAX_TIMESTAMP_BYTES = (4 + LONG_BITS) / BYTE_BITS + 2;
+    private static final int MAX_DOUBLE_BYTES = (2 + LEADING_ZEROS_BITS + LENGTH_BITS + LONG_BITS) / BYTE_BITS + 2;
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Writes single bits to a {@link ByteBuffer}, of which whole bytes are written as soon as they are complete.
+     */
+    private static final class BitWriter {
+        private final ByteBuffer buffer;
+        private long bits;
+        private int pending;
+
+        BitWriter(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void write(long value, int count) {
+            if (count > INT_BITS) {
+                write(value >>> INT_BITS, count - INT_BITS);
+                write(value, INT_BITS);
+                return;
+            }
+            bits = (bits << count) | (value & ((1L << count) - 1));
+            pending += count;
+            while (pending >= BYTE_BITS) {
+                pending -= BYTE_BITS;
+                buffer.put((byte) (bits >>> pending));
+            }
+        }
+
+        void writeBit(boolean bit) {
+            write(bit ? 1 : 0, 1);
+        }
+
+        boolean hasRoom(int bytes) {
+            return buffer.remaining() >= bytes;
+        }
+
+        void flush() {
+            if (pending > 0) {
+                buffer.put((byte) (bits << (BYTE_BITS - pending)));
+                pending = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads single bits from a {@link ByteBuffer}.
+     */
+    private static final class BitReader {
+        private final ByteBuffer buffer;
+        private long bits;
+        private int available;
+
+        BitReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long read(int count) {
+            if (count > INT_BITS) {
+                long high = read(count - INT_BITS);
+                return (high << INT_BITS) | read(INT_BITS);
+            }
+            while (available < count) {
+                bits = (bits << BYTE_BITS) | (buffer.get() & BYTE_MASK);
+                available += BYTE_BITS;
+            }
+            available -= count;
+            return (bits >>> available) & ((1L << count) - 1);
+        }
+
+        boolean readBit() {
+            return read(1) != 0;
+        }
+
+        boolean isEmpty() {
+            return available == 0 && !buffer.hasRemaining();
+        }
+    }
+
+    /**
+     * Sign-extends the lowest bits of a value.
+     */
+    private static long signed(long value, int bits) {
+        return (value << (LONG_BITS - bits)) >> (LONG_BITS - bits);
+    }
+
+    private static boolean fits(long value, int bits) {
+        return value == signed(value, bits);
+    }
+
+    /**
+     * Writes a block of timestamps (in milliseconds) as delta-of-deltas.
+     */
+    public static final class TimestampEncoder {
+        private final BitWriter writer;
+        private boolean first = true;
+        private boolean finished;
+        private long previous;
+        private long previousDelta;
+
+        /**
+         * @param buffer
+         *            The buffer to which the block is written, starting at its current position.
+         */
+        public TimestampEncoder(ByteBuffer buffer) {
+            writer = new BitWriter(buffer);
+        }
+
+        /**
+         * @return <code>true</code> when there is room for another timestamp.
+         */
+        public boolean hasRoom() {
+            return !finished && writer.hasRoom(2 * MAX_TIMESTAMP_BYTES);
+        }
+
+        /**
+         * Adds a timestamp to the block.
+         *
+         * @param millis
+         *            The timestamp in milliseconds since the epoch.
+         * @return <code>false</code> when the block is full, in which case nothing has been written.
+         */
+        public boolean encode(long millis) {
+            if (!hasRoom()) {
+                return false;
+            }
+            if (first) {
+                writer.write(millis, LONG_BITS);
+                first = false;
+            } else {
+                long delta = millis - previous;
+                writeDeltaOfDelta(delta - previousDelta);
+                previousDelta = delta;
+            }
+            previous = millis;
+            return true;
+        }
+
+        private void writeDeltaOfDelta(long deltaOfDelta) {
+            if (deltaOfDelta == 0) {
+                writer.writeBit(false);
+            } else if (fits(deltaOfDelta, SMALL_DELTA_BITS)) {
+                writer.write(0x2, 2);
+                writer.write(deltaOfDelta, SMALL_DELTA_BITS);
+            } else if (fits(deltaOfDelta, MEDIUM_DELTA_BITS)) {
+                writer.write(0x6, 3);
+                writer.write(deltaOfDelta, MEDIUM_DELTA_BITS);
+            } else if (fits(deltaOfDelta, LARGE_DELTA_BITS)) {
+                writer.write(0xE, 4);
+                writer.write(deltaOfDelta, LARGE_DELTA_BITS);
+            } else {
+                writer.write(0xF, 4);
+                writer.write(deltaOfDelta, LONG_BITS);
+            }
+        }
+
+        /**
+         * Ends the block, after which no more timestamps can be added. The position of the buffer is after the last
+         * byte of the block.
+         */
+        public void finish() {
+            if (!finished) {
+                if (!first) {
+                    writeDeltaOfDelta(END_OF_BLOCK);
+                }
+                writer.flush();
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Reads a block of timestamps that has been written by a {@link TimestampEncoder}.
+     */
+    public static final class TimestampDecoder {
+        private final BitReader reader;
+        private boolean first = true;
+        private boolean ended;
+        private long previous;
+        private long previousDelta;
+
+        /**
+         * @param buffer
+         *            The buffer that holds the block from its current position.
+         */
+        public TimestampDecoder(ByteBuffer buffer) {
+            reader = new BitReader(buffer);
+        }
+
+        /**
+         * Reads the next timestamp.
+         *
+         * @return <code>true</code> when there was a next timestamp, which is then given by {@link #getTimestamp()}.
+         */
+        public boolean next() {
+            if (ended || reader.isEmpty()) {
+                ended = true;
+                return false;
+            }
+            if (first) {
+                previous = reader.read(LONG_BITS);
+                first = false;
+                return true;
+            }
+
+            long deltaOfDelta;
+            if (!reader.readBit()) {
+                deltaOfDelta = 0;
+            } else if (!reader.readBit()) {
+                deltaOfDelta = signed(reader.read(SMALL_DELTA_BITS), SMALL_DELTA_BITS);
+            } else if (!reader.readBit()) {
+                deltaOfDelta = signed(reader.read(MEDIUM_DELTA_BITS), MEDIUM_DELTA_BITS);
+            } else if (!reader.readBit()) {
+                deltaOfDelta = signed(reader.read(LARGE_DELTA_BITS), LARGE_DELTA_BITS);
+            } else {
+                deltaOfDelta = reader.read(LONG_BITS);
+                if (deltaOfDelta == END_OF_BLOCK) {
+                    ended = true;
+                    return false;
+                }
+            }
+            previousDelta += deltaOfDelta;
+            previous += previousDelta;
+            return true;
+        }
+
+        /**
+         * @return The current timestamp in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return previous;
+        }
+    }
+
+    /**
+     * Writes a block of doubles as the XOR with their previous value. The block does not record the number of values,
+     * which should be known from the timestamps.
+     */
+    public static final class DoubleEncoder {
+        private final BitWriter writer;
+        private boolean first = true;
+        private boolean finished;
+        private long previous;
+        private int previousLeading = -1;
+        private int previousTrailing;
+
+        /**
+         * @param buffer
+         *            The buffer to which the block is written, starting at its current position.
+         */
+        public DoubleEncoder(ByteBuffer buffer) {
+            writer = new BitWriter(buffer);
+        }
+
+        /**
+         * @return <code>true</code> when there is room for another value.
+         */
+        public boolean hasRoom() {
+            return !finished && writer.hasRoom(MAX_DOUBLE_BYTES);
+        }
+
+        /**
+         * Adds a value to the block.
+         *
+         * @param value
+         *            The value, which may also be {@link Double#NaN} or infinite.
+         * @return <code>false</code> when the block is full, in which case nothing has been written.
+         */
+        public boolean encode(double value) {
+            if (!hasRoom()) {
+                return false;
+            }
+            long bits = Double.doubleToRawLongBits(value);
+            if (first) {
+                writer.write(bits, LONG_BITS);
+                first = false;
+            } else {
+                long xor = bits ^ previous;
+                if (xor == 0) {
+                    writer.writeBit(false);
+                } else {
+                    writer.writeBit(true);
+                    int leading = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING_ZEROS);
+                    int trailing = Long.numberOfTrailingZeros(xor);
+                    if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                        // The meaningful bits fit in the same window as the previous value
+                        writer.writeBit(false);
+                        writer.write(xor >>> previousTrailing, LONG_BITS - previousLeading - previousTrailing);
+                    } else {
+                        int length = LONG_BITS - leading - trailing;
+                        writer.writeBit(true);
+                        writer.write(leading, LEADING_ZEROS_BITS);
+                        writer.write(length - 1, LENGTH_BITS);
+                        writer.write(xor >>> trailing, length);
+                        previousLeading = leading;
+                        previousTrailing = trailing;
+                    }
+                }
+            }
+            previous = bits;
+            return true;
+        }
+
+        /**
+         * Ends the block, after which no more values can be added. The position of the buffer is after the last byte
+         * of the block.
+         */
+        public void finish() {
+            if (!finished) {
+                writer.flush();
+                finished = true;
+            }
+        }
+    }
+
+    /**
+     * Reads a block of doubles that has been written by a {@link DoubleEncoder}.
+     */
+    public static final class DoubleDecoder {
+        private final BitReader reader;
+        private boolean first = true;
+        private long previous;
+        private int previousLeading;
+        private int previousTrailing;
+
+        /**
+         * @param buffer
+         *            The buffer that holds the block from its current position.
+         */
+        public DoubleDecoder(ByteBuffer buffer) {
+            reader = new BitReader(buffer);
+        }
+
+        /**
+         * Reads the next value. This should only be called as many times as values have been written.
+         *
+         * @return The next value.
+         */
+        public double next() {
+            if (first) {
+                previous = reader.read(LONG_BITS);
+                first = false;
+            } else if (reader.readBit()) {
+                if (reader.readBit()) {
+                    previousLeading = (int) reader.read(LEADING_ZEROS_BITS);
+                    int length = (int) reader.read(LENGTH_BITS) + 1;
+                    previousTrailing = LONG_BITS - previousLeading - length;
+                }
+                int length = LONG_BITS - previousLeading - previousTrailing;
+                previous ^= reader.read(length) << previousTrailing;
+            }
+            return Double.longBitsToDouble(previous);
+        }
+    }
+
+    /**
+     * A {@link SeriesEncoder} stores a series of observations in columns: one block of timestamps and one block of
+     * doubles for each numeric attribute of the {@link Observation#getValueMap()} (e.g. the <code>value</code> of a
+     * {@link javax.measure.Measure}). The attributes are taken from the first observation and attributes that are not
+     * numeric are not stored.
+     *
+     * The unit of a measure is not stored in a column. Instead, the unit of each column is taken from the first
+     * observation (see {@link #getUnits()}) and the values of later observations are converted to it. An observation
+     * with a unit that can not be converted is refused.
+     *
+     * There is no separate record of missing values: an attribute that is missing (or <code>null</code>) in a later
+     * observation is stored as {@link Double#NaN}, just like a value that actually is NaN. The two can not be told
+     * apart when decoding.
+     */
+    public static final class SeriesEncoder {
+        private final int columnCapacity;
+        private final ByteBuffer timestampBuffer;
+        private final TimestampEncoder timestamps;
+        private List<String> keys;
+        private ByteBuffer[] buffers;
+        private DoubleEncoder[] columns;
+        private ColumnUnit[] units;
+        private double[] row;
+        private int size;
+        private boolean finished;
+
+        /**
+         * @param columnCapacity
+         *            The number of bytes that is allocated for each column.
+         */
+        public SeriesEncoder(int columnCapacity) {
+            this.columnCapacity = columnCapacity;
+            timestampBuffer = ByteBuffer.allocate(columnCapacity);
+            timestamps = new TimestampEncoder(timestampBuffer);
+        }
+
+        private void createColumns(Map<String, Object> values) {
+            keys = new ArrayList<String>();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    keys.add(entry.getKey());
+                }
+            }
+            Collections.sort(keys);
+            keys = Collections.unmodifiableList(keys);
+            buffers = new ByteBuffer[keys.size()];
+            columns = new DoubleEncoder[keys.size()];
+            units = new ColumnUnit[keys.size()];
+            row = new double[keys.size()];
+            for (int ix = 0; ix < columns.length; ix++) {
+                buffers[ix] = ByteBuffer.allocate(columnCapacity);
+                columns[ix] = new DoubleEncoder(buffers[ix]);
+                Object unit = unitOf(values, keys.get(ix));
+                units[ix] = unit == null ? null : new ColumnUnit(unit);
+            }
+        }
+
+        /**
+         * Adds an observation to the columns.
+         *
+         * @param observation
+         *            The observation.
+         * @return <code>false</code> when one of the columns is full (or the encoder is finished), in which case the
+         *         observation has not been added.
+         * @throws IllegalArgumentException
+         *             When the unit of one of the values can not be converted to the unit of its column.
+         */
+        public boolean add(Observation<?> observation) {
+            Map<String, Object> values = observation.getValueMap();
+            if (keys == null) {
+                createColumns(values);
+            }
+            if (finished || !timestamps.hasRoom()) {
+                return false;
+            }
+            for (DoubleEncoder column : columns) {
+                if (!column.hasRoom()) {
+                    return false;
+                }
+            }
+
+            // Convert all the values first, so a refused observation does not leave a partial row
+            for (int ix = 0; ix < columns.length; ix++) {
+                String key = keys.get(ix);
+                Object value = values.get(key);
+                if (!(value instanceof Number)) {
+                    row[ix] = Double.NaN;
+                } else if (units[ix] == null) {
+                    row[ix] = ((Number) value).doubleValue();
+                } else {
+                    row[ix] = units[ix].convert(key, ((Number) value).doubleValue(), unitOf(values, key));
+                }
+            }
+            timestamps.encode(observation.getObservedAtMillis());
+            for (int ix = 0; ix < columns.length; ix++) {
+                columns[ix].encode(row[ix]);
+            }
+            size++;
+            return true;
+        }
+
+        /**
+         * @return The unit of each column that holds the value of a measure, by the name of the attribute (empty
+         *         before the first observation). The values of such a column are stated in this unit.
+         */
+        public Map<String, String> getUnits() {
+            Map<String, String> result = new LinkedHashMap<String, String>();
+            for (int ix = 0; ix < getKeys().size(); ix++) {
+                if (units[ix] != null) {
+                    result.put(keys.get(ix), units[ix].name);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return The number of observations that have been added.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return The names of the attributes that are stored, sorted by name (empty before the first observation).
+         */
+        public List<String> getKeys() {
+            return keys == null ? Collections.<String> emptyList() : keys;
+        }
+
+        /**
+         * Ends all the blocks, after which no more observations can be added.
+         */
+        public void finish() {
+            if (!finished) {
+                timestamps.finish();
+                if (columns != null) {
+                    for (DoubleEncoder column : columns) {
+                        column.finish();
+                    }
+                }
+                finished = true;
+            }
+        }
+
+        /**
+         * Finishes the encoder and gives the timestamps.
+         *
+         * @return A read-only buffer that holds the block of timestamps.
+         */
+        public ByteBuffer getTimestamps() {
+            finish();
+            return flipped(timestampBuffer);
+        }
+
+        /**
+         * Finishes the encoder and gives the columns of the attributes.
+         *
+         * @return The read-only buffers that hold the blocks of values, by the name of the attribute.
+         */
+        public Map<String, ByteBuffer> getColumns() {
+            finish();
+            Map<String, ByteBuffer> result = new LinkedHashMap<String, ByteBuffer>();
+            for (int ix = 0; ix < getKeys().size(); ix++) {
+                result.put(keys.get(ix), flipped(buffers[ix]));
+            }
+            return result;
+        }
+
+        private static ByteBuffer flipped(ByteBuffer buffer) {
+            ByteBuffer result = buffer.asReadOnlyBuffer();
+            result.flip();
+            return result;
+        }
+    }
+
+    /**
+     * @return The unit of the measure of which the attribute is the value, or <code>null</code> when it is not the
+     *         value of a measure.
+     */
+    private static Object unitOf(Map<String, Object> values, String key) {
+        Object unit = values.get(key + UNIT_SUFFIX);
+        if (unit == null && VALUE.equals(key)) {
+            // The value of the observation is a measure itself
+            unit = values.get(UNIT);
+        }
+        return unit;
+    }
+
+    /**
+     * The unit of a column of a {@link SeriesEncoder}, which converts the values of later observations to it. The
+     * units are found in the value map as a {@link Unit} or as its name.
+     */
+    private static final class ColumnUnit {
+        final String name;
+        /**
+         * The parsed unit, or <code>null</code> when the name is not a known unit (in which case the values can only be
+         * stored when they have the same unit name).
+         */
+        final Unit<Quantity> unit;
+        // The converter for the unit that has been seen last, which is nearly always the same
+        private Object lastSource;
+        private UnitConverter lastConverter = UnitConverter.IDENTITY;
+
+        ColumnUnit(Object source) {
+            name = source.toString();
+            unit = parse(source);
+            lastSource = source;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Unit<Quantity> parse(Object source) {
+            if (source instanceof Unit) {
+                return (Unit<Quantity>) source;
+            }
+            try {
+                return (Unit<Quantity>) Unit.valueOf(source.toString());
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+
+        double convert(String key, double value, Object source) {
+            if (source == null || source == lastSource || source.equals(lastSource)) {
+                return lastConverter.convert(value);
+            }
+
+            UnitConverter converter;
+            Unit<Quantity> sourceUnit = parse(source);
+            if (source.toString().equals(name)) {
+                converter = UnitConverter.IDENTITY;
+            } else if (unit == null || sourceUnit == null) {
+                throw new IllegalArgumentException("The unit " + source + " of '" + key + "' differs from " + name);
+            } else {
+                try {
+                    converter = sourceUnit.getConverterTo(unit);
+                } catch (ConversionException ex) {
+                    throw new IllegalArgumentException("The unit " + source + " of '" + key
+                                                       + "' can not be converted to "
+                                                       + name, ex);
+                }
+            }
+            lastSource = source;
+            lastConverter = converter;
+            return converter.convert(value);
+        }
+    }
+
+    /**
+     * A {@link SeriesDecoder} reads the observations that have been written by a {@link SeriesEncoder}. Values that
+     * are {@link Double#NaN} are treated as missing, see {@link SeriesEncoder}.
+     */
+    public static final class SeriesDecoder {
+        private final TimestampDecoder timestamps;
+        private final String[] keys;
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+        private final DoubleDecoder[] columns;
+        private final double[] values;
+
+        /**
+         * @param timestamps
+         *            The block of timestamps, see {@link SeriesEncoder#getTimestamps()}.
+         * @param columns
+         *            The blocks of values, see {@link SeriesEncoder#getColumns()}. A subset of the columns may be given
+         *            to read only some of the attributes.
+         */
+        public SeriesDecoder(ByteBuffer timestamps, Map<String, ByteBuffer> columns) {
+            this.timestamps = new TimestampDecoder(timestamps.duplicate());
+            keys = columns.keySet().toArray(new String[columns.size()]);
+            this.columns = new DoubleDecoder[keys.length];
+            for (int ix = 0; ix < keys.length; ix++) {
+                indexes.put(keys[ix], ix);
+                this.columns[ix] = new DoubleDecoder(columns.get(keys[ix]).duplicate());
+            }
+            values = new double[keys.length];
+        }
+
+        /**
+         * Reads the next observation.
+         *
+         * @return <code>true</code> when there was a next observation.
+         */
+        public boolean next() {
+            if (!timestamps.next()) {
+                return false;
+            }
+            for (int ix = 0; ix < columns.length; ix++) {
+                values[ix] = columns[ix].next();
+            }
+            return true;
+        }
+
+        /**
+         * @return The timestamp of the current observation in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamps.getTimestamp();
+        }
+
+        /**
+         * @param key
+         *            The name of the attribute.
+         * @return The value of the attribute of the current observation, which is {@link Double#NaN} when it was
+         *         missing.
+         * @throws IllegalArgumentException
+         *             When there is no column for the attribute.
+         */
+        public double getValue(String key) {
+            Integer index = indexes.get(key);
+            if (index == null) {
+                throw new IllegalArgumentException("Unknown attribute '" + key + "', expected one of "
+                                                   + Arrays.toString(keys));
+            }
+            return values[index];
+        }
+
+        /**
+         * @return The values of the current observation, leaving out the attributes that are {@link Double#NaN} (which
+         *         may have been missing or actually NaN).
+         */
+        public Map<String, Object> getValueMap() {
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (int ix = 0; ix < keys.length; ix++) {
+                if (!Double.isNaN(values[ix])) {
+                    result.put(keys[ix], values[ix]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return The current observation as an observation of its value map.
+         */
+        public Observation<Map<String, Object>> getObservation() {
+            return Observation.create(getTimestamp(), getValueMap());
+        }
+    }
+}
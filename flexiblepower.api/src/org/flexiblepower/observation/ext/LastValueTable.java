@@ -0,0 +1,328 @@
+package org.flexiblepower.observation.ext;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * The {@link LastValueTable} subscribes to all the {@link ObservationProvider}s in the service registry (or those that
+ * match a filter) and remembers the last observation for each
+ * {@link ObservationProviderRegistrationHelper#KEY_OBSERVATION_OF observationOf}. This gives an overview of many
+ * providers without looking up and calling each of them:
+ *
+ * <pre>
+ * LastValueTable table = new LastValueTable(bundleContext, &quot;(org.flexiblepower.monitoring.observedBy=pv)&quot;);
+ * table.open();
+ * LastValueTable.Changes changes = table.snapshot();
+ * show(changes.getObservations());
+ * ...
+ * changes = table.changesSince(changes.getVersion());
+ * update(changes.getObservations());
+ * </pre>
+ *
+ * Each observationOf gets its own slot in an array, which the consumers update directly. Every update gets a new
+ * version number, so a reader can ask for only the observations that changed since its last read. Reading never locks
+ * and never misses a change: the version of a {@link Changes} only includes the updates that it contains. When several
+ * providers observe the same thing, the slot holds the observation that was published last. The last observation that
+ * a provider already had when it was added only replaces an observation that was made before it.
+ *
+ * The last observation of a provider stays in the table after the provider has been unregistered.
+ */
+public final class LastValueTable implements Closeable {
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The observations that have changed since a given version.
+     */
+    public static final class Changes {
+        private final long version;
+        private final Map<String, Observation<?>> observations;
+
+        Changes(long version, Map<String, Observation<?>> observations) {
+            this.version = version;
+            this.observations = Collections.unmodifiableMap(observations);
+        }
+
+        /**
+         * @return The version to use for the next {@link LastValueTable#changesSince(long)}.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The last observation of each observationOf that has changed.
+         */
+        public Map<String, Observation<?>> getObservations() {
+            return observations;
+        }
+
+        /**
+         * @return <code>true</code> when nothing has changed.
+         */
+        public boolean isEmpty() {
+            return observations.isEmpty();
+        }
+    }
+
+    /**
+     * The last observation together with the version in which it was stored.
+     */
+    private static final class Entry {
+        final Observation<?> observation;
+        final long version;
+
+        Entry(Observation<?> observation, long version) {
+            this.observation = observation;
+            this.version = version;
+        }
+    }
+
+    /**
+     * The slot of one observationOf, which is also the consumer of its providers.
+     */
+    private final class Slot implements ObservationConsumer<Object> {
+        final String observationOf;
+        volatile Entry entry;
+        /**
+         * While an update is being stored, the lowest version that it can get. Otherwise 0.
+         */
+        volatile long pending;
+
+        Slot(String observationOf) {
+            this.observationOf = observationOf;
+        }
+
+        @Override
+        public void consume(ObservationProvider<? extends Object> source, Observation<? extends Object> observation) {
+            update(observation);
+        }
+
+        // Updates of the same slot are serialized, this monitor is only contended when several providers observe the
+        // same thing at the same time
+        synchronized void update(Observation<?> observation) {
+            pending = version.get() + 1;
+            entry = new Entry(observation, version.incrementAndGet());
+            pending = 0;
+        }
+
+        /**
+         * Stores the observation when the slot is still empty or holds an observation that was made before it.
+         */
+        synchronized void updateIfNewer(Observation<?> observation) {
+            Entry current = entry;
+            if (current == null || observation.compareObservedAt(current.observation) > 0) {
+                update(observation);
+            }
+        }
+    }
+
+    /**
+     * The subscription of a slot to a provider.
+     */
+    private static final class Subscription {
+        final Slot slot;
+        final ObservationProvider<?> provider;
+
+        Subscription(Slot slot, ObservationProvider<?> provider) {
+            this.slot = slot;
+            this.provider = provider;
+        }
+    }
+
+    /**
+     * Subscribes to the providers that are registered and unsubscribes from the ones that are unregistered.
+     */
+    private final class Customizer implements ServiceTrackerCustomizer<ObservationProvider<?>, Subscription> {
+        private final BundleContext context;
+
+        Customizer(BundleContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public Subscription addingService(ServiceReference<ObservationProvider<?>> reference) {
+            Object observationOf = reference.getProperty(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF);
+            if (observationOf == null) {
+                return null;
+            }
+            ObservationProvider<?> provider = context.getService(reference);
+            return provider == null ? null : new Subscription(attach(observationOf.toString(), provider), provider);
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<ObservationProvider<?>> reference, Subscription subscription) {
+            // The provider keeps its slot
+        }
+
+        @Override
+        public void removedService(ServiceReference<ObservationProvider<?>> reference, Subscription subscription) {
+            subscription.provider.unsubscribe(subscription.slot);
+            context.ungetService(reference);
+        }
+    }
+
+    private final ServiceTracker<ObservationProvider<?>, Subscription> tracker;
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentMap<String, Slot> slotsByObservationOf = new ConcurrentHashMap<String, Slot>();
+
+    // The slots are only added while holding the lock, the array itself is replaced when it grows
+    private final Object lock = new Object();
+    private volatile Slot[] slots = new Slot[INITIAL_CAPACITY];
+    private volatile int size;
+
+    /**
+     * Creates the table for all the providers, which must be opened before it will subscribe to them.
+     *
+     * @param context
+     *            The context of the bundle that uses the providers.
+     */
+    public LastValueTable(BundleContext context) {
+        this(context, null);
+    }
+
+    /**
+     * Creates the table for the providers that match the filter, which must be opened before it will subscribe to
+     * them.
+     *
+     * @param context
+     *            The context of the bundle that uses the providers.
+     * @param filter
+     *            An LDAP filter on the properties of the providers, or <code>null</code> to use all providers.
+     * @throws IllegalArgumentException
+     *             When the filter is not valid.
+     */
+    public LastValueTable(BundleContext context, String filter) {
+        String objectClass = "(objectClass=" + ObservationProvider.class.getName() + ")";
+        Filter serviceFilter;
+        try {
+            serviceFilter = context.createFilter(filter == null ? objectClass : "(&" + objectClass + filter + ")");
+        } catch (InvalidSyntaxException ex) {
+            throw new IllegalArgumentException("Invalid filter " + filter, ex);
+        }
+
+        tracker = new ServiceTracker<ObservationProvider<?>, Subscription>(context,
+                                                                           serviceFilter,
+                                                                           new Customizer(context));
+    }
+
+    /**
+     * Starts subscribing to the providers, including all the providers that are currently registered.
+     */
+    public void open() {
+        tracker.open();
+    }
+
+    /**
+     * Unsubscribes from all the providers. The observations that have been received stay available.
+     */
+    @Override
+    public void close() {
+        tracker.close();
+    }
+
+    /**
+     * Subscribes the slot of the observationOf to the provider, starting with its current last observation unless the
+     * slot already holds a newer one from another provider.
+     */
+    Slot attach(String observationOf, ObservationProvider<?> provider) {
+        Slot slot = slotsByObservationOf.get(observationOf);
+        if (slot == null) {
+            synchronized (lock) {
+                slot = slotsByObservationOf.get(observationOf);
+                if (slot == null) {
+                    slot = new Slot(observationOf);
+                    if (size == slots.length) {
+                        slots = Arrays.copyOf(slots, size * 2);
+                    }
+                    slots[size] = slot;
+                    size++;
+                    slotsByObservationOf.put(observationOf, slot);
+                }
+            }
+        }
+
+        // Subscribe first, so an observation that is published in between is not missed. The last observation is
+        // then only stored when nothing newer has arrived.
+        provider.subscribe(slot);
+        Observation<?> last = provider.getLastObservation();
+        if (last != null) {
+            slot.updateIfNewer(last);
+        }
+        return slot;
+    }
+
+    /**
+     * @return The current version, which increases with every update.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return The number of observationOfs in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param observationOf
+     *            The thing that is observed.
+     * @return The last observation of the thing, or <code>null</code> when nothing has been observed yet.
+     */
+    public Observation<?> getLastObservation(String observationOf) {
+        Slot slot = slotsByObservationOf.get(observationOf);
+        Entry entry = slot == null ? null : slot.entry;
+        return entry == null ? null : entry.observation;
+    }
+
+    /**
+     * @return The last observation of every observationOf.
+     */
+    public Changes snapshot() {
+        return changesSince(0);
+    }
+
+    /**
+     * Gives the observations that have been updated after the given version.
+     *
+     * @param since
+     *            The version of the previous {@link Changes}, or 0 to get everything.
+     * @return The changes, of which the version should be used for the next call.
+     */
+    public Changes changesSince(long since) {
+        long result = version.get();
+        int count = size;
+        Slot[] current = slots;
+        Map<String, Observation<?>> observations = new LinkedHashMap<String, Observation<?>>();
+        for (int ix = 0; ix < count; ix++) {
+            Slot slot = current[ix];
+            long pending = slot.pending;
+            Entry entry = slot.entry;
+            if (pending != 0) {
+                // This update may not be visible yet, so the next call should look again
+                result = Math.min(result, pending - 1);
+            }
+            if (entry != null && entry.version > since) {
+                observations.put(slot.observationOf, entry.observation);
+            }
+        }
+        return new Changes(Math.max(result, since), observations);
+    }
+}
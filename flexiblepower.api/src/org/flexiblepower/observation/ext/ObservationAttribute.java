@@ -8,7 +8,7 @@ import java.lang.annotation.Target;
 
 /**
  * This attribute can be used on value types to let the {@link ObservationProviderRegistrationHelper} register the value
- * types correctly in the service registry.
+ * types correctly in the service registry. The deadbands are used by the {@link DeadbandFilter}.
  * 
  * @author TNO
  */
@@ -25,4 +25,16 @@ public @interface ObservationAttribute {
      * If the attribute is optional or not. By default it is not.
      */
     boolean optional() default false;
+
+    /**
+     * The absolute change of a numeric attribute (in the {@link #unit()} when it is set, otherwise in the unit of the
+     * last published value) that is too small to publish a new observation. By default every change is published.
+     */
+    double deadband() default 0;
+
+    /**
+     * The change of a numeric attribute, as a fraction of the last published value, that is too small to publish a new
+     * observation. By default every change is published.
+     */
+    double relativeDeadband() default 0;
 }
@@ -0,0 +1,242 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.flexiblepower.observation.Observation;
+
+/**
+ * An {@link ObservationHistory} remembers the most recent observations of an {@link AbstractObservationProvider} (see
+ * {@link AbstractObservationProvider#setHistory(ObservationHistory)}), so consumers that need e.g. the last 15 minutes
+ * can share a single copy instead of each keeping their own.
+ *
+ * The history is a ring buffer that is limited either by the number of observations ({@link #ofSize(int)}) or by their
+ * age relative to the newest observation ({@link #ofDuration(long, int)}). The times of the observations are kept in a
+ * primitive array, so a query for a time range is a binary search. Queries never block: a reader that has been
+ * overtaken by the writer while reading simply tries again. Observations should be added in the order of their time,
+ * an observation that is older than the newest one in the history is not stored.
+ *
+ * @param <T>
+ *            The type of the value
+ */
+public final class ObservationHistory<T> {
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Creates a history that keeps the given number of observations.
+     *
+     * @param capacity
+     *            The maximum number of observations.
+     * @param <T>
+     *            The type of the value
+     * @return The new, empty history.
+     * @throws IllegalArgumentException
+     *             When the capacity is not positive.
+     */
+    public static <T> ObservationHistory<T> ofSize(int capacity) {
+        return new ObservationHistory<T>(capacity, capacity, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a history that keeps the observations that are at most the given age older than the newest observation.
+     * The buffer grows when needed, up to the given maximum number of observations.
+     *
+     * @param maxAgeMillis
+     *            The maximum age in milliseconds, relative to the time of the newest observation.
+     * @param maxCapacity
+     *            The maximum number of observations, to limit the memory that is used.
+     * @param <T>
+     *            The type of the value
+     * @return The new, empty history.
+     * @throws IllegalArgumentException
+     *             When the maxAgeMillis is negative or the maxCapacity is not positive.
+     */
+    public static <T> ObservationHistory<T> ofDuration(long maxAgeMillis, int maxCapacity) {
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("The maximum age must not be negative");
+        }
+        return new ObservationHistory<T>(Math.min(INITIAL_CAPACITY, maxCapacity), maxCapacity, maxAgeMillis);
+    }
+
+    /**
+     * The arrays of the ring buffer. The observation with sequence number s is stored at index s % length. There is
+     * one more slot than the capacity, which is the slot that the writer may be overwriting at any moment.
+     *
+     * The slots are atomic arrays, so each read of a slot is ordered before the following read of
+     * {@link ObservationHistory#written} that validates it. With plain arrays, those reads could be moved after the
+     * validation and a slot that was being overwritten could go unnoticed.
+     */
+    private static final class Buffer {
+        final AtomicLongArray times;
+        final AtomicReferenceArray<Observation<?>> observations;
+        final int length;
+
+        Buffer(int capacity) {
+            length = capacity + 1;
+            times = new AtomicLongArray(length);
+            observations = new AtomicReferenceArray<Observation<?>>(length);
+        }
+
+        int index(long sequence) {
+            return (int) (sequence % length);
+        }
+
+        long time(long sequence) {
+            return times.get(index(sequence));
+        }
+
+        /**
+         * @return The lowest sequence number that can still be read safely, when the given number of observations has
+         *         been written.
+         */
+        long oldest(long written) {
+            return Math.max(0, written - length + 1);
+        }
+    }
+
+    private final int maxCapacity;
+    private final long maxAgeMillis;
+    private volatile Buffer buffer;
+    /**
+     * The number of observations that have ever been added, which is also the sequence number of the next one.
+     */
+    private volatile long written;
+
+    private ObservationHistory(int initialCapacity, int maxCapacity, long maxAgeMillis) {
+        if (maxCapacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        this.maxCapacity = maxCapacity;
+        this.maxAgeMillis = maxAgeMillis;
+        buffer = new Buffer(initialCapacity);
+    }
+
+    /**
+     * Adds the observation as the newest one. When the history is full, the oldest observation is removed.
+     *
+     * @param observation
+     *            The observation that should be remembered.
+     * @return <code>false</code> when the observation has not been stored, because it is older than the newest
+     *         observation in the history.
+     */
+    public synchronized boolean add(Observation<? extends T> observation) {
+        long time = observation.getObservedAtMillis();
+        long count = written;
+        Buffer current = buffer;
+        if (count > 0 && time < current.time(count - 1)) {
+            return false;
+        }
+
+        int capacity = current.length - 1;
+        if (count >= capacity && capacity < maxCapacity && current.time(count - capacity) >= time - maxAgeMillis) {
+            // The oldest observation is still needed, so make room
+            current = grow(current, count, (int) Math.min(maxCapacity, 2L * capacity));
+            buffer = current;
+        }
+
+        int index = current.index(count);
+        current.times.set(index, time);
+        current.observations.set(index, observation);
+        written = count + 1;
+        return true;
+    }
+
+    private static Buffer grow(Buffer current, long count, int capacity) {
+        Buffer result = new Buffer(capacity);
+        for (long sequence = current.oldest(count); sequence < count; sequence++) {
+            result.times.set(result.index(sequence), current.time(sequence));
+            result.observations.set(result.index(sequence), current.observations.get(current.index(sequence)));
+        }
+        return result;
+    }
+
+    /**
+     * @return All the observations in the history, from old to new.
+     */
+    public List<Observation<? extends T>> getObservations() {
+        return getObservations(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param fromMillis
+     *            The start of the time range (inclusive), in milliseconds since the epoch.
+     * @param toMillis
+     *            The end of the time range (exclusive), in milliseconds since the epoch.
+     * @return The observations in the history that have been observed in the given time range, from old to new.
+     */
+    public List<Observation<? extends T>> getObservations(long fromMillis, long toMillis) {
+        while (true) {
+            long count = written;
+            Buffer current = buffer;
+            long oldest = oldestValid(current, count);
+            long start = search(current, oldest, count, fromMillis);
+            long end = search(current, start, count, toMillis);
+
+            List<Observation<? extends T>> result = new ArrayList<Observation<? extends T>>((int) (end - start));
+            for (long sequence = start; sequence < end; sequence++) {
+                result.add(get(current, sequence));
+            }
+            if (current.oldest(written) <= oldest) {
+                return Collections.unmodifiableList(result);
+            }
+            // The writer has overwritten some of the slots while they were read
+        }
+    }
+
+    /**
+     * @param millis
+     *            The time in milliseconds since the epoch.
+     * @return The newest observation in the history that has been observed at or before the given time, or
+     *         <code>null</code> when there is none.
+     */
+    public Observation<? extends T> getObservationAt(long millis) {
+        while (true) {
+            long count = written;
+            Buffer current = buffer;
+            long oldest = oldestValid(current, count);
+            long end = search(current, oldest, count, millis == Long.MAX_VALUE ? millis : millis + 1);
+            Observation<? extends T> result = end > oldest ? get(current, end - 1) : null;
+            if (current.oldest(written) <= oldest) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return The lowest sequence number that is part of the history, taking the maximum age into account.
+     */
+    private long oldestValid(Buffer current, long count) {
+        long oldest = Math.max(current.oldest(count), count - maxCapacity);
+        if (count == 0 || maxAgeMillis == Long.MAX_VALUE) {
+            return oldest;
+        }
+        long newestTime = current.time(count - 1);
+        long minimumTime = newestTime - maxAgeMillis;
+        return minimumTime > newestTime ? oldest : search(current, oldest, count, minimumTime);
+    }
+
+    /**
+     * @return The first sequence number in [from, to) whose time is at least the given time, or to when there is none.
+     */
+    private static long search(Buffer current, long from, long to, long time) {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (current.time(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Observation<? extends T> get(Buffer current, long sequence) {
+        return (Observation<? extends T>) current.observations.get(current.index(sequence));
+    }
+}
@@ -0,0 +1,764 @@
+package org.flexiblepower.observation.ext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+
+/**
+ * An {@link ObservationLog} records all the observations that it receives in an append-only log on disk. It can be
+ * subscribed as an {@link ObservationConsumer} to any number of providers:
+ *
+ * <pre>
+ * ObservationLog log = ObservationLog.create(new File(&quot;observations&quot;)).maxSegments(100).open();
+ * provider.subscribe(log);
+ * ...
+ * ObservationLog.Cursor cursor = log.cursor(startMillis);
+ * while (cursor.next()) {
+ *     process(cursor.getObservation());
+ * }
+ * </pre>
+ *
+ * The log is stored as a series of segment files of a fixed size, which are written through a memory mapping. Each
+ * record holds the time of the observation, the id of its schema and the flattened values (as given by
+ * {@link Observation#getValueMap()}). A schema describes the type of the value and the names of the attributes, in the
+ * same way as the <code>org.flexiblepower.monitoring.type.*</code> properties of the provider, so the names do not have
+ * to be repeated for each record. The schemas that are used in a segment are written at the start of that segment,
+ * which keeps each segment readable on its own.
+ *
+ * When a segment is full, a new one is started and the oldest segments are deleted according to the retention settings
+ * (the maximum number of segments and the maximum age). An in-memory sparse index of the time of every
+ * {@value #INDEX_INTERVAL}th record makes it possible to start reading at a given time without scanning the complete
+ * log. This assumes that the observations are received roughly in the order of their time.
+ *
+ * The records of the segment that is being written are only guaranteed to be on disk after {@link #flush()} or
+ * {@link #close()}. A reopened log continues in a new segment.
+ */
+public final class ObservationLog implements ObservationConsumer<Object>, Closeable {
+    private static final int MAGIC = 0x46504F4C;
+    private static final int VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int SCHEMA_RECORD = -1;
+    private static final int INDEX_INTERVAL = 1024;
+    private static final String SUFFIX = ".log";
+    private static final String SEGMENT_NAME_FORMAT = "%020d" + SUFFIX;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_DOUBLE = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_BOOLEAN = 3;
+    private static final byte TAG_STRING = 4;
+
+    /**
+     * Starts creating or opening the log in the given directory.
+     *
+     * @param directory
+     *            The directory in which the segment files are stored. It is created when it does not exist.
+     * @return The {@link Builder}, on which the {@link Builder#open()} method should be called to finish.
+     */
+    public static Builder create(File directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * The {@link Builder} of an {@link ObservationLog}, which holds the size and retention settings.
+     */
+    public static final class Builder {
+        private final File directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private int maxSegments = Integer.MAX_VALUE;
+        private long maxAgeMillis = Long.MAX_VALUE;
+
+        Builder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @param bytes
+         *            The size of each segment file in bytes (64 MiB by default).
+         * @return this
+         */
+        public Builder segmentSize(int bytes) {
+            if (bytes <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+                throw new IllegalArgumentException("The segment size is too small");
+            }
+            segmentSize = bytes;
+            return this;
+        }
+
+        /**
+         * @param count
+         *            The maximum number of segment files that are kept (unlimited by default).
+         * @return this
+         */
+        public Builder maxSegments(int count) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("At least one segment must be kept");
+            }
+            maxSegments = count;
+            return this;
+        }
+
+        /**
+         * @param millis
+         *            The age (relative to the newest observation) after which a segment is deleted, when all of its
+         *            observations are older (unlimited by default).
+         * @return this
+         */
+        public Builder maxAge(long millis) {
+            maxAgeMillis = millis;
+            return this;
+        }
+
+        /**
+         * Opens the log, reading the schemas and building the index of the existing segments.
+         *
+         * @return The log, which will write new observations to a new segment.
+         * @throws IOException
+         *             When the directory or the segments can not be read.
+         */
+        public ObservationLog open() throws IOException {
+            return new ObservationLog(this);
+        }
+    }
+
+    /**
+     * A {@link Schema} describes the records of one type of value: the name of the type and the names of the
+     * attributes, in the order in which their values are stored.
+     */
+    public static final class Schema {
+        private final int id;
+        private final String typeName;
+        private final List<String> keys;
+        private final String descriptor;
+
+        Schema(int id, String typeName, List<String> keys) {
+            this.id = id;
+            this.typeName = typeName;
+            this.keys = Collections.unmodifiableList(keys);
+            descriptor = descriptor(typeName, keys);
+        }
+
+        static String descriptor(String typeName, List<String> keys) {
+            StringBuilder sb = new StringBuilder(typeName);
+            for (String key : keys) {
+                sb.append('\n').append(key);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return The id with which the records refer to this schema.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return The full class name of the values.
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+        /**
+         * @return The names of the attributes, sorted by name.
+         */
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        @Override
+        public String toString() {
+            return "Schema [id=" + id + ", typeName=" + typeName + ", keys=" + keys + "]";
+        }
+    }
+
+    /**
+     * The administration of a single segment file.
+     */
+    private static final class Segment {
+        final long number;
+        final File file;
+        long firstMillis = Long.MAX_VALUE;
+        long lastMillis = Long.MIN_VALUE;
+        int records;
+        int end = SEGMENT_HEADER_SIZE;
+        final Set<Integer> schemas = new HashSet<Integer>();
+
+        // Sparse index: the time and position of every INDEX_INTERVAL-th record
+        long[] indexMillis = new long[INDEX_INTERVAL / 64];
+        int[] indexPositions = new int[INDEX_INTERVAL / 64];
+        int indexSize;
+
+        Segment(long number, File file) {
+            this.number = number;
+            this.file = file;
+        }
+
+        void recorded(long millis, int position) {
+            if (records % INDEX_INTERVAL == 0) {
+                if (indexSize == indexMillis.length) {
+                    indexMillis = Arrays.copyOf(indexMillis, indexSize * 2);
+                    indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                }
+                indexMillis[indexSize] = millis;
+                indexPositions[indexSize] = position;
+                indexSize++;
+            }
+            records++;
+            firstMillis = Math.min(firstMillis, millis);
+            lastMillis = Math.max(lastMillis, millis);
+        }
+
+        /**
+         * @return The position of the last indexed record before the given time (or the first record).
+         */
+        int positionBefore(long millis) {
+            int low = 0;
+            int high = indexSize;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (indexMillis[middle] < millis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low == 0 ? SEGMENT_HEADER_SIZE : indexPositions[low - 1];
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long maxAgeMillis;
+
+    // All of the state is guarded by this
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final List<Schema> schemas = new ArrayList<Schema>();
+    private final Map<String, Schema> schemasByDescriptor = new HashMap<String, Schema>();
+    private final Map<Class<?>, Schema> schemasByClass = new HashMap<Class<?>, Schema>();
+    private Segment current;
+    private MappedByteBuffer buffer;
+    private long newestMillis = Long.MIN_VALUE;
+    private boolean closed;
+
+    private ObservationLog(Builder builder) throws IOException {
+        directory = builder.directory;
+        segmentSize = builder.segmentSize;
+        maxSegments = builder.maxSegments;
+        maxAgeMillis = builder.maxAgeMillis;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            Segment segment = new Segment(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+            scan(segment);
+            segments.add(segment);
+            newestMillis = Math.max(newestMillis, segment.lastMillis);
+        }
+    }
+
+    /**
+     * Reads a complete existing segment, to learn its schemas and to build its index.
+     */
+    private void scan(Segment segment) throws IOException {
+        ByteBuffer data = map(segment.file);
+        if (data.getInt(0) != MAGIC || data.getInt(Integer.SIZE / Byte.SIZE) != VERSION) {
+            throw new IOException("Not a valid segment: " + segment.file);
+        }
+        int position = SEGMENT_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= data.limit()) {
+            int length = data.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+            long millis = data.getLong(position + Integer.SIZE / Byte.SIZE);
+            int schemaId = data.getInt(position + RECORD_HEADER_SIZE - Integer.SIZE / Byte.SIZE);
+            if (schemaId == SCHEMA_RECORD) {
+                data.position(position + RECORD_HEADER_SIZE);
+                Schema schema = readSchema(data);
+                segment.schemas.add(schema.getId());
+                if (!schemasByDescriptor.containsKey(schema.descriptor)) {
+                    register(schema);
+                }
+            } else {
+                segment.recorded(millis, position);
+            }
+            position += length;
+        }
+        segment.end = position;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void register(Schema schema) {
+        while (schemas.size() <= schema.getId()) {
+            schemas.add(null);
+        }
+        schemas.set(schema.getId(), schema);
+        schemasByDescriptor.put(schema.descriptor, schema);
+    }
+
+    @Override
+    public void consume(ObservationProvider<? extends Object> source, Observation<? extends Object> observation) {
+        Object value = observation.getValue();
+        Map<String, Object> values = observation.getValueMap();
+        long millis = observation.getObservedAtMillis();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                Schema schema = schemaFor(value.getClass(), values);
+                if (current == null) {
+                    rollOver();
+                }
+                if (!append(millis, schema, values)) {
+                    rollOver();
+                    if (!append(millis, schema, values)) {
+                        throw new IllegalArgumentException("The observation does not fit in a segment: " + observation);
+                    }
+                }
+                newestMillis = Math.max(newestMillis, millis);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not write to the log in " + directory, ex);
+        }
+    }
+
+    /**
+     * Finds the schema for the value, which is extended when the value has attributes that are not known yet (e.g.
+     * because an attribute was <code>null</code> before).
+     */
+    private Schema schemaFor(Class<?> type, Map<String, Object> values) {
+        Schema schema = schemasByClass.get(type);
+        if (schema != null && schema.keys.containsAll(values.keySet())) {
+            return schema;
+        }
+
+        Set<String> keys = new HashSet<String>(values.keySet());
+        if (schema != null) {
+            keys.addAll(schema.keys);
+        }
+        List<String> sortedKeys = new ArrayList<String>(keys);
+        Collections.sort(sortedKeys);
+        String descriptor = Schema.descriptor(type.getName(), sortedKeys);
+        schema = schemasByDescriptor.get(descriptor);
+        if (schema == null) {
+            schema = new Schema(schemas.size(), type.getName(), sortedKeys);
+            register(schema);
+        }
+        schemasByClass.put(type, schema);
+        return schema;
+    }
+
+    /**
+     * Writes the record (and the schema, if it is the first time for this segment) to the current segment.
+     *
+     * @return <code>false</code> when it does not fit.
+     */
+    private boolean append(long millis, Schema schema, Map<String, Object> values) {
+        int start = buffer.position();
+        try {
+            if (!current.schemas.contains(schema.getId())) {
+                int position = skipHeader();
+                writeSchema(buffer, schema);
+                commit(position, 0, SCHEMA_RECORD);
+                current.schemas.add(schema.getId());
+            }
+
+            int position = skipHeader();
+            for (String key : schema.keys) {
+                writeValue(buffer, values.get(key));
+            }
+            commit(position, millis, schema.getId());
+            current.recorded(millis, position);
+            current.end = buffer.position();
+            return true;
+        } catch (BufferOverflowException ex) {
+            if (start != buffer.position()) {
+                buffer.putInt(start, 0);
+            }
+            current.schemas.remove(schema.getId());
+            buffer.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * Leaves room for the header of a record at the current position.
+     *
+     * @return The position of the header.
+     * @throws BufferOverflowException
+     *             When the header does not fit in the rest of the segment.
+     */
+    private int skipHeader() {
+        int position = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER_SIZE) {
+            throw new BufferOverflowException();
+        }
+        buffer.position(position + RECORD_HEADER_SIZE);
+        return position;
+    }
+
+    /**
+     * Fills in the header of the record that has been written from the given position. The length is written last,
+     * because a length of 0 marks the end of the segment (a new segment is filled with zeros).
+     */
+    private void commit(int position, long millis, int schemaId) {
+        int length = buffer.position() - position;
+        buffer.putLong(position + Integer.SIZE / Byte.SIZE, millis);
+        buffer.putInt(position + RECORD_HEADER_SIZE - Integer.SIZE / Byte.SIZE, schemaId);
+        buffer.putInt(position, length);
+    }
+
+    private static void writeSchema(ByteBuffer target, Schema schema) {
+        target.putInt(schema.getId());
+        writeString(target, schema.getTypeName());
+        target.putInt(schema.keys.size());
+        for (String key : schema.keys) {
+            writeString(target, key);
+        }
+    }
+
+    private static Schema readSchema(ByteBuffer source) {
+        int id = source.getInt();
+        String typeName = readString(source);
+        int count = source.getInt();
+        List<String> keys = new ArrayList<String>(count);
+        for (int ix = 0; ix < count; ix++) {
+            keys.add(readString(source));
+        }
+        return new Schema(id, typeName, keys);
+    }
+
+    private static void writeString(ByteBuffer target, String string) {
+        byte[] bytes = string.getBytes(UTF8);
+        target.putInt(bytes.length);
+        target.put(bytes);
+    }
+
+    private static String readString(ByteBuffer source) {
+        byte[] bytes = new byte[source.getInt()];
+        source.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeValue(ByteBuffer target, Object value) {
+        if (value == null) {
+            target.put(TAG_NULL);
+        } else if (value instanceof Double || value instanceof Float) {
+            target.put(TAG_DOUBLE);
+            target.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof Long || value instanceof Integer
+                   || value instanceof Short
+                   || value instanceof Byte) {
+            target.put(TAG_LONG);
+            target.putLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            target.put(TAG_BOOLEAN);
+            target.put(((Boolean) value).booleanValue() ? (byte) 1 : (byte) 0);
+        } else {
+            target.put(TAG_STRING);
+            writeString(target, value.toString());
+        }
+    }
+
+    private static Object readValue(ByteBuffer source) {
+        byte tag = source.get();
+        switch (tag) {
+        case TAG_NULL:
+            return null;
+        case TAG_DOUBLE:
+            return source.getDouble();
+        case TAG_LONG:
+            return source.getLong();
+        case TAG_BOOLEAN:
+            return source.get() != 0;
+        case TAG_STRING:
+            return readString(source);
+        default:
+            throw new IllegalStateException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Starts a new segment and applies the retention settings to the old ones.
+     */
+    private void rollOver() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        long number = nextSegmentNumber();
+        current = new Segment(number, new File(directory, String.format(SEGMENT_NAME_FORMAT, number)));
+        RandomAccessFile raf = new RandomAccessFile(current.file, "rw");
+        try {
+            buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            raf.close();
+        }
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        segments.add(current);
+
+        while (segments.size() > maxSegments || (segments.size() > 1 && isExpired(segments.get(0)))) {
+            Segment oldest = segments.remove(0);
+            if (!oldest.file.delete()) {
+                throw new IOException("Could not delete " + oldest.file);
+            }
+        }
+    }
+
+    private boolean isExpired(Segment segment) {
+        return maxAgeMillis != Long.MAX_VALUE && segment.records > 0
+               && segment.lastMillis < newestMillis - maxAgeMillis;
+    }
+
+    /**
+     * Makes sure that all the records that have been written are stored on disk.
+     */
+    public synchronized void flush() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Flushes the log and stops recording. Observations that are received after this are ignored.
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        closed = true;
+        buffer = null;
+        current = null;
+    }
+
+    /**
+     * @return The schemas of all the records in the log.
+     */
+    public synchronized List<Schema> getSchemas() {
+        List<Schema> result = new ArrayList<Schema>(schemas.size());
+        for (Schema schema : schemas) {
+            if (schema != null) {
+                result.add(schema);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a cursor that reads the records of the log in the order in which they have been written, starting at
+     * the first record that has been observed at or after the given time. Records that are added while reading are
+     * included, as far as the cursor has not passed them yet.
+     *
+     * @param fromMillis
+     *            The time in milliseconds since the epoch, or {@link Long#MIN_VALUE} to read the complete log.
+     * @return The new cursor, which is positioned before the first record.
+     */
+    public synchronized Cursor cursor(long fromMillis) {
+        int first = 0;
+        while (first < segments.size() - 1 && segments.get(first + 1).records > 0
+               && segments.get(first + 1).firstMillis <= fromMillis) {
+            first++;
+        }
+        // Without segments, the cursor waits for the first one that will be written
+        return new Cursor(first < segments.size() ? segments.get(first).number : nextSegmentNumber(), fromMillis);
+    }
+
+    private long nextSegmentNumber() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).number + 1;
+    }
+
+    private synchronized Segment segmentFrom(long number) {
+        for (Segment segment : segments) {
+            if (segment.number >= number) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private synchronized Schema schema(int id) {
+        return id < schemas.size() ? schemas.get(id) : null;
+    }
+
+    /**
+     * A {@link Cursor} reads the records of an {@link ObservationLog} one by one. It is not thread-safe.
+     *
+     * A cursor only reads up to the end of the segment as it is known to the log, which is read while holding the lock
+     * of the log. That makes the records up to that end visible to the cursor, and it only moves on to the next segment
+     * after it has read all the records of a segment that was finished at that moment.
+     */
+    public final class Cursor {
+        private final long fromMillis;
+        private long segmentNumber;
+        private Segment segment;
+        private ByteBuffer data;
+        private int position;
+        private int end;
+        private boolean seeking = true;
+
+        private long millis;
+        private Schema schema;
+        private Object[] values;
+
+        Cursor(long segmentNumber, long fromMillis) {
+            this.segmentNumber = segmentNumber;
+            this.fromMillis = fromMillis;
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return <code>true</code> when there is a next record, <code>false</code> when the end of the log has been
+         *         reached (for now).
+         * @throws IOException
+         *             When a segment can not be read.
+         */
+        public boolean next() throws IOException {
+            while (true) {
+                if (data == null && !openSegment()) {
+                    return false;
+                }
+                if (position >= end) {
+                    boolean finished;
+                    synchronized (ObservationLog.this) {
+                        // The end of a finished segment does not change anymore
+                        end = segment.end;
+                        finished = current != segment;
+                    }
+                    if (position >= end) {
+                        if (!finished) {
+                            // This segment is still being written
+                            return false;
+                        }
+                        data = null;
+                        segmentNumber++;
+                        continue;
+                    }
+                }
+
+                int length = data.getInt(position);
+                int schemaId = data.getInt(position + RECORD_HEADER_SIZE - Integer.SIZE / Byte.SIZE);
+                long recordMillis = data.getLong(position + Integer.SIZE / Byte.SIZE);
+                int start = position;
+                position += length;
+                if (schemaId == SCHEMA_RECORD || recordMillis < fromMillis) {
+                    continue;
+                }
+
+                millis = recordMillis;
+                schema = schema(schemaId);
+                data.position(start + RECORD_HEADER_SIZE);
+                values = new Object[schema.keys.size()];
+                for (int ix = 0; ix < values.length; ix++) {
+                    values[ix] = readValue(data);
+                }
+                return true;
+            }
+        }
+
+        private boolean openSegment() throws IOException {
+            Segment next = segmentFrom(segmentNumber);
+            if (next == null) {
+                return false;
+            }
+            segment = next;
+            segmentNumber = next.number;
+            data = map(next.file);
+            synchronized (ObservationLog.this) {
+                position = seeking ? next.positionBefore(fromMillis) : SEGMENT_HEADER_SIZE;
+                end = next.end;
+            }
+            seeking = false;
+            return true;
+        }
+
+        /**
+         * @return The time of the current record, in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return millis;
+        }
+
+        /**
+         * @return The schema of the current record.
+         */
+        public Schema getSchema() {
+            return schema;
+        }
+
+        /**
+         * @return The values of the current record, with the same keys as the {@link Observation#getValueMap()} of the
+         *         original observation. Measures and enumerations have been stored as numbers and strings, and all
+         *         other values that are not a number or a boolean as their string representation.
+         */
+        public Map<String, Object> getValueMap() {
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (int ix = 0; ix < values.length; ix++) {
+                if (values[ix] != null) {
+                    result.put(schema.keys.get(ix), values[ix]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @return The current record as an observation of its value map.
+         */
+        public Observation<Map<String, Object>> getObservation() {
+            return Observation.create(millis, getValueMap());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ObservationLog [").append(directory);
+        synchronized (this) {
+            sb.append(", segments=").append(segments.size()).append(", schemas=").append(schemasByDescriptor.size());
+        }
+        return sb.append("]").toString();
+    }
+}
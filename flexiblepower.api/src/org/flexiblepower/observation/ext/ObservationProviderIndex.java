@@ -0,0 +1,429 @@
+package org.flexiblepower.observation.ext;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.flexiblepower.observation.ObservationProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * The {@link ObservationProviderIndex} tracks all the {@link ObservationProvider}s in the service registry and indexes
+ * them by the properties that are set by the {@link ObservationProviderRegistrationHelper}: the
+ * {@link ObservationProviderRegistrationHelper#KEY_OBSERVATION_OF observationOf}, the
+ * {@link ObservationProviderRegistrationHelper#KEY_OBSERVED_BY observedBy} and the names of the
+ * {@link ObservationProviderRegistrationHelper#KEY_OBSERVATION_TYPE type} (the class of the values and all its
+ * interfaces). This makes it possible to find providers without evaluating a filter over all services:
+ *
+ * <pre>
+ * ObservationProviderIndex index = new ObservationProviderIndex(bundleContext);
+ * index.open();
+ * ObservationProvider&lt;?&gt; provider = index.getProvider(&quot;dishwasher&quot;, &quot;dishwasher-driver&quot;);
+ * ...
+ * index.close();
+ * </pre>
+ *
+ * The indexes are updated for each service event. A lookup takes constant time and does not lock, but the results of
+ * several lookups may reflect different moments. A {@link Snapshot} gives a consistent view of all the indexes at a
+ * single moment.
+ */
+public final class ObservationProviderIndex implements Closeable {
+    private static final String SEPARATOR = "\u0000";
+
+    /**
+     * A provider that is being tracked, with the properties by which it has been indexed.
+     */
+    static final class Tracked {
+        final ObservationProvider<?> provider;
+        final String observationOf;
+        final String observedBy;
+        final String[] types;
+
+        Tracked(ObservationProvider<?> provider, String observationOf, String observedBy, String[] types) {
+            this.provider = provider;
+            this.observationOf = observationOf;
+            this.observedBy = observedBy;
+            this.types = types;
+        }
+    }
+
+    private static final Tracked[] NONE = new Tracked[0];
+
+    /**
+     * A consistent view of the indexes of an {@link ObservationProviderIndex} at a single moment. It does not change
+     * afterwards.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Tracked[] all;
+        private final Map<String, Tracked[]> byObservationOf;
+        private final Map<String, Tracked[]> byObservedBy;
+        private final Map<String, Tracked[]> byPair;
+        private final Map<String, Tracked[]> byType;
+
+        Snapshot(long version,
+                 Tracked[] all,
+                 Map<String, Tracked[]> byObservationOf,
+                 Map<String, Tracked[]> byObservedBy,
+                 Map<String, Tracked[]> byPair,
+                 Map<String, Tracked[]> byType) {
+            this.version = version;
+            this.all = all;
+            this.byObservationOf = byObservationOf;
+            this.byObservedBy = byObservedBy;
+            this.byPair = byPair;
+            this.byType = byType;
+        }
+
+        /**
+         * @return The number of changes to the index that had been made when this snapshot was taken.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The number of providers.
+         */
+        public int size() {
+            return all.length;
+        }
+
+        /**
+         * @return All the providers, including those without an observationOf or observedBy.
+         */
+        public List<ObservationProvider<?>> getProviders() {
+            return providers(all);
+        }
+
+        /**
+         * @param observationOf
+         *            The thing that is observed.
+         * @param observedBy
+         *            The component that does the observations.
+         * @return The provider with the given properties, or <code>null</code> when there is none.
+         */
+        public ObservationProvider<?> getProvider(String observationOf, String observedBy) {
+            return first(byPair, pairKey(observationOf, observedBy));
+        }
+
+        /**
+         * @param observationOf
+         *            The thing that is observed.
+         * @return The providers of observations of the thing.
+         */
+        public List<ObservationProvider<?>> getProvidersOf(String observationOf) {
+            return providers(byObservationOf, observationOf);
+        }
+
+        /**
+         * @param observedBy
+         *            The component that does the observations.
+         * @return The providers of the component.
+         */
+        public List<ObservationProvider<?>> getProvidersBy(String observedBy) {
+            return providers(byObservedBy, observedBy);
+        }
+
+        /**
+         * @param typeName
+         *            The full name of the class of the values or one of its interfaces.
+         * @return The providers of values of the type.
+         */
+        public List<ObservationProvider<?>> getProvidersOfType(String typeName) {
+            return providers(byType, typeName);
+        }
+    }
+
+    /**
+     * Keeps the indexes up to date with the service events. The tracked object refers to the current entry of the
+     * provider in the indexes, which is replaced when the properties of the service are modified.
+     */
+    private final class Customizer implements
+                                  ServiceTrackerCustomizer<ObservationProvider<?>, AtomicReference<Tracked>> {
+        private final BundleContext context;
+
+        Customizer(BundleContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public AtomicReference<Tracked> addingService(ServiceReference<ObservationProvider<?>> reference) {
+            ObservationProvider<?> provider = context.getService(reference);
+            return provider == null ? null : new AtomicReference<Tracked>(track(reference, provider));
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<ObservationProvider<?>> reference,
+                                    AtomicReference<Tracked> tracked) {
+            synchronized (lock) {
+                untrack(tracked.get());
+                tracked.set(track(reference, tracked.get().provider));
+            }
+        }
+
+        @Override
+        public void removedService(ServiceReference<ObservationProvider<?>> reference,
+                                   AtomicReference<Tracked> tracked) {
+            untrack(tracked.get());
+            context.ungetService(reference);
+        }
+    }
+
+    private final ServiceTracker<ObservationProvider<?>, AtomicReference<Tracked>> tracker;
+
+    // The indexes can be read at any time, but are only changed while holding the lock
+    private final Object lock = new Object();
+    private volatile Tracked[] all = NONE;
+    private final Map<String, Tracked[]> byObservationOf = new ConcurrentHashMap<String, Tracked[]>();
+    private final Map<String, Tracked[]> byObservedBy = new ConcurrentHashMap<String, Tracked[]>();
+    private final Map<String, Tracked[]> byPair = new ConcurrentHashMap<String, Tracked[]>();
+    private final Map<String, Tracked[]> byType = new ConcurrentHashMap<String, Tracked[]>();
+    private volatile long version;
+
+    /**
+     * Creates the index, which must be opened before it will track the providers.
+     *
+     * @param context
+     *            The context of the bundle that uses the providers.
+     */
+    public ObservationProviderIndex(BundleContext context) {
+        String className = ObservationProvider.class.getName();
+        tracker = new ServiceTracker<ObservationProvider<?>, AtomicReference<Tracked>>(context,
+                                                                                       className,
+                                                                                       new Customizer(context));
+    }
+
+    /**
+     * Starts tracking the providers, which adds all the providers that are currently registered to the index.
+     */
+    public void open() {
+        tracker.open();
+    }
+
+    /**
+     * Stops tracking the providers and empties the index.
+     */
+    @Override
+    public void close() {
+        tracker.close();
+    }
+
+    /**
+     * @return The key in the index of pairs, or <code>null</code> when either part is missing.
+     */
+    private static String pairKey(String observationOf, String observedBy) {
+        return observationOf == null || observedBy == null ? null : observationOf + SEPARATOR + observedBy;
+    }
+
+    private static String asString(Object property) {
+        return property == null ? null : property.toString();
+    }
+
+    private static String[] asStrings(Object property) {
+        if (property instanceof String[]) {
+            return ((String[]) property).clone();
+        } else if (property instanceof Collection) {
+            Collection<?> collection = (Collection<?>) property;
+            String[] result = new String[collection.size()];
+            int ix = 0;
+            for (Object element : collection) {
+                result[ix++] = String.valueOf(element);
+            }
+            return result;
+        } else if (property != null) {
+            return new String[] { property.toString() };
+        } else {
+            return new String[0];
+        }
+    }
+
+    /**
+     * Adds a provider to the indexes.
+     *
+     * @return The object that should be given to {@link #untrack(Tracked)} to remove it again.
+     */
+    Tracked track(ServiceReference<?> reference, ObservationProvider<?> provider) {
+        Object observationOf = reference.getProperty(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF);
+        Object observedBy = reference.getProperty(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY);
+        Object types = reference.getProperty(ObservationProviderRegistrationHelper.KEY_OBSERVATION_TYPE);
+        Tracked tracked = new Tracked(provider, asString(observationOf), asString(observedBy), asStrings(types));
+        synchronized (lock) {
+            all = appended(all, tracked);
+            add(byObservationOf, tracked.observationOf, tracked);
+            add(byObservedBy, tracked.observedBy, tracked);
+            add(byPair, pairKey(tracked.observationOf, tracked.observedBy), tracked);
+            for (String type : tracked.types) {
+                add(byType, type, tracked);
+            }
+            version++;
+        }
+        return tracked;
+    }
+
+    /**
+     * Removes a provider from the indexes.
+     */
+    void untrack(Tracked tracked) {
+        synchronized (lock) {
+            all = without(all, tracked);
+            remove(byObservationOf, tracked.observationOf, tracked);
+            remove(byObservedBy, tracked.observedBy, tracked);
+            remove(byPair, pairKey(tracked.observationOf, tracked.observedBy), tracked);
+            for (String type : tracked.types) {
+                remove(byType, type, tracked);
+            }
+            version++;
+        }
+    }
+
+    /**
+     * @return A copy of the (immutable) array with the tracked provider added at the end.
+     */
+    private static Tracked[] appended(Tracked[] current, Tracked tracked) {
+        Tracked[] copy = Arrays.copyOf(current, current.length + 1);
+        copy[current.length] = tracked;
+        return copy;
+    }
+
+    /**
+     * @return A copy of the (immutable) array without the tracked provider, or the array itself when it does not
+     *         contain it.
+     */
+    private static Tracked[] without(Tracked[] current, Tracked tracked) {
+        for (int ix = 0; ix < current.length; ix++) {
+            if (current[ix] == tracked) {
+                Tracked[] copy = new Tracked[current.length - 1];
+                System.arraycopy(current, 0, copy, 0, ix);
+                System.arraycopy(current, ix + 1, copy, ix, copy.length - ix);
+                return copy;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Adds the tracked provider to the (immutable) array of the key, of which a changed copy is put in the index.
+     */
+    private static void add(Map<String, Tracked[]> index, String key, Tracked tracked) {
+        if (key == null) {
+            return;
+        }
+        Tracked[] current = index.get(key);
+        index.put(key, appended(current == null ? NONE : current, tracked));
+    }
+
+    private static void remove(Map<String, Tracked[]> index, String key, Tracked tracked) {
+        Tracked[] current = key == null ? null : index.get(key);
+        if (current == null) {
+            return;
+        }
+        Tracked[] copy = without(current, tracked);
+        if (copy.length == 0) {
+            index.remove(key);
+        } else if (copy != current) {
+            index.put(key, copy);
+        }
+    }
+
+    private static ObservationProvider<?> first(Map<String, Tracked[]> index, String key) {
+        Tracked[] tracked = key == null ? null : index.get(key);
+        return tracked == null ? null : tracked[0].provider;
+    }
+
+    private static List<ObservationProvider<?>> providers(Map<String, Tracked[]> index, String key) {
+        return providers(key == null ? NONE : index.get(key));
+    }
+
+    private static List<ObservationProvider<?>> providers(Tracked[] tracked) {
+        if (tracked == null || tracked.length == 0) {
+            return Collections.emptyList();
+        }
+        ObservationProvider<?>[] result = new ObservationProvider<?>[tracked.length];
+        for (int ix = 0; ix < tracked.length; ix++) {
+            result[ix] = tracked[ix].provider;
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * @return The number of changes that have been made to the index.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return A consistent view of all the indexes at this moment.
+     */
+    public Snapshot snapshot() {
+        synchronized (lock) {
+            return new Snapshot(version,
+                                all,
+                                new HashMap<String, Tracked[]>(byObservationOf),
+                                new HashMap<String, Tracked[]>(byObservedBy),
+                                new HashMap<String, Tracked[]>(byPair),
+                                new HashMap<String, Tracked[]>(byType));
+        }
+    }
+
+    /**
+     * @param observationOf
+     *            The thing that is observed.
+     * @param observedBy
+     *            The component that does the observations.
+     * @return The provider with the given properties, or <code>null</code> when there is none. When there are several,
+     *         the one that has been registered first is given.
+     */
+    public ObservationProvider<?> getProvider(String observationOf, String observedBy) {
+        return first(byPair, pairKey(observationOf, observedBy));
+    }
+
+    /**
+     * @param observationOf
+     *            The thing that is observed.
+     * @return The providers of observations of the thing.
+     */
+    public List<ObservationProvider<?>> getProvidersOf(String observationOf) {
+        return providers(byObservationOf, observationOf);
+    }
+
+    /**
+     * @param observedBy
+     *            The component that does the observations.
+     * @return The providers of the component.
+     */
+    public List<ObservationProvider<?>> getProvidersBy(String observedBy) {
+        return providers(byObservedBy, observedBy);
+    }
+
+    /**
+     * @param typeName
+     *            The full name of the class of the values or one of its interfaces.
+     * @return The providers of values of the type.
+     */
+    public List<ObservationProvider<?>> getProvidersOfType(String typeName) {
+        return providers(byType, typeName);
+    }
+
+    /**
+     * @param type
+     *            The class of the values or one of its interfaces.
+     * @param <T>
+     *            The type of the values
+     * @return The providers of values of the type.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public <T> List<ObservationProvider<? extends T>> getProvidersOfType(Class<T> type) {
+        return (List) providers(byType, type.getName());
+    }
+}
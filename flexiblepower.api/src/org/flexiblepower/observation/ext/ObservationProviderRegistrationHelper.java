@@ -1,8 +1,12 @@
 package org.flexiblepower.observation.ext;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -133,6 +137,22 @@ public class ObservationProviderRegistrationHelper {
         return setProperty(KEY_OBSERVATION_OF, observationOf);
     }
 
+    /**
+     * The type.* properties of each observation class, which are computed only once. The maps are immutable, except
+     * for the array of type names, which must be copied before it is handed out.
+     */
+    private static final ClassValue<Map<String, Object>> TYPE_PROPERTIES = new ClassValue<Map<String, Object>>() {
+        @Override
+        protected Map<String, Object> computeValue(Class<?> observationClass) {
+            Map<String, Object> result = new HashMap<String, Object>();
+            Set<String> interfaces = new HashSet<String>();
+            addInterfaces(observationClass, interfaces);
+            result.put(KEY_OBSERVATION_TYPE, interfaces.toArray(new String[interfaces.size()]));
+            addType(result, KEY_OBSERVATION_TYPE, observationClass, new HashSet<Class<?>>());
+            return Collections.unmodifiableMap(result);
+        }
+    };
+
     private static void addInterfaces(Class<?> baseClass, Set<String> interfaces) {
         interfaces.add(baseClass.getName());
         for (Class<?> iface : baseClass.getInterfaces()) {
@@ -141,48 +161,64 @@ public class ObservationProviderRegistrationHelper {
     }
 
     /**
-     * Sets all of the type.* properties using the given type of observations.
+     * Sets all of the type.* properties using the given type of observations. These are determined only once for each
+     * type of observations.
      *
      * @param observationClass
      *            The type of the observations.
      * @return this
      */
     public ObservationProviderRegistrationHelper observationType(Class<?> observationClass) {
-        Set<String> interfaces = new HashSet<String>();
-        addInterfaces(observationClass, interfaces);
-        setProperty(KEY_OBSERVATION_TYPE, interfaces.toArray(new String[interfaces.size()]));
-        addType(KEY_OBSERVATION_TYPE, observationClass, new HashSet<Class<?>>());
+        properties.putAll(TYPE_PROPERTIES.get(observationClass));
+        copyTypeNames(properties);
         return this;
     }
 
-    private void addType(String parentPrefix, Class<?> observationClass, HashSet<Class<?>> visitedClasses) {
+    /**
+     * Replaces the array of type names by a copy, so the cached array is never shared with the service registry.
+     */
+    private static void copyTypeNames(Map<String, Object> properties) {
+        Object typeNames = properties.get(KEY_OBSERVATION_TYPE);
+        if (typeNames instanceof String[]) {
+            properties.put(KEY_OBSERVATION_TYPE, ((String[]) typeNames).clone());
+        }
+    }
+
+    private static void addType(Map<String, Object> result,
+                                String parentPrefix,
+                                Class<?> observationClass,
+                                HashSet<Class<?>> visitedClasses) {
         Map<String, Method> methods = ObservationTranslationHelper.getGetterMethods(observationClass);
         for (Entry<String, Method> entry : methods.entrySet()) {
-            addTypeField(parentPrefix, entry.getKey(), entry.getValue(), visitedClasses);
+            addTypeField(result, parentPrefix, entry.getKey(), entry.getValue(), visitedClasses);
         }
     }
 
-    private void addTypeField(String parentPrefix, String name, Method method, HashSet<Class<?>> visitedClasses) {
+    private static void addTypeField(Map<String, Object> result,
+                                     String parentPrefix,
+                                     String name,
+                                     Method method,
+                                     HashSet<Class<?>> visitedClasses) {
         String prefix = parentPrefix + "." + name;
         Class<?> type = method.getReturnType();
 
         if (type.isEnum() || type.equals(String.class)) {
-            setProperty(prefix, "string");
+            result.put(prefix, "string");
         } else {
-            setProperty(prefix, type.getName());
+            result.put(prefix, type.getName());
         }
 
         ObservationAttribute annotation = method.getAnnotation(ObservationAttribute.class);
         if (annotation != null) {
-            setProperty(prefix + ".unit", annotation.unit());
-            setProperty(prefix + ".optional", annotation.optional());
+            result.put(prefix + ".unit", annotation.unit());
+            result.put(prefix + ".optional", annotation.optional());
         }
 
         if (ObservationTranslationHelper.isJavaBean(type)) {
             if (!visitedClasses.add(type)) {
                 throw new IllegalArgumentException("Circular typing detected in Observation type [" + type + "]");
             }
-            addType(prefix, type, visitedClasses);
+            addType(result, prefix, type, visitedClasses);
             visitedClasses.remove(type);
         }
     }
@@ -199,12 +235,55 @@ public class ObservationProviderRegistrationHelper {
         if (serviceObject == null) {
             throw new NullPointerException("No serviceObject has been set");
         }
+        return bundleContext.registerService(getClassNames(otherInterfaces), serviceObject, properties);
+    }
+
+    /**
+     * Registers many service objects at once, each with all of the set properties and its own observationOf property.
+     * This is much cheaper than creating a helper for each of them, because the properties are only copied. When no
+     * {@link #observedBy(String)} has been set, the classname of each service object is used.
+     *
+     * @param observationOfByServiceObject
+     *            The objects that are to be registered as a {@link ObservationProvider}, with the description of the
+     *            thing that each of them observes.
+     * @param otherInterfaces
+     *            Any other interfaces (next to the default {@link ObservationProvider}) that these services should
+     *            register themselves by.
+     * @return The registrations, in the iteration order of the map.
+     * @throws RuntimeException
+     *             When one of the services can not be registered. The services that have already been registered are
+     *             unregistered again before the exception is thrown.
+     */
+    public List<ServiceRegistration<?>> registerAll(Map<?, String> observationOfByServiceObject,
+                                                    Class<?>... otherInterfaces) {
+        String[] classes = getClassNames(otherInterfaces);
+        List<ServiceRegistration<?>> result =
+                new ArrayList<ServiceRegistration<?>>(observationOfByServiceObject.size());
+        try {
+            for (Entry<?, String> entry : observationOfByServiceObject.entrySet()) {
+                Hashtable<String, Object> copy = new Hashtable<String, Object>(properties);
+                copyTypeNames(copy);
+                copy.put(KEY_OBSERVATION_OF, entry.getValue());
+                if (!copy.containsKey(KEY_OBSERVED_BY)) {
+                    copy.put(KEY_OBSERVED_BY, entry.getKey().getClass().getName());
+                }
+                result.add(bundleContext.registerService(classes, entry.getKey(), copy));
+            }
+        } catch (RuntimeException ex) {
+            for (ServiceRegistration<?> registration : result) {
+                registration.unregister();
+            }
+            throw ex;
+        }
+        return result;
+    }
 
+    private static String[] getClassNames(Class<?>... otherInterfaces) {
         String[] classes = new String[otherInterfaces.length + 1];
         classes[0] = ObservationProvider.class.getName();
         for (int i = 0; i < otherInterfaces.length; i++) {
             classes[i + 1] = otherInterfaces[i].getName();
         }
-        return bundleContext.registerService(classes, serviceObject, properties);
+        return classes;
     }
 }
@@ -0,0 +1,95 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.flexiblepower.observation.Observation;
+
+/**
+ * A {@link ProjectedRecord} holds the attributes of a value that have been selected by a {@link Projection}. The
+ * attributes have been translated in the same way as in the {@link Observation#getValueMap() value map}: a measure is
+ * given as its value and an enumeration as its name. A record is immutable and is shared by all consumers of the same
+ * projection.
+ */
+public final class ProjectedRecord {
+    private final Projection<?> projection;
+    private final Object[] values;
+
+    ProjectedRecord(Projection<?> projection, Object[] values) {
+        this.projection = projection;
+        this.values = values;
+    }
+
+    /**
+     * @return The projection that created this record.
+     */
+    public Projection<?> getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return The number of attributes.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * @param index
+     *            The index of the attribute, in the order of {@link Projection#getPaths()}.
+     * @return The value of the attribute, or <code>null</code> when it did not exist.
+     */
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param path
+     *            The name of the attribute.
+     * @return The value of the attribute, or <code>null</code> when it did not exist.
+     * @throws IllegalArgumentException
+     *             When the attribute has not been selected by the projection.
+     */
+    public Object get(String path) {
+        int index = projection.indexOf(path);
+        if (index < 0) {
+            throw new IllegalArgumentException("The attribute '" + path + "' is not part of " + projection);
+        }
+        return values[index];
+    }
+
+    /**
+     * @return A new map of the attributes that are not <code>null</code>.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int ix = 0; ix < values.length; ix++) {
+            if (values[ix] != null) {
+                result.put(projection.getPaths().get(ix), values[ix]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        ProjectedRecord other = (ProjectedRecord) obj;
+        return projection.equals(other.projection) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,76 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.flexiblepower.observation.BatchObservationConsumer;
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+
+/**
+ * Publishes the projected observations of a provider for one {@link Projection}. It is only subscribed to the provider
+ * while it has consumers itself, so each observation is projected once for all these consumers. When the last consumer
+ * unsubscribes, it is also removed from the projections of the provider.
+ *
+ * @param <T>
+ *            The type of the value of the provider
+ */
+final class ProjectingProvider<T> extends AbstractObservationProvider<ProjectedRecord> implements
+                                                                                     BatchObservationConsumer<T> {
+    private final AbstractObservationProvider<T> source;
+    private final Projection<? super T> projection;
+    // Guarded by this
+    private final Set<ObservationConsumer<? super ProjectedRecord>> subscribed =
+            new HashSet<ObservationConsumer<? super ProjectedRecord>>();
+
+    ProjectingProvider(AbstractObservationProvider<T> source, Projection<? super T> projection) {
+        this.source = source;
+        this.projection = projection;
+    }
+
+    @Override
+    public synchronized void subscribe(ObservationConsumer<? super ProjectedRecord> consumer) {
+        super.subscribe(consumer);
+        if (subscribed.add(consumer) && subscribed.size() == 1) {
+            source.subscribe(this);
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe(ObservationConsumer<? super ProjectedRecord> consumer) {
+        super.unsubscribe(consumer);
+        if (subscribed.remove(consumer) && subscribed.isEmpty()) {
+            source.unsubscribe(this);
+            source.removeProjection(projection, this);
+        }
+    }
+
+    private Observation<ProjectedRecord> project(Observation<? extends T> observation) {
+        return new Observation<ProjectedRecord>(observation.getObservedAtMillis(),
+                                                observation.getNanosOfMilli(),
+                                                projection.apply(observation.getValue()));
+    }
+
+    @Override
+    public void consume(ObservationProvider<? extends T> source, Observation<? extends T> observation) {
+        publish(project(observation));
+    }
+
+    @Override
+    public void consumeBatch(ObservationProvider<? extends T> source,
+                             List<? extends Observation<? extends T>> observations) {
+        List<Observation<ProjectedRecord>> batch = new ArrayList<Observation<ProjectedRecord>>(observations.size());
+        for (Observation<? extends T> observation : observations) {
+            batch.add(project(observation));
+        }
+        publish(batch);
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectingProvider [source=" + source + ", projection=" + projection + "]";
+    }
+}
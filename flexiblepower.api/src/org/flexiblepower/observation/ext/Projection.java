@@ -0,0 +1,126 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ValuePath;
+
+/**
+ * A {@link Projection} selects a couple of attributes of the values of a provider, using the same names as the
+ * {@link Observation#getValueMap()} (e.g. "power" or "location.geo.latitude"). The attributes are resolved once, when
+ * the projection is created. A consumer that only needs these attributes can subscribe to the projected observations
+ * of an {@link AbstractObservationProvider} (see {@link AbstractObservationProvider#project(Projection)}), which then
+ * receives a {@link ProjectedRecord} instead of the complete value.
+ *
+ * Two projections are equal when they are for the same class and select the same attributes in the same order. Equal
+ * projections share the projected observations.
+ *
+ * @param <T>
+ *            The type of the value
+ */
+public final class Projection<T> {
+    private static final int HASH_CONSTANT = 31;
+
+    /**
+     * Creates a projection.
+     *
+     * @param type
+     *            The class of the values.
+     * @param paths
+     *            The names of the attributes, in the order in which they will appear in the {@link ProjectedRecord}.
+     * @param <T>
+     *            The type of the value
+     * @return The new projection.
+     * @throws IllegalArgumentException
+     *             When no attributes are given, an attribute is given twice or one of the attributes can not exist.
+     */
+    public static <T> Projection<T> of(Class<T> type, String... paths) {
+        return new Projection<T>(type, paths);
+    }
+
+    private final Class<T> type;
+    private final List<String> paths;
+    private final ValuePath[] valuePaths;
+    private final Map<String, Integer> indexes;
+
+    private Projection(Class<T> type, String[] paths) {
+        if (paths.length == 0) {
+            throw new IllegalArgumentException("At least one attribute must be selected");
+        }
+        this.type = type;
+        this.paths = Collections.unmodifiableList(Arrays.asList(paths.clone()));
+        valuePaths = new ValuePath[paths.length];
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (int ix = 0; ix < paths.length; ix++) {
+            valuePaths[ix] = ValuePath.compile(type, paths[ix]);
+            if (map.put(paths[ix], ix) != null) {
+                throw new IllegalArgumentException("The attribute '" + paths[ix] + "' has been selected twice");
+            }
+        }
+        indexes = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return The class of the values.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return The names of the selected attributes.
+     */
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * @param path
+     *            The name of an attribute.
+     * @return The index of the attribute in the {@link ProjectedRecord}, or -1 when it has not been selected.
+     */
+    public int indexOf(String path) {
+        Integer index = indexes.get(path);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Projects a value.
+     *
+     * @param value
+     *            The value, which must be an instance of {@link #getType()}.
+     * @return The record with the selected attributes.
+     */
+    public ProjectedRecord apply(T value) {
+        Object[] values = new Object[valuePaths.length];
+        for (int ix = 0; ix < values.length; ix++) {
+            values[ix] = valuePaths[ix].get(value);
+        }
+        return new ProjectedRecord(this, values);
+    }
+
+    @Override
+    public int hashCode() {
+        return type.hashCode() * HASH_CONSTANT + paths.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Projection<?> other = (Projection<?>) obj;
+        return type == other.type && paths.equals(other.paths);
+    }
+
+    @Override
+    public String toString() {
+        return "Projection [type=" + type.getName() + ", paths=" + paths + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package org.flexiblepower.observation.ext;
+
+/**
+ * Describes what an {@link AbstractObservationProvider} that dispatches asynchronously does when the queue of one of
+ * its consumers is full while a new observation is published. The policy only affects that slow consumer, the other
+ * consumers still receive every observation.
+ */
+public enum QueueFullPolicy {
+    /**
+     * The publishing thread waits until the consumer has taken an observation from its queue. No observations are
+     * lost, but a slow consumer slows down the publisher.
+     */
+    BLOCK,
+    /**
+     * The oldest observation in the queue is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new observation is discarded for this consumer.
+     */
+    DROP_NEWEST,
+    /**
+     * All the observations in the queue are discarded and only the new one is kept, so the consumer skips directly to
+     * the latest state.
+     */
+    COALESCE_TO_LATEST
+}
@@ -1,6 +1,11 @@
 package org.flexiblepower.observation.ext;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.flexiblepower.observation.Observation;
 import org.flexiblepower.observation.ObservationConsumer;
@@ -62,9 +67,13 @@ public class SimpleObservationProvider<T> extends AbstractObservationProvider<T>
      */
     public static class Builder<T> {
         private final ObservationProviderRegistrationHelper helper;
+        private DeadbandFilter<T> deadbandFilter;
 
         Builder(Object source, Class<T> observationType) {
-            Bundle sourceBundle = FrameworkUtil.getBundle(source.getClass());
+            this(FrameworkUtil.getBundle(source.getClass()), observationType);
+        }
+
+        Builder(Bundle sourceBundle, Class<T> observationType) {
             helper = new ObservationProviderRegistrationHelper(sourceBundle.getBundleContext());
             helper.observedBy(sourceBundle.getSymbolicName() + "-" + sourceBundle.getVersion());
             helper.observationType(observationType);
@@ -96,6 +105,18 @@ public class SimpleObservationProvider<T> extends AbstractObservationProvider<T>
             return this;
         }
 
+        /**
+         * Sets the filter that suppresses observations that have hardly changed.
+         *
+         * @param deadbandFilter
+         *            The filter, see {@link DeadbandFilter#create(Class)}.
+         * @return this
+         */
+        public Builder<T> deadbandFilter(DeadbandFilter<T> deadbandFilter) {
+            this.deadbandFilter = deadbandFilter;
+            return this;
+        }
+
         /**
          * Creates the {@link SimpleObservationProvider} and registers this object with all of the set properties in the
          * service registry.
@@ -104,10 +125,40 @@ public class SimpleObservationProvider<T> extends AbstractObservationProvider<T>
          */
         public SimpleObservationProvider<T> build() {
             SimpleObservationProvider<T> provider = new SimpleObservationProvider<T>();
+            provider.setDeadbandFilter(deadbandFilter);
             helper.serviceObject(provider);
             provider.registration = helper.register();
             return provider;
         }
+
+        /**
+         * Creates a {@link SimpleObservationProvider} for each of the given observationOf properties and registers
+         * them all in the service registry with a single call, sharing the type properties. The observationOf property
+         * of this builder is ignored.
+         *
+         * @param observationOfs
+         *            A short description of the thing that is being observed by each provider.
+         * @return The providers, in the order of the observationOfs.
+         * @throws IllegalStateException
+         *             When a {@link #deadbandFilter(DeadbandFilter)} has been set, because a filter can not be shared
+         *             by several providers.
+         */
+        public List<SimpleObservationProvider<T>> buildAll(Collection<String> observationOfs) {
+            if (deadbandFilter != null) {
+                throw new IllegalStateException("A deadband filter can only be used for a single provider");
+            }
+            Map<SimpleObservationProvider<T>, String> providers =
+                    new LinkedHashMap<SimpleObservationProvider<T>, String>();
+            for (String observationOf : observationOfs) {
+                providers.put(new SimpleObservationProvider<T>(), observationOf);
+            }
+            List<SimpleObservationProvider<T>> result = new ArrayList<SimpleObservationProvider<T>>(providers.keySet());
+            List<ServiceRegistration<?>> registrations = helper.registerAll(providers);
+            for (int ix = 0; ix < result.size(); ix++) {
+                result.get(ix).registration = registrations.get(ix);
+            }
+            return result;
+        }
     }
 
     ServiceRegistration<?> registration;
@@ -0,0 +1,94 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The set of consumers of a provider. Adding and removing a consumer takes constant time (a removed consumer is
+ * replaced by the last one), while {@link #snapshot()} gives an immutable list of the consumers that can be iterated
+ * without locking. The snapshot is only copied again on the first call after the set has changed, so a burst of
+ * subscriptions between two publications costs a single copy.
+ *
+ * @param <E>
+ *            The type of the consumers
+ */
+final class SubscriberRegistry<E> {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Guarded by this
+    private final Map<E, Integer> indexes = new HashMap<E, Integer>();
+    private Object[] members = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * The current snapshot, or <code>null</code> when the set has changed since it was made.
+     */
+    private volatile List<E> snapshot = Collections.emptyList();
+
+    /**
+     * @param member
+     *            The member that should be added.
+     * @return <code>true</code> when it has been added, <code>false</code> when it was already a member.
+     */
+    synchronized boolean add(E member) {
+        if (indexes.containsKey(member)) {
+            return false;
+        }
+        if (size == members.length) {
+            members = Arrays.copyOf(members, size * 2);
+        }
+        indexes.put(member, size);
+        members[size++] = member;
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * @param member
+     *            The member that should be removed.
+     * @return <code>true</code> when it has been removed, <code>false</code> when it was not a member.
+     */
+    synchronized boolean remove(E member) {
+        Integer index = indexes.remove(member);
+        if (index == null) {
+            return false;
+        }
+        size--;
+        if (index != size) {
+            @SuppressWarnings("unchecked")
+            E last = (E) members[size];
+            members[index] = last;
+            indexes.put(last, index);
+        }
+        members[size] = null;
+        snapshot = null;
+        return true;
+    }
+
+    /**
+     * @return The number of members.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return An immutable list of the current members, in no particular order.
+     */
+    List<E> snapshot() {
+        List<E> result = snapshot;
+        return result != null ? result : createSnapshot();
+    }
+
+    private synchronized List<E> createSnapshot() {
+        if (snapshot == null) {
+            @SuppressWarnings("unchecked")
+            List<E> copy = (List<E>) Arrays.asList(Arrays.copyOf(members, size));
+            snapshot = Collections.unmodifiableList(copy);
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,457 @@
+package org.flexiblepower.observation.ext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.measure.ConversionCache;
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.converter.UnitConverter;
+import javax.measure.quantity.Energy;
+import javax.measure.quantity.Quantity;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.flexiblepower.observation.DoubleObservation;
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+
+/**
+ * A {@link WindowAggregator} is a stage between an {@link ObservationProvider} of measurements and the consumers that
+ * only need a summary of them, e.g. per minute or per 15 minutes. It is subscribed as an {@link ObservationConsumer}
+ * to the source and publishes an {@link Aggregate} (the minimum, maximum, mean and last value, and the energy when the
+ * measurements are a power) for each window. E.g.:
+ *
+ * <pre>
+ * WindowAggregator&lt;Power&gt; perMinute = WindowAggregator.tumbling(SI.WATT, 60000);
+ * meter.subscribe(perMinute);
+ * perMinute.subscribe(dashboard);
+ * </pre>
+ *
+ * The windows are aligned to multiples of the hop size since the epoch and are published when the first measurement
+ * after the window arrives (or when {@link #advanceTo(long)} is called), with the end of the window as the time of the
+ * observation. Windows without measurements are not published. Tumbling windows follow each other directly, sliding
+ * windows overlap: a window of 15 minutes that hops every minute.
+ *
+ * Each measurement is processed in (amortized) constant time: the sum and the energy are kept up to date when
+ * measurements enter and leave the window, and the minimum and maximum are kept in monotonic queues. The measurements
+ * of the current window are stored in primitive arrays, which only grow when the window holds more measurements than
+ * ever before, and the units are converted with a {@link ConversionCache}. So nothing is allocated for a measurement,
+ * only for each published window. Measurements that are older than the previous measurement are ignored.
+ *
+ * The measurements may be delivered from several threads. The aggregates are published while holding the lock of the
+ * aggregator, so the windows are always published in order.
+ *
+ * The energy is the integral of the measurements over the window, where each measurement holds until the next one.
+ *
+ * @param <Q>
+ *            The quantity of the measurements.
+ */
+public class WindowAggregator<Q extends Quantity> extends AbstractObservationProvider<WindowAggregator.Aggregate<Q>>
+                                                implements ObservationConsumer<Measurable<Q>> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final double MILLIS_PER_SECOND = 1000;
+
+    /**
+     * The summary of the measurements in a single window, which is the value of the observations that a
+     * {@link WindowAggregator} publishes.
+     *
+     * @param <Q>
+     *            The quantity of the measurements.
+     */
+    public static final class Aggregate<Q extends Quantity> {
+        private final Unit<Q> unit;
+        private final int count;
+        private final double minimum;
+        private final double maximum;
+        private final double mean;
+        private final double last;
+        private final Measure<Double, Energy> energy;
+
+        Aggregate(Unit<Q> unit,
+                  int count,
+                  double minimum,
+                  double maximum,
+                  double mean,
+                  double last,
+                  Measure<Double, Energy> energy) {
+            this.unit = unit;
+            this.count = count;
+            this.minimum = minimum;
+            this.maximum = maximum;
+            this.mean = mean;
+            this.last = last;
+            this.energy = energy;
+        }
+
+        /**
+         * @return The number of measurements in the window.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return The lowest measurement in the window.
+         */
+        public Measure<Double, Q> getMinimum() {
+            return Measure.valueOf(minimum, unit);
+        }
+
+        /**
+         * @return The highest measurement in the window.
+         */
+        public Measure<Double, Q> getMaximum() {
+            return Measure.valueOf(maximum, unit);
+        }
+
+        /**
+         * @return The average of the measurements in the window (each measurement counts once, regardless of the time
+         *         between the measurements).
+         */
+        public Measure<Double, Q> getMean() {
+            return Measure.valueOf(mean, unit);
+        }
+
+        /**
+         * @return The newest measurement in the window.
+         */
+        public Measure<Double, Q> getLast() {
+            return Measure.valueOf(last, unit);
+        }
+
+        /**
+         * @return The energy over the window, or <code>null</code> when the measurements are not a power.
+         */
+        public Measure<Double, Energy> getEnergy() {
+            return energy;
+        }
+
+        @Override
+        public String toString() {
+            return "Aggregate [count=" + count
+                   + ", minimum="
+                   + minimum
+                   + ", maximum="
+                   + maximum
+                   + ", mean="
+                   + mean
+                   + ", last="
+                   + last
+                   + ", energy="
+                   + energy
+                   + ", unit="
+                   + unit
+                   + "]";
+        }
+    }
+
+    /**
+     * Creates an aggregator for windows that follow each other directly.
+     *
+     * @param unit
+     *            The unit in which the aggregates are expressed.
+     * @param windowMillis
+     *            The length of each window in milliseconds.
+     * @param <Q>
+     *            The quantity of the measurements.
+     * @return The new aggregator, which still has to be subscribed to a source.
+     */
+    public static <Q extends Quantity> WindowAggregator<Q> tumbling(Unit<Q> unit, long windowMillis) {
+        return new WindowAggregator<Q>(unit, windowMillis, windowMillis);
+    }
+
+    /**
+     * Creates an aggregator for overlapping windows.
+     *
+     * @param unit
+     *            The unit in which the aggregates are expressed.
+     * @param windowMillis
+     *            The length of each window in milliseconds.
+     * @param hopMillis
+     *            The time between the ends of two windows in milliseconds.
+     * @param <Q>
+     *            The quantity of the measurements.
+     * @return The new aggregator, which still has to be subscribed to a source.
+     */
+    public static <Q extends Quantity> WindowAggregator<Q> sliding(Unit<Q> unit, long windowMillis, long hopMillis) {
+        return new WindowAggregator<Q>(unit, windowMillis, hopMillis);
+    }
+
+    private final Unit<Q> unit;
+    private final ConversionCache<Q> conversions;
+    private final long windowMillis;
+    private final long hopMillis;
+    /**
+     * Converts the measurements to watts, or <code>null</code> when the measurements are not a power.
+     */
+    private final UnitConverter toWatt;
+
+    // The measurements in the window, by sequence number (index = sequence & mask)
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    /**
+     * The integral from each measurement until the next one, which is known once the next one has arrived.
+     */
+    private double[] spans = new double[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private long head;
+    private long tail;
+
+    // Sequence numbers of the candidates for the minimum and maximum, with increasing and decreasing values
+    private final SequenceQueue minimumCandidates = new SequenceQueue();
+    private final SequenceQueue maximumCandidates = new SequenceQueue();
+
+    private double sum;
+    private double integral;
+    private boolean hasEvicted;
+    private double lastEvicted;
+    private long nextEnd = Long.MIN_VALUE;
+
+    /**
+     * Creates a new aggregator.
+     *
+     * @param unit
+     *            The unit in which the aggregates are expressed.
+     * @param windowMillis
+     *            The length of each window in milliseconds.
+     * @param hopMillis
+     *            The time between the ends of two windows in milliseconds, which is the same as the windowMillis for
+     *            tumbling windows.
+     * @throws IllegalArgumentException
+     *             When the windowMillis or hopMillis is not positive, or the hopMillis is larger than the windowMillis.
+     */
+    public WindowAggregator(Unit<Q> unit, long windowMillis, long hopMillis) {
+        if (windowMillis <= 0 || hopMillis <= 0 || hopMillis > windowMillis) {
+            throw new IllegalArgumentException("Invalid window of " + windowMillis + "ms with hops of " + hopMillis
+                                               + "ms");
+        }
+        this.unit = unit;
+        conversions = new ConversionCache<Q>(unit);
+        this.windowMillis = windowMillis;
+        this.hopMillis = hopMillis;
+        toWatt = unit.isCompatible(SI.WATT) ? unit.getConverterTo(SI.WATT) : null;
+    }
+
+    /**
+     * @return The unit in which the aggregates are expressed.
+     */
+    public Unit<Q> getUnit() {
+        return unit;
+    }
+
+    @Override
+    public void consume(ObservationProvider<? extends Measurable<Q>> source,
+                        Observation<? extends Measurable<Q>> observation) {
+        synchronized (this) {
+            long time = observation.getObservedAtMillis();
+            if (head < tail && time < times[index(tail - 1)]) {
+                return;
+            }
+            double value;
+            if (observation instanceof DoubleObservation) {
+                DoubleObservation<?> scalar = (DoubleObservation<?>) observation;
+                @SuppressWarnings("unchecked")
+                Unit<Q> sourceUnit = (Unit<Q>) scalar.getUnit();
+                value = conversions.convert(scalar.doubleValue(), sourceUnit);
+            } else {
+                value = conversions.convert(observation.getValue());
+            }
+            List<Observation<Aggregate<Q>>> finished = closeWindows(time);
+            add(time, value);
+            publishAll(finished);
+        }
+    }
+
+    /**
+     * Publishes the windows that end at or before the given time. Use this to get the aggregates when no more
+     * measurements arrive, e.g. from a timer.
+     *
+     * @param millis
+     *            The current time in milliseconds since the epoch.
+     */
+    public void advanceTo(long millis) {
+        synchronized (this) {
+            publishAll(closeWindows(millis));
+        }
+    }
+
+    /**
+     * Publishes the finished windows. Must be called while holding the lock, so that the windows are published in
+     * order when several threads deliver measurements or advance the time.
+     */
+    private void publishAll(List<Observation<Aggregate<Q>>> finished) {
+        if (finished != null) {
+            for (Observation<Aggregate<Q>> observation : finished) {
+                publish(observation);
+            }
+        }
+    }
+
+    /**
+     * Creates the aggregates of all the windows that end at or before the given time.
+     *
+     * @return The aggregates, or <code>null</code> when there are none (which is the common case).
+     */
+    private List<Observation<Aggregate<Q>>> closeWindows(long time) {
+        if (nextEnd == Long.MIN_VALUE) {
+            nextEnd = alignedEndAfter(time);
+            return null;
+        }
+
+        List<Observation<Aggregate<Q>>> result = null;
+        while (time >= nextEnd) {
+            evictBefore(nextEnd - windowMillis);
+            if (head == tail) {
+                // Nothing left, skip the empty windows
+                nextEnd = alignedEndAfter(time);
+                break;
+            }
+            if (result == null) {
+                result = new ArrayList<Observation<Aggregate<Q>>>(1);
+            }
+            result.add(Observation.create(nextEnd, aggregate(nextEnd)));
+            nextEnd += hopMillis;
+        }
+        return result;
+    }
+
+    private long alignedEndAfter(long time) {
+        long start = time - (time % hopMillis + hopMillis) % hopMillis;
+        return start + hopMillis;
+    }
+
+    private Aggregate<Q> aggregate(long end) {
+        int count = (int) (tail - head);
+        double last = values[index(tail - 1)];
+        Measure<Double, Energy> energy = null;
+        if (toWatt != null) {
+            long start = end - windowMillis;
+            double total = integral + last * (end - times[index(tail - 1)]);
+            if (hasEvicted) {
+                total += lastEvicted * (times[index(head)] - start);
+            }
+            energy = Measure.valueOf(toWatt.convert(total) / MILLIS_PER_SECOND, SI.JOULE);
+        }
+        return new Aggregate<Q>(unit,
+                                count,
+                                values[index(minimumCandidates.first())],
+                                values[index(maximumCandidates.first())],
+                                sum / count,
+                                last,
+                                energy);
+    }
+
+    private void add(long time, double value) {
+        if (tail - head == times.length) {
+            grow();
+        }
+        if (head < tail) {
+            int previous = index(tail - 1);
+            spans[previous] = values[previous] * (time - times[previous]);
+            integral += spans[previous];
+        }
+        int index = index(tail);
+        times[index] = time;
+        values[index] = value;
+        spans[index] = 0;
+        sum += value;
+
+        while (!minimumCandidates.isEmpty() && values[index(minimumCandidates.last())] >= value) {
+            minimumCandidates.removeLast();
+        }
+        minimumCandidates.add(tail);
+        while (!maximumCandidates.isEmpty() && values[index(maximumCandidates.last())] <= value) {
+            maximumCandidates.removeLast();
+        }
+        maximumCandidates.add(tail);
+        tail++;
+    }
+
+    private void evictBefore(long start) {
+        while (head < tail && times[index(head)] < start) {
+            int index = index(head);
+            sum -= values[index];
+            integral -= spans[index];
+            hasEvicted = true;
+            lastEvicted = values[index];
+            if (minimumCandidates.first() == head) {
+                minimumCandidates.removeFirst();
+            }
+            if (maximumCandidates.first() == head) {
+                maximumCandidates.removeFirst();
+            }
+            head++;
+        }
+        if (head == tail) {
+            // Start again from exactly zero, so rounding errors do not accumulate
+            sum = 0;
+            integral = 0;
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mask;
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        long[] newTimes = new long[capacity];
+        double[] newValues = new double[capacity];
+        double[] newSpans = new double[capacity];
+        int newMask = capacity - 1;
+        for (long sequence = head; sequence < tail; sequence++) {
+            newTimes[(int) sequence & newMask] = times[index(sequence)];
+            newValues[(int) sequence & newMask] = values[index(sequence)];
+            newSpans[(int) sequence & newMask] = spans[index(sequence)];
+        }
+        times = newTimes;
+        values = newValues;
+        spans = newSpans;
+        mask = newMask;
+    }
+
+    /**
+     * A double-ended queue of sequence numbers in a primitive ring buffer.
+     */
+    private static final class SequenceQueue {
+        private long[] elements = new long[INITIAL_CAPACITY];
+        private int first;
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return elements[first];
+        }
+
+        long last() {
+            return elements[(first + size - 1) & (elements.length - 1)];
+        }
+
+        void add(long sequence) {
+            if (size == elements.length) {
+                long[] newElements = new long[elements.length * 2];
+                for (int ix = 0; ix < size; ix++) {
+                    newElements[ix] = elements[(first + ix) & (elements.length - 1)];
+                }
+                elements = newElements;
+                first = 0;
+            }
+            elements[(first + size) & (elements.length - 1)] = sequence;
+            size++;
+        }
+
+        void removeFirst() {
+            first = (first + 1) & (elements.length - 1);
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}
@@ -2,7 +2,7 @@
  * The extended observation package contains some helper implementations to make implementing an ObservationProvider
  * much easier.
  */
-@Version("2.1.0.${qualifier}")
+@Version("2.2.0.${qualifier}")
 package org.flexiblepower.observation.ext;
 
 import aQute.bnd.annotation.Version;
@@ -2,7 +2,7 @@
  * The observation package contains all the interfaces and datatypes for producing and consuming
  * {@link org.flexiblepower.observation.Observation}s.
  */
-@Version("2.0.0.${qualifier}")
+@Version("2.1.0.${qualifier}")
 package org.flexiblepower.observation;
 
 import aQute.bnd.annotation.Version;
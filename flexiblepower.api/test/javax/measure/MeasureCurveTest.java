@@ -0,0 +1,85 @@
+package javax.measure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.measure.quantity.MoneyFlow;
+import javax.measure.quantity.Power;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.junit.Test;
+
+public class MeasureCurveTest {
+    private static final Unit<MoneyFlow> EUR_PER_HOUR = NonSI.EUR_PER_HOUR;
+
+    @Test
+    public void testEvaluation() {
+        MeasureCurve<MoneyFlow, Power> curve = MeasureCurve.valueOf(new double[] { 0, 10, 20 },
+                                                                    new double[] { 2000, 2000, 0 },
+                                                                    EUR_PER_HOUR,
+                                                                    SI.WATT);
+        assertEquals(2000, curve.valueAt(-5), 0);
+        assertEquals(2000, curve.valueAt(10), 0);
+        assertEquals(1000, curve.valueAt(15), 1e-9);
+        assertEquals(0, curve.valueAt(25), 0);
+        assertEquals(1.0, curve.valueAt(Measure.valueOf(15.0, EUR_PER_HOUR)).doubleValue(SI.KILO(SI.WATT)), 1e-9);
+
+        assertEquals(15, curve.solve(1000), 1e-9);
+        assertEquals(0, curve.solve(2000), 0);
+        assertEquals(20, curve.solve(0), 0);
+        assertTrue(Double.isNaN(curve.solve(3000)));
+    }
+
+    @Test
+    public void testAggregationAndEquilibrium() {
+        MeasureCurve<MoneyFlow, Power> demand = MeasureCurve.valueOf(new double[] { 0, 10 },
+                                                                     new double[] { 1000, 0 },
+                                                                     EUR_PER_HOUR,
+                                                                     SI.WATT);
+        MeasureCurve<MoneyFlow, Power> supply = MeasureCurve.valueOf(new double[] { 5, 15 },
+                                                                     new double[] { -1, -2 },
+                                                                     EUR_PER_HOUR,
+                                                                     SI.KILO(SI.WATT));
+        MeasureCurve<MoneyFlow, Power> sum = demand.add(supply);
+        assertEquals(4, sum.size());
+        assertEquals(0, sum.valueAt(0), 1e-9);
+        assertEquals(-500, sum.valueAt(5), 1e-9);
+        assertEquals(0, sum.solve(0), 1e-9);
+        assertEquals(5, demand.intersect(MeasureCurve.constant(500, EUR_PER_HOUR, SI.WATT)), 1e-9);
+    }
+
+    @Test
+    public void testParallelAggregation() {
+        Random random = new Random(3);
+        List<MeasureCurve<MoneyFlow, Power>> curves = new ArrayList<MeasureCurve<MoneyFlow, Power>>();
+        for (int i = 0; i < 1000; i++) {
+            double start = random.nextInt(50);
+            curves.add(MeasureCurve.valueOf(new double[] { start, start + 1 + random.nextInt(50) },
+                                            new double[] { random.nextInt(1000), 0 },
+                                            EUR_PER_HOUR,
+                                            SI.WATT));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MeasureCurve<MoneyFlow, Power> parallel = MeasureCurve.aggregate(curves, pool);
+            MeasureCurve<MoneyFlow, Power> sequential = curves.get(0);
+            for (MeasureCurve<MoneyFlow, Power> curve : curves.subList(1, curves.size())) {
+                sequential = sequential.add(curve);
+            }
+            for (double x : Arrays.asList(-1.0, 0.0, 12.5, 33.3, 99.0, 120.0)) {
+                assertEquals(sequential.valueAt(x), parallel.valueAt(x), 1e-6);
+            }
+            assertEquals(parallel, MeasureCurve.aggregate(curves, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package javax.measure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.junit.Test;
+
+public class MeasureKeysTest {
+    private static List<Measurable<Power>> randomPowers(int count) {
+        Random random = new Random(42);
+        List<Measurable<Power>> result = new ArrayList<Measurable<Power>>();
+        for (int i = 0; i < count; i++) {
+            double value = random.nextInt(100) - 50;
+            if (random.nextBoolean()) {
+                result.add(Measure.valueOf(value, SI.WATT));
+            } else {
+                result.add(Measure.valueOf(value / 1000, SI.KILO(SI.WATT)));
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testSortMatchesCompareTo() {
+        List<Measurable<Power>> expected = randomPowers(1000);
+        List<Measurable<Power>> actual = new ArrayList<Measurable<Power>>(expected);
+        Collections.sort(expected);
+        MeasureKeys.sort(actual, SI.WATT);
+        for (int i = 0; i < expected.size(); i++) {
+            // Identity check, because the sort must be stable as well
+            assertTrue(expected.get(i) == actual.get(i));
+        }
+    }
+
+    @Test
+    public void testOrderIsStable() {
+        double[] keys = { 3, -0.0, 0.0, Double.NaN, 1, 3, Double.NEGATIVE_INFINITY };
+        assertArrayEquals(new int[] { 6, 1, 2, 4, 0, 5, 3 }, MeasureKeys.order(keys));
+    }
+
+    @Test
+    public void testTopK() {
+        List<Measurable<Power>> powers = randomPowers(500);
+        List<Measurable<Power>> sorted = new ArrayList<Measurable<Power>>(powers);
+        MeasureKeys.sort(sorted, SI.WATT);
+
+        List<Measurable<Power>> smallest = MeasureKeys.smallest(powers, 10, SI.WATT);
+        assertEquals(10, smallest.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, smallest.get(i).compareTo(sorted.get(i)));
+        }
+
+        List<Measurable<Power>> largest = MeasureKeys.largest(powers, 10, SI.WATT);
+        assertEquals(10, largest.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, largest.get(i).compareTo(sorted.get(sorted.size() - 1 - i)));
+        }
+
+        assertEquals(3, MeasureKeys.largest(powers.subList(0, 3), 10, SI.WATT).size());
+    }
+
+    @Test
+    public void testBinarySearch() {
+        double[] keys = MeasureKeys.keys(Arrays.asList(Measure.valueOf(1, SI.KILO(SI.WATT)),
+                                                       Measure.valueOf(2000, SI.WATT)),
+                                         SI.WATT);
+        assertArrayEquals(new double[] { 1000, 2000 }, keys, 1e-9);
+        assertEquals(1, MeasureKeys.binarySearch(keys, Measure.valueOf(2.0, SI.KILO(SI.WATT)), SI.WATT));
+    }
+}
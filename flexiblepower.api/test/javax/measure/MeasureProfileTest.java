@@ -0,0 +1,172 @@
+package javax.measure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.measure.quantity.Energy;
+import javax.measure.quantity.Power;
+import javax.measure.unit.NonSI;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.junit.Test;
+
+public class MeasureProfileTest {
+    private static final long QUARTER = 15 * 60 * 1000;
+    private static final long START = 1000000;
+    private static final Unit<Power> KW = SI.KILO(SI.WATT);
+
+    private static MeasureProfile<Power> power(double... values) {
+        return MeasureProfile.valueOf(START, QUARTER, values, KW);
+    }
+
+    @Test
+    public void testAccess() {
+        double[] values = { 1, 2, 3 };
+        MeasureProfile<Power> profile = power(values);
+        values[0] = 10;
+        assertEquals(1, profile.get(0), 0);
+        assertEquals(3, profile.size());
+        assertEquals(START + 3 * QUARTER, profile.getEndMillis());
+        assertEquals(2, profile.getMeasure(1).doubleValue(KW), 0);
+
+        assertEquals(0, profile.indexOf(START));
+        assertEquals(1, profile.indexOf(START + QUARTER));
+        assertEquals(-1, profile.indexOf(START - 1));
+        assertEquals(-1, profile.indexOf(profile.getEndMillis()));
+        assertEquals(3, profile.valueAt(START + 2 * QUARTER + 5), 0);
+        assertTrue(Double.isNaN(profile.valueAt(START - 1)));
+
+        try {
+            profile.get(3);
+            fail("Expected the index to be out of range");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        MeasureProfile<Power> empty = power();
+        assertEquals(0, empty.size());
+        assertEquals(START, empty.getEndMillis());
+        assertEquals(-1, empty.indexOf(START));
+        assertEquals(0, empty.sum().doubleValue(KW), 0);
+        assertEquals(0, empty.resample(2 * QUARTER).size());
+        assertEquals(0, empty.between(0, Long.MAX_VALUE).size());
+        assertEquals(0, MeasureProfile.integrate(empty, NonSI.KWH).size());
+        assertEquals(empty, empty.add(empty));
+    }
+
+    @Test
+    public void testSubProfile() {
+        MeasureProfile<Power> profile = power(1, 2, 3, 4);
+        MeasureProfile<Power> sub = profile.subProfile(1, 3);
+        assertArrayEquals(new double[] { 2, 3 }, sub.getValues(), 0);
+        assertEquals(START + QUARTER, sub.getStartMillis());
+        assertEquals(3, sub.valueAt(START + 2 * QUARTER), 0);
+        assertArrayEquals(new double[] { 3 }, sub.subProfile(1, 2).getValues(), 0);
+        assertEquals(0, profile.subProfile(4, 4).size());
+        assertEquals(power(2, 3).shift(QUARTER), sub);
+
+        try {
+            profile.subProfile(2, 5);
+            fail("Expected the range to be out of bounds");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            profile.subProfile(3, 2);
+            fail("Expected the range to be out of bounds");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    @Test
+    public void testBetween() {
+        MeasureProfile<Power> profile = power(1, 2, 3, 4);
+        // Slots that partly overlap the period are included
+        assertArrayEquals(new double[] { 2, 3 }, profile.between(START + QUARTER + 1, START + 3 * QUARTER - 1)
+                                                        .getValues(), 0);
+        assertArrayEquals(new double[] { 2, 3 }, profile.between(START + QUARTER, START + 3 * QUARTER).getValues(), 0);
+        // Periods that partly fall outside of the profile are clipped
+        assertArrayEquals(new double[] { 1, 2 }, profile.between(0, START + 2 * QUARTER).getValues(), 0);
+        assertArrayEquals(new double[] { 4 }, profile.between(START + 3 * QUARTER, Long.MAX_VALUE).getValues(), 0);
+        assertEquals(4, profile.between(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(0, profile.between(0, START).size());
+        assertEquals(0, profile.between(profile.getEndMillis(), Long.MAX_VALUE).size());
+        assertEquals(0, profile.between(START + QUARTER, START + QUARTER).size());
+    }
+
+    @Test
+    public void testResample() {
+        MeasureProfile<Power> profile = power(1, 3, 5, 7);
+        assertSame(profile, profile.resample(QUARTER));
+
+        MeasureProfile<Power> half = profile.resample(2 * QUARTER);
+        assertArrayEquals(new double[] { 2, 6 }, half.getValues(), 1e-12);
+        assertEquals(START, half.getStartMillis());
+        assertEquals(2 * QUARTER, half.getSlotMillis());
+
+        // The last slot only averages the part that it overlaps
+        assertArrayEquals(new double[] { 3, 7 }, profile.resample(3 * QUARTER).getValues(), 1e-12);
+        // Slots that do not line up are weighted by their overlap
+        assertArrayEquals(new double[] { 2.5 / 1.5, 6.5 / 1.5, 7 },
+                          profile.resample(QUARTER * 3 / 2).getValues(),
+                          1e-12);
+
+        assertArrayEquals(new double[] { 1, 1, 3, 3 }, profile.subProfile(0, 2).resample(QUARTER / 2).getValues(), 0);
+        assertArrayEquals(new double[] { 4 }, profile.subProfile(1, 3).resample(10 * QUARTER).getValues(), 1e-12);
+        assertArrayEquals(half.getValues(), profile.resample(Measure.valueOf(30, NonSI.MINUTE)).getValues(), 1e-12);
+
+        try {
+            profile.resample(0);
+            fail("Expected the slot duration to be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testIntegrate() {
+        MeasureProfile<Energy> energy = MeasureProfile.integrate(power(4, 2), NonSI.KWH);
+        assertArrayEquals(new double[] { 1, 0.5 }, energy.getValues(), 1e-12);
+        assertEquals(NonSI.KWH, energy.getUnit());
+        assertEquals(1.5, energy.sum().doubleValue(NonSI.KWH), 1e-12);
+        assertEquals(5.4e6, energy.sum().doubleValue(SI.JOULE), 1e-3);
+    }
+
+    @Test
+    public void testCombine() {
+        MeasureProfile<Power> kw = power(1, 2, 3);
+        MeasureProfile<Power> w = MeasureProfile.valueOf(START, QUARTER, new double[] { 500, 500, 1000 }, SI.WATT);
+        assertArrayEquals(new double[] { 1.5, 2.5, 4 }, kw.add(w).getValues(), 1e-12);
+        assertEquals(KW, kw.add(w).getUnit());
+        assertArrayEquals(new double[] { 0.5, 1.5, 2 }, kw.subtract(w).getValues(), 1e-12);
+        assertArrayEquals(new double[] { 2, 4, 6 }, kw.scale(2).getValues(), 0);
+        assertArrayEquals(new double[] { 1000, 2000, 3000 }, kw.to(SI.WATT).getValues(), 1e-9);
+        assertSame(kw, kw.to(KW));
+
+        assertMisaligned(kw, MeasureProfile.valueOf(START, QUARTER * 2, new double[] { 1, 2, 3 }, KW));
+        assertMisaligned(kw, kw.shift(1));
+        assertMisaligned(kw, kw.subProfile(0, 2));
+    }
+
+    private static void assertMisaligned(MeasureProfile<Power> profile, MeasureProfile<Power> other) {
+        try {
+            profile.add(other);
+            fail("Expected the profiles to be misaligned");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        MeasureProfile<Power> profile = power(1, 2, 3, 4);
+        assertEquals(power(2, 3).shift(QUARTER), profile.subProfile(1, 3));
+        assertEquals(power(2, 3).shift(QUARTER).hashCode(), profile.subProfile(1, 3).hashCode());
+        assertNotEquals(profile, profile.shift(1));
+        assertNotEquals(profile, profile.to(SI.WATT));
+    }
+}
@@ -0,0 +1,68 @@
+package javax.measure;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.junit.Test;
+
+public class MeasureReductionsTest {
+    private static List<Measurable<Power>> randomPowers(int count) {
+        Random random = new Random(7);
+        List<Measurable<Power>> result = new ArrayList<Measurable<Power>>();
+        for (int i = 0; i < count; i++) {
+            double value = random.nextDouble() * 1000;
+            result.add(random.nextBoolean() ? Measure.valueOf(value, SI.WATT)
+                                            : Measure.valueOf(value / 1000, SI.KILO(SI.WATT)));
+        }
+        return result;
+    }
+
+    @Test
+    public void testSummary() {
+        double[] values = { 1, 2, 3, 4 };
+        MeasureReductions.Summary<Power> summary = MeasureReductions.summarize(values, SI.WATT);
+        assertEquals(4, summary.getCount());
+        assertEquals(10, summary.getSum(), 0);
+        assertEquals(2.5, summary.getMean(), 0);
+        assertEquals(1, summary.getMin(), 0);
+        assertEquals(4, summary.getMax(), 0);
+        assertEquals(1.25, summary.getVariance(), 1e-12);
+        assertEquals(2.5, MeasureReductions.quantiles(values, null, 0.5)[0], 1e-12);
+        assertEquals(1.75, MeasureReductions.quantiles(values, null, 0.25)[0], 1e-12);
+    }
+
+    @Test
+    public void testDeterministicAcrossPools() {
+        List<Measurable<Power>> powers = randomPowers(100000);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool multi = new ForkJoinPool(4);
+        try {
+            MeasureReductions.Summary<Power> a = MeasureReductions.summarize(powers, SI.WATT, single);
+            MeasureReductions.Summary<Power> b = MeasureReductions.summarize(powers, SI.WATT, multi);
+            assertEquals(Double.doubleToLongBits(a.getSum()), Double.doubleToLongBits(b.getSum()));
+            assertEquals(Double.doubleToLongBits(a.getVariance()), Double.doubleToLongBits(b.getVariance()));
+
+            double expected = 0;
+            for (Measurable<Power> power : powers) {
+                expected += power.doubleValue(SI.WATT);
+            }
+            assertEquals(expected, a.getSum(), 1e-6);
+
+            double[] q1 = MeasureReductions.quantiles(powers, SI.WATT, single, 0, 0.5, 1);
+            double[] q2 = MeasureReductions.quantiles(powers, SI.WATT, multi, 0, 0.5, 1);
+            assertEquals(a.getMin(), q1[0], 0);
+            assertEquals(a.getMax(), q1[2], 0);
+            assertEquals(q1[1], q2[1], 0);
+        } finally {
+            single.shutdown();
+            multi.shutdown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package javax.measure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import javax.measure.quantity.Length;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.junit.Test;
+
+public class VectorMeasureTest {
+    /**
+     * A subclass as it could be written outside of this package, which only implements the original abstract methods.
+     */
+    static class Length2D extends VectorMeasure<Length> {
+        private static final long serialVersionUID = 1L;
+
+        private final double x, y;
+        private final Unit<Length> unit;
+
+        Length2D(double x, double y, Unit<Length> unit) {
+            this.x = x;
+            this.y = y;
+            this.unit = unit;
+        }
+
+        @Override
+        public double[] getValue() {
+            return new double[] { x, y };
+        }
+
+        @Override
+        public Unit<Length> getUnit() {
+            return unit;
+        }
+
+        @Override
+        public Length2D to(Unit<Length> unit) {
+            return new Length2D(this.unit.getConverterTo(unit).convert(x),
+                                this.unit.getConverterTo(unit).convert(y),
+                                unit);
+        }
+
+        @Override
+        public double doubleValue(Unit<Length> unit) {
+            return this.unit.getConverterTo(unit).convert(Math.sqrt(x * x + y * y));
+        }
+    }
+
+    private static final double[] NONE = new double[0];
+
+    @Test
+    public void testNorm() {
+        VectorMeasure<Length> multi = VectorMeasure.valueOf(new double[] { 1, 2, 2, 4 }, SI.METRE);
+        assertEquals(5, multi.doubleValue(SI.METRE), 1e-12);
+        // The second call uses the cached norm
+        assertEquals(5, multi.doubleValue(SI.METRE), 1e-12);
+        assertEquals(500, multi.doubleValue(SI.CENTIMETRE), 1e-9);
+        assertEquals(5, VectorMeasure.valueOf(3, 4, SI.METRE).doubleValue(SI.METRE), 1e-12);
+        assertEquals(3, VectorMeasure.valueOf(1, 2, 2, SI.METRE).doubleValue(SI.METRE), 1e-12);
+    }
+
+    @Test
+    public void testArithmetic() {
+        VectorMeasure<Length> a = VectorMeasure.valueOf(1, 5, 3, SI.METRE);
+        VectorMeasure<Length> b = VectorMeasure.valueOf(200, 100, 300, SI.CENTIMETRE);
+
+        assertArrayEquals(new double[] { 3, 6, 6 }, a.add(b).getValue(), 1e-12);
+        assertSame(SI.METRE, a.add(b).getUnit());
+        assertArrayEquals(new double[] { -1, 4, 0 }, a.subtract(b).getValue(), 1e-12);
+        assertArrayEquals(new double[] { 2, 10, 6 }, a.scale(2).getValue(), 1e-12);
+        assertEquals(2 + 5 + 9, a.dot(b), 1e-12);
+        assertArrayEquals(new double[] { 1, 1, 3 }, a.min(b).getValue(), 1e-12);
+        assertArrayEquals(new double[] { 2, 5, 3 }, a.max(b).getValue(), 1e-12);
+
+        VectorMeasure<Length> multi = VectorMeasure.valueOf(new double[] { 1, 2, 3, 4 }, SI.METRE);
+        assertArrayEquals(new double[] { 2, 4, 6, 8 }, multi.add(multi).getValue(), 1e-12);
+    }
+
+    @Test
+    public void testBuffers() {
+        VectorMeasure<Length> a = VectorMeasure.valueOf(1, 5, SI.METRE);
+        VectorMeasure<Length> b = VectorMeasure.valueOf(2, 1, SI.METRE);
+        double[] buffer = new double[3];
+
+        assertSame(buffer, a.add(b, buffer));
+        assertArrayEquals(new double[] { 3, 6, 0 }, buffer, 0);
+        assertArrayEquals(new double[] { -1, 4, 0 }, a.subtract(b, buffer), 0);
+        assertArrayEquals(new double[] { 3, 15, 0 }, a.scale(3, buffer), 0);
+        assertArrayEquals(new double[] { 1, 1, 0 }, a.min(b, buffer), 0);
+        assertArrayEquals(new double[] { 2, 5, 0 }, a.max(b, buffer), 0);
+        assertArrayEquals(new double[] { 1, 5, 0 }, a.getValue(buffer), 0);
+
+        VectorMeasure<Length> multi = VectorMeasure.valueOf(new double[] { 1, 2, 3, 4 }, SI.METRE);
+        assertArrayEquals(new double[] { 1, 2, 3, 4 }, multi.getValue(new double[4]), 0);
+
+        try {
+            a.add(b, new double[1]);
+            fail("Expected the buffer to be too small");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            multi.getValue(NONE);
+            fail("Expected the buffer to be too small");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testSizeMismatch() {
+        VectorMeasure<Length> two = VectorMeasure.valueOf(1, 2, SI.METRE);
+        VectorMeasure<Length> three = VectorMeasure.valueOf(1, 2, 3, SI.METRE);
+        try {
+            two.add(three);
+            fail("Expected the sizes to differ");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            two.dot(three);
+            fail("Expected the sizes to differ");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            three.max(two, new double[3]);
+            fail("Expected the sizes to differ");
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void testSubclassDefaults() {
+        VectorMeasure<Length> custom = new Length2D(3, 4, SI.METRE);
+        assertEquals(2, custom.size());
+        assertEquals(4, custom.getComponent(1), 0);
+        try {
+            custom.getComponent(2);
+            fail("Expected the index to be out of range");
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        assertArrayEquals(new double[] { 4, 5 }, custom.add(VectorMeasure.valueOf(1, 1, SI.METRE)).getValue(), 0);
+        assertEquals(25, custom.dot(custom), 0);
+    }
+}
@@ -2,11 +2,17 @@ package org.flexiblepower.observation;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
 import org.junit.Test;
 
 public class ObservationTest {
@@ -58,8 +64,175 @@ public class ObservationTest {
         }
     }
 
+    interface Shape {
+        double getArea();
+    }
+
+    static class Square implements Shape {
+        @Override
+        public double getArea() {
+            return 4;
+        }
+
+        public double getSide() {
+            return 2;
+        }
+    }
+
+    static class Circle implements Shape {
+        @Override
+        public double getArea() {
+            return Math.PI;
+        }
+
+        public DeepValue getCenter() {
+            return new DeepValue();
+        }
+    }
+
+    static class Drawing {
+        private final Shape shape;
+
+        Drawing(Shape shape) {
+            this.shape = shape;
+        }
+
+        public Shape getShape() {
+            return shape;
+        }
+    }
+
+    enum Mode {
+        ON, OFF
+    }
+
+    static class MeterValue {
+        int calls;
+
+        public Measurable<Power> getPower() {
+            calls++;
+            return Measure.valueOf(1.5, SI.WATT);
+        }
+
+        public Mode getMode() {
+            calls++;
+            return Mode.ON;
+        }
+
+        public DeepValue getDeep() {
+            calls++;
+            return new DeepValue();
+        }
+    }
+
+    @Test
+    public void testLazyValueMap() {
+        Observation<MeterValue> observation = new Observation<MeterValue>(new Date(), new MeterValue());
+        Map<String, Object> lazy = observation.getValueMap(true);
+
+        assertEquals(1.5, lazy.get("power"));
+        assertEquals(1, observation.getValue().calls);
+        assertEquals("W", lazy.get("power.unit"));
+        assertEquals("ON", lazy.get("mode"));
+        assertEquals(2, lazy.get("deep.y"));
+        assertEquals(null, lazy.get("deep.y.unit"));
+        assertEquals(null, lazy.get("mode.unit"));
+        assertEquals(null, lazy.get("unknown"));
+        lazy.get("power");
+        assertEquals(3, observation.getValue().calls);
+
+        assertEquals(observation.getValueMap(), lazy);
+        assertEquals(7, lazy.size());
+    }
+
+    @Test
+    public void testValuePath() {
+        Observation<MeterValue> observation = new Observation<MeterValue>(new Date(), new MeterValue());
+        Map<String, Object> map = observation.getValueMap();
+
+        for (String path : new String[] { "power", "power.unit", "mode", "deep", "deep.y", "deep.z" }) {
+            assertEquals(map.get(path), observation.getValue(ValuePath.compile(MeterValue.class, path)));
+        }
+        assertEquals(null, observation.getValue(ValuePath.compile(MeterValue.class, "unknown")));
+    }
+
+    @Test
+    public void testMeasureValuePath() {
+        ValuePath value = ValuePath.compile(Measure.class, "value");
+        ValuePath unit = ValuePath.compile(Measure.class, "unit");
+        List<Observation<? extends Measure<?, Power>>> observations;
+        observations = new ArrayList<Observation<? extends Measure<?, Power>>>();
+
+        observations.add(Observation.create(0, Measure.valueOf(1.5, SI.WATT)));
+        observations.add(DoubleObservation.create(0, 1.5, SI.WATT));
+        observations.add(new LongObservation<Power>(0, 2, SI.WATT));
+        for (Observation<? extends Measure<?, Power>> observation : observations) {
+            Map<String, Object> map = observation.getValueMap();
+            assertEquals(map.get("value"), observation.getValue(value));
+            assertEquals(map.get("unit"), observation.getValue(unit));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testValuePathUnknownMember() {
+        ValuePath.compile(MeterValue.class, "deep.y.unit");
+    }
+
+    @Test
+    public void testObservedAt() {
+        Date date = new Date(1000);
+        Observation<String> observation = Observation.create(date, "a");
+        assertEquals(1000, observation.getObservedAtMillis());
+        assertEquals(date, observation.getObservedAt());
+        assertEquals(new Observation<String>(1000, "a"), observation);
+        assertEquals(new Observation<String>(1000, "a").hashCode(), observation.hashCode());
+
+        Observation<String> precise = new Observation<String>(1000, 1, "a");
+        assertEquals(false, precise.equals(observation));
+        assertEquals(-1, Observation.OBSERVED_AT_ORDER.compare(observation, precise));
+        assertEquals(1, Observation.OBSERVED_AT_ORDER.compare(Observation.create(1001, "a"), precise));
+    }
+
+    @Test
+    public void testScalarObservations() {
+        DoubleObservation<Power> power = DoubleObservation.create(1000, 1.5, SI.WATT);
+        Observation<Measure<Double, Power>> boxed = Observation.create(1000, Measure.valueOf(1.5, SI.WATT));
+        assertEquals(boxed.getValue(), power.getValue());
+        assertEquals(boxed.getValueMap(), power.getValueMap());
+        assertEquals(1500, power.doubleValue(SI.MILLI(SI.WATT)), 1e-9);
+        assertEquals(DoubleObservation.create(1000, 1.5, SI.WATT), power);
+        assertEquals(DoubleObservation.create(1000, 1.5, SI.WATT).hashCode(), power.hashCode());
+
+        LongObservation<Power> counter = new LongObservation<Power>(1000, 2, SI.WATT);
+        assertEquals(Measure.valueOf(2L, SI.WATT), counter.getValue());
+        assertEquals(2L, counter.getValue("value"));
+    }
+
+    @Test
+    public void testPolymorphicValues() {
+        Drawing square = new Drawing(new Square());
+        Drawing circle = new Drawing(new Circle());
+        for (int ix = 0; ix < 3; ix++) {
+            // The nested plan depends on the runtime class of the shape, which changes with every observation
+            Map<String, Object> map = Observation.create(ix, square).getValueMap();
+            assertEquals(3, map.size());
+            assertEquals(4.0, map.get("shape.area"));
+            assertEquals(2.0, map.get("shape.side"));
+
+            map = Observation.create(ix, circle).getValueMap();
+            assertEquals(6, map.size());
+            assertEquals(Math.PI, map.get("shape.area"));
+            assertEquals(null, map.get("shape.side"));
+            assertEquals(1, map.get("shape.center.x"));
+            assertEquals("Z", map.get("shape.center.z"));
+
+            assertEquals(0, Observation.create(ix, new Drawing(null)).getValueMap().size());
+        }
+    }
+
     @Test
     public void testDeepValues() {
+
         Observation<ParentValue> observation = new Observation<ParentValue>(new Date(), new ParentValue());
 
         Map<String, Object> map = observation.getValueMap();
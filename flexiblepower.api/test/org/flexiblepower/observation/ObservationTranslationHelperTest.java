@@ -1,10 +1,15 @@
 package org.flexiblepower.observation;
 
 import java.lang.reflect.Method;
+import java.util.Date;
 import java.util.Map;
 
+import javax.measure.Measure;
+import javax.measure.unit.SI;
+
 import junit.framework.TestCase;
 
+import org.flexiblepower.observation.ObservationTranslationHelper.Getter;
 import org.junit.Test;
 
 public class ObservationTranslationHelperTest extends TestCase {
@@ -28,6 +33,23 @@ public class ObservationTranslationHelperTest extends TestCase {
         X, Y, Z;
     }
 
+    static class TestBeanImpl implements TestBean {
+        @Override
+        public boolean isBoolean() {
+            return true;
+        }
+
+        @Override
+        public int getInteger() {
+            return 42;
+        }
+
+        @Override
+        public String getComplexNamingType() {
+            throw new IllegalStateException("Not available");
+        }
+    }
+
     @Test
     public void testGettingGetters() {
         Map<String, Method> map = ObservationTranslationHelper.getGetterMethods(TestBean.class);
@@ -37,6 +59,28 @@ public class ObservationTranslationHelperTest extends TestCase {
         assertEquals(String.class, map.get("complex_naming_type").getReturnType());
     }
 
+    @Test
+    public void testGetters() {
+        Map<String, Getter> getters = ObservationTranslationHelper.getGetters(TestBeanImpl.class);
+        assertEquals(3, getters.size());
+        assertEquals(Boolean.TRUE, getters.get("boolean").get(new TestBeanImpl()));
+        assertEquals(42, getters.get("integer").get(new TestBeanImpl()));
+        try {
+            getters.get("complex_naming_type").get(new TestBeanImpl());
+            fail("Expected the exception of the getter to be wrapped");
+        } catch (RuntimeException ex) {
+            assertEquals(IllegalStateException.class, ex.getCause().getClass());
+        }
+    }
+
+    @Test
+    public void testStaticGetters() {
+        // Unit has static getters (such as getModel()), which must be called without an object
+        Map<String, Object> map = new Observation<Object>(new Date(), Measure.valueOf(1.5, SI.WATT)).getValueMap();
+        assertEquals(1.5, map.get("value"));
+        assertEquals(SI.WATT, map.get("unit"));
+    }
+
     @Test
     public void testIsJavaBean() {
         assertTrue(ObservationTranslationHelper.isJavaBean(TestBean.class));
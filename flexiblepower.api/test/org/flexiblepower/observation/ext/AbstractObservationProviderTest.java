@@ -0,0 +1,240 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.flexiblepower.observation.BatchObservationConsumer;
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+import org.junit.Test;
+
+public class AbstractObservationProviderTest {
+    static class ManualExecutor implements Executor {
+        final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    static class Provider extends AbstractObservationProvider<Integer> {
+        Provider() {
+        }
+
+        Provider(Executor executor, int capacity, QueueFullPolicy policy) {
+            super(executor, capacity, policy);
+        }
+    }
+
+    static class Consumer implements ObservationConsumer<Integer> {
+        final List<Integer> values = new ArrayList<Integer>();
+
+        @Override
+        public void consume(ObservationProvider<? extends Integer> source, Observation<? extends Integer> observation) {
+            values.add(observation.getValue());
+        }
+    }
+
+    static class BatchConsumer extends Consumer implements BatchObservationConsumer<Integer> {
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        @Override
+        public void consumeBatch(ObservationProvider<? extends Integer> source,
+                                 List<? extends Observation<? extends Integer>> observations) {
+            batchSizes.add(observations.size());
+            for (Observation<? extends Integer> observation : observations) {
+                consume(source, observation);
+            }
+        }
+    }
+
+    private List<Integer> publish(QueueFullPolicy policy) {
+        ManualExecutor executor = new ManualExecutor();
+        Provider provider = new Provider(executor, 3, policy);
+        Consumer consumer = new Consumer();
+        provider.subscribe(consumer);
+        for (int value = 1; value <= 5; value++) {
+            provider.publish(Observation.create(value, value));
+        }
+        assertEquals(1, executor.tasks.size());
+        assertEquals(Integer.valueOf(5), provider.getLastObservation().getValue());
+        executor.runAll();
+        return consumer.values;
+    }
+
+    @Test
+    public void testQueueFullPolicies() {
+        assertEquals(Arrays.asList(3, 4, 5), publish(QueueFullPolicy.DROP_OLDEST));
+        assertEquals(Arrays.asList(1, 2, 3), publish(QueueFullPolicy.DROP_NEWEST));
+        assertEquals(Arrays.asList(4, 5), publish(QueueFullPolicy.COALESCE_TO_LATEST));
+    }
+
+    @Test
+    public void testOrderingAndUnsubscribe() {
+        ManualExecutor executor = new ManualExecutor();
+        Provider provider = new Provider(executor, 1000, QueueFullPolicy.BLOCK);
+        Consumer consumer = new Consumer();
+        Consumer other = new Consumer();
+        provider.subscribe(consumer);
+        provider.subscribe(other);
+
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int value = 0; value < 200; value++) {
+            provider.publish(Observation.create(value, value));
+            expected.add(value);
+        }
+        provider.unsubscribe(other);
+        executor.runAll();
+        assertEquals(expected, consumer.values);
+        assertEquals(0, other.values.size());
+    }
+
+    @Test
+    public void testBlockWithSecondThread() throws InterruptedException {
+        final int capacity = 2;
+        final int count = 200;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch done = new CountDownLatch(count);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Provider provider = new Provider(executor, capacity, QueueFullPolicy.BLOCK);
+            provider.subscribe(new ObservationConsumer<Integer>() {
+                @Override
+                public void consume(ObservationProvider<? extends Integer> source,
+                                    Observation<? extends Integer> observation) {
+                    if (observation.getValue() % 10 == 0) {
+                        // Slow down now and then, so the queue fills up
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    values.add(observation.getValue());
+                    done.countDown();
+                }
+            });
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int value = 0; value < count; value++) {
+                provider.publish(Observation.create(value, value));
+                expected.add(value);
+                // At most one observation is being delivered besides the ones in the queue
+                assertTrue(value + 1 - values.size() <= capacity + 1);
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(expected, values);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedExecution() {
+        final ManualExecutor executor = new ManualExecutor();
+        Executor rejectFirst = new Executor() {
+            private boolean rejected;
+
+            @Override
+            public void execute(Runnable command) {
+                if (!rejected) {
+                    rejected = true;
+                    throw new RejectedExecutionException();
+                }
+                executor.execute(command);
+            }
+        };
+        final List<Throwable> reported = new ArrayList<Throwable>();
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                reported.add(e);
+            }
+        });
+        try {
+            Provider provider = new Provider(rejectFirst, 10, QueueFullPolicy.BLOCK);
+            Consumer first = new Consumer();
+            Consumer second = new Consumer();
+            provider.subscribe(first);
+            provider.subscribe(second);
+
+            // One of the queues is rejected, but does not keep the other one from getting the observation
+            provider.publish(Observation.create(1, 1));
+            assertEquals(1, executor.tasks.size());
+            assertEquals(1, reported.size());
+            executor.runAll();
+            assertEquals(1, first.values.size() + second.values.size());
+
+            // The rejected queue kept its observation and tries again
+            provider.publish(Observation.create(2, 2));
+            executor.runAll();
+            assertEquals(Arrays.asList(1, 2), first.values);
+            assertEquals(Arrays.asList(1, 2), second.values);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+    }
+
+    @Test
+    public void testSynchronous() {
+
+        Provider provider = new Provider();
+        Consumer consumer = new Consumer();
+        provider.subscribe(consumer);
+        provider.publish(Observation.create(0, 7));
+        assertEquals(Arrays.asList(7), consumer.values);
+    }
+
+    @Test
+    public void testBatches() {
+        List<Observation<Integer>> observations = new ArrayList<Observation<Integer>>();
+        for (int value = 1; value <= 3; value++) {
+            observations.add(Observation.create(value, value));
+        }
+
+        Provider provider = new Provider();
+        Consumer consumer = new Consumer();
+        BatchConsumer batchConsumer = new BatchConsumer();
+        provider.subscribe(consumer);
+        provider.subscribe(batchConsumer);
+        provider.publish(observations);
+        assertEquals(Arrays.asList(1, 2, 3), consumer.values);
+        assertEquals(Arrays.asList(1, 2, 3), batchConsumer.values);
+        assertEquals(Arrays.asList(3), batchConsumer.batchSizes);
+        assertEquals(Integer.valueOf(3), provider.getLastObservation().getValue());
+
+        ManualExecutor executor = new ManualExecutor();
+        provider = new Provider(executor, 10, QueueFullPolicy.BLOCK);
+        batchConsumer = new BatchConsumer();
+        provider.subscribe(batchConsumer);
+        provider.publish(observations);
+        provider.publish(Observation.create(4, 4));
+        executor.runAll();
+        assertEquals(Arrays.asList(1, 2, 3, 4), batchConsumer.values);
+        assertEquals(Arrays.asList(4), batchConsumer.batchSizes);
+    }
+}
@@ -0,0 +1,237 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.flexiblepower.observation.Observation;
+import org.junit.Test;
+
+public class ColumnarBatchExporterTest {
+    public enum Mode {
+        ON, OFF
+    }
+
+    public static class Position {
+        private final int x;
+
+        public Position(int x) {
+            this.x = x;
+        }
+
+        public int getX() {
+            return x;
+        }
+    }
+
+    public static class State {
+        private final Double power;
+        private final Mode mode;
+        private final boolean active;
+        private final String name;
+
+        public State(Double power, Mode mode, boolean active, String name) {
+            this.power = power;
+            this.mode = mode;
+            this.active = active;
+            this.name = name;
+        }
+
+        public Measurable<Power> getPower() {
+            return power == null ? null : Measure.valueOf(power, SI.WATT);
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Position getPosition() {
+            return new Position(name.length());
+        }
+    }
+
+    public static class Reading {
+        private final Long count;
+        private final String label;
+        private final Boolean valid;
+
+        public Reading(Long count, String label, Boolean valid) {
+            this.count = count;
+            this.label = label;
+            this.valid = valid;
+        }
+
+        public Long getCount() {
+            return count;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Boolean getValid() {
+            return valid;
+        }
+    }
+
+    private static String getString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, Charset.forName("UTF-8"));
+    }
+
+    private static void skipHeader(ByteBuffer data) {
+        data.position(2 * 4);
+        for (int count = data.getInt(); count > 0; count--) {
+            data.get();
+            getString(data);
+        }
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        StringWriter writer = new StringWriter();
+        ColumnarBatchExporter<State> exporter = ColumnarBatchExporter.toCsv(State.class, 2, writer);
+        assertEquals(Arrays.asList("active", "mode", "name", "position.x", "power", "power.unit"),
+                     exporter.getColumnNames());
+
+        exporter.add(Observation.create(1, new State(1.5, Mode.ON, true, "a,b")));
+        exporter.add(Observation.create(2, new State(null, Mode.OFF, false, "c")));
+        assertEquals("timestamp,active,mode,name,position.x,power,power.unit\r\n" + "1,true,ON,\"a,b\",3,1.5,W\r\n"
+                     + "2,false,OFF,c,1,,\r\n", writer.toString());
+
+        exporter.add(Observation.create(3, new State(2.0, Mode.ON, true, "c")));
+        exporter.close();
+        assertEquals(4, writer.toString().split("\r\n").length);
+    }
+
+    @Test
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void testCsvMeasure() throws IOException {
+        StringWriter writer = new StringWriter();
+        ColumnarBatchExporter<Measure> exporter = ColumnarBatchExporter.toCsv(Measure.class, 10, writer);
+        assertEquals(Arrays.asList("value", "unit"), exporter.getColumnNames());
+        exporter.add(Observation.create(1, (Measure) Measure.valueOf(1.5, SI.WATT)));
+        exporter.close();
+        assertEquals("timestamp,value,unit\r\n1,1.5,W\r\n", writer.toString());
+    }
+
+    @Test
+    public void testFailedBatch() throws IOException {
+        final StringWriter target = new StringWriter();
+        Writer writer = new Writer() {
+            private int writes;
+
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                // The header is written, the first batch fails
+                if (writes++ == 1) {
+                    throw new IOException("Disk full");
+                }
+                target.write(buffer, offset, length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ColumnarBatchExporter<Double> exporter = ColumnarBatchExporter.toCsv(Double.class, 1, writer);
+        try {
+            exporter.add(Observation.create(1, 1.5));
+            fail("Expected the batch to fail");
+        } catch (IOException expected) {
+        }
+        exporter.add(Observation.create(2, 2.5));
+        exporter.close();
+        assertEquals("timestamp,value\r\n2,2.5\r\n", target.toString());
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarBatchExporter<Double> exporter = ColumnarBatchExporter.toBinary(Double.class, 10, out);
+        assertEquals(Arrays.asList("value"), exporter.getColumnNames());
+        exporter.add(Observation.create(5, 1.5));
+        exporter.add(Observation.create(6, 2.5));
+        exporter.flush();
+
+        ByteBuffer data = ByteBuffer.wrap(out.toByteArray());
+        data.position(3 * 4 + 1 + 4 + "value".length());
+        assertEquals(2, data.getInt());
+        assertEquals(5, data.getLong());
+        assertEquals(6, data.getLong());
+        assertEquals(1.5, data.getDouble(), 0);
+        assertEquals(2.5, data.getDouble(), 0);
+        assertEquals(0, data.remaining());
+    }
+
+    @Test
+    public void testBinaryNulls() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarBatchExporter<Reading> exporter = ColumnarBatchExporter.toBinary(Reading.class, 2, out);
+        assertEquals(Arrays.asList("count", "label", "valid"), exporter.getColumnNames());
+        exporter.add(Observation.create(1, new Reading(7L, "a", true)));
+        exporter.add(Observation.create(2, new Reading(null, "b", null)));
+        exporter.add(Observation.create(3, new Reading(8L, "a", false)));
+        exporter.add(Observation.create(4, new Reading(null, null, true)));
+        exporter.close();
+
+        ByteBuffer data = ByteBuffer.wrap(out.toByteArray());
+        skipHeader(data);
+        assertEquals(2, data.getInt());
+        assertEquals(1, data.getLong());
+        assertEquals(2, data.getLong());
+        // Only the first row has a count
+        assertEquals(1, data.get());
+        assertEquals(7, data.getLong());
+        data.getLong();
+        // Both labels are new
+        assertEquals(0, data.getInt());
+        assertEquals(2, data.getInt());
+        assertEquals("a", getString(data));
+        assertEquals("b", getString(data));
+        assertEquals(0, data.getInt());
+        assertEquals(1, data.getInt());
+        assertEquals(1, data.get());
+        assertEquals(-1, data.get());
+
+        assertEquals(2, data.getInt());
+        assertEquals(3, data.getLong());
+        assertEquals(4, data.getLong());
+        assertEquals(1, data.get());
+        assertEquals(8, data.getLong());
+        data.getLong();
+        // The dictionary is kept, so the second batch has no new labels
+        assertEquals(2, data.getInt());
+        assertEquals(0, data.getInt());
+        assertEquals(0, data.getInt());
+        assertEquals(-1, data.getInt());
+        assertEquals(0, data.get());
+        assertEquals(1, data.get());
+        assertEquals(0, data.remaining());
+    }
+}
@@ -0,0 +1,79 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+import javax.measure.unit.Unit;
+
+import org.flexiblepower.observation.Observation;
+import org.junit.Test;
+
+public class DeadbandFilterTest {
+    public static class State {
+        private final Measurable<Power> power;
+        private final String mode;
+
+        public State(double power, String mode) {
+            this(Measure.valueOf(power, SI.WATT), mode);
+        }
+
+        public State(Measurable<Power> power, String mode) {
+            this.power = power;
+            this.mode = mode;
+        }
+
+        @ObservationAttribute(unit = "W", deadband = 10)
+        public Measurable<Power> getPower() {
+            return power;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+    }
+
+    @Test
+    public void testAttributes() {
+        DeadbandFilter<State> filter = DeadbandFilter.create(State.class).maxSilence(1000).build();
+
+        assertTrue(filter.accept(Observation.create(0, new State(100, "on"))));
+        assertFalse(filter.accept(Observation.create(100, new State(109, "on"))));
+        assertFalse(filter.accept(Observation.create(200, new State(91, "on"))));
+        assertTrue(filter.accept(Observation.create(300, new State(111, "on"))));
+        assertTrue(filter.accept(Observation.create(400, new State(111, "off"))));
+        assertFalse(filter.accept(Observation.create(500, new State(111, "off"))));
+        assertTrue(filter.accept(Observation.create(1400, new State(111, "off"))));
+
+        assertEquals(4, filter.getPublishedCount());
+        assertEquals(3, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void testUnitChange() {
+        DeadbandFilter<State> filter = DeadbandFilter.create(State.class).build();
+        Unit<Power> kilowatt = SI.KILO(SI.WATT);
+
+        // The deadband is 10 W, also when the measurements are in kW
+        assertTrue(filter.accept(Observation.create(0, new State(Measure.valueOf(1.0, kilowatt), "on"))));
+        assertFalse(filter.accept(Observation.create(1, new State(Measure.valueOf(1.005, kilowatt), "on"))));
+        assertTrue(filter.accept(Observation.create(2, new State(Measure.valueOf(1.02, kilowatt), "on"))));
+        assertFalse(filter.accept(Observation.create(3, new State(1025, "on"))));
+        assertTrue(filter.accept(Observation.create(4, new State(1031, "on"))));
+        assertFalse(filter.accept(Observation.create(5, new State(Measure.valueOf(1.035, kilowatt), "on"))));
+    }
+
+    @Test
+    public void testRelativeValue() {
+        DeadbandFilter<Double> filter = DeadbandFilter.create(Double.class).relative(DeadbandFilter.VALUE, 0.1).build();
+
+        assertTrue(filter.accept(Observation.create(0, 100.0)));
+        assertFalse(filter.accept(Observation.create(1, 90.0)));
+        assertTrue(filter.accept(Observation.create(2, 89.0)));
+        assertFalse(filter.accept(Observation.create(3, 81.0)));
+    }
+}
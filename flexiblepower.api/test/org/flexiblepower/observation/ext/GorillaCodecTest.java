@@ -0,0 +1,104 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+
+import javax.measure.quantity.Length;
+import javax.measure.quantity.Power;
+
+import javax.measure.unit.SI;
+
+import org.flexiblepower.observation.DoubleObservation;
+import org.flexiblepower.observation.ext.GorillaCodec.DoubleDecoder;
+import org.flexiblepower.observation.ext.GorillaCodec.DoubleEncoder;
+import org.flexiblepower.observation.ext.GorillaCodec.SeriesDecoder;
+import org.flexiblepower.observation.ext.GorillaCodec.SeriesEncoder;
+import org.flexiblepower.observation.ext.GorillaCodec.TimestampDecoder;
+import org.flexiblepower.observation.ext.GorillaCodec.TimestampEncoder;
+import org.junit.Test;
+
+public class GorillaCodecTest {
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(1);
+        long[] times = new long[1000];
+        double[] values = new double[times.length];
+        for (int ix = 0; ix < times.length; ix++) {
+            times[ix] = ix == 0 ? 1400000000000L : times[ix - 1] + (random.nextInt(10) == 0 ? random.nextInt(100000)
+                                                                                           : 1000);
+            values[ix] = random.nextInt(3) == 0 ? random.nextGaussian() : Math.round(random.nextDouble() * 10);
+        }
+        values[1] = Double.NaN;
+        values[2] = Double.NEGATIVE_INFINITY;
+
+        ByteBuffer timeBuffer = ByteBuffer.allocate(16 * times.length);
+        ByteBuffer valueBuffer = ByteBuffer.allocate(16 * times.length);
+        TimestampEncoder timeEncoder = new TimestampEncoder(timeBuffer);
+        DoubleEncoder valueEncoder = new DoubleEncoder(valueBuffer);
+        for (int ix = 0; ix < times.length; ix++) {
+            assertTrue(timeEncoder.encode(times[ix]));
+            assertTrue(valueEncoder.encode(values[ix]));
+        }
+        timeEncoder.finish();
+        valueEncoder.finish();
+        timeBuffer.flip();
+        valueBuffer.flip();
+
+        TimestampDecoder timeDecoder = new TimestampDecoder(timeBuffer);
+        DoubleDecoder valueDecoder = new DoubleDecoder(valueBuffer);
+        for (int ix = 0; ix < times.length; ix++) {
+            assertTrue(timeDecoder.next());
+            assertEquals(times[ix], timeDecoder.getTimestamp());
+            assertEquals(Double.doubleToLongBits(values[ix]), Double.doubleToLongBits(valueDecoder.next()));
+        }
+        assertFalse(timeDecoder.next());
+    }
+
+    @Test
+    public void testSeries() {
+        SeriesEncoder encoder = new SeriesEncoder(256);
+        int count = 0;
+        while (encoder.add(DoubleObservation.<Power> create(count * 1000L, 1000 + count % 4, SI.WATT))) {
+            count++;
+        }
+        assertTrue(encoder.getKeys().contains("value"));
+        assertTrue(count > 100);
+
+        Map<String, ByteBuffer> columns = encoder.getColumns();
+        assertTrue(columns.get("value").remaining() <= 256);
+        SeriesDecoder decoder = new SeriesDecoder(encoder.getTimestamps(), columns);
+        for (int ix = 0; ix < count; ix++) {
+            assertTrue(decoder.next());
+            assertEquals(ix * 1000L, decoder.getTimestamp());
+            assertEquals(1000 + ix % 4, decoder.getValue("value"), 0);
+        }
+        assertFalse(decoder.next());
+    }
+
+    @Test
+    public void testSeriesUnits() {
+        SeriesEncoder encoder = new SeriesEncoder(256);
+        assertTrue(encoder.add(DoubleObservation.<Power> create(0, 1.5, SI.KILO(SI.WATT))));
+        assertTrue(encoder.add(DoubleObservation.<Power> create(1000, 500, SI.WATT)));
+        assertEquals("kW", encoder.getUnits().get("value"));
+        try {
+            encoder.add(DoubleObservation.<Length> create(2000, 1, SI.METRE));
+            fail("Expected the unit to be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(2, encoder.size());
+
+        SeriesDecoder decoder = new SeriesDecoder(encoder.getTimestamps(), encoder.getColumns());
+        assertTrue(decoder.next());
+        assertEquals(1.5, decoder.getValue("value"), 0);
+        assertTrue(decoder.next());
+        assertEquals(0.5, decoder.getValue("value"), 1e-12);
+        assertFalse(decoder.next());
+    }
+}
@@ -0,0 +1,84 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ext.LastValueTable.Changes;
+import org.junit.Test;
+
+public class LastValueTableTest {
+    static class Provider extends AbstractObservationProvider<Double> {
+    }
+
+    /**
+     * A provider that publishes a new observation right after its last observation has been read.
+     */
+    static class RacingProvider extends Provider {
+        @Override
+        public Observation<? extends Double> getLastObservation() {
+            Observation<? extends Double> last = super.getLastObservation();
+            publish(Observation.create(2, 2.0));
+            return last;
+        }
+    }
+
+    @Test
+    public void testChangesSince() {
+        LastValueTable table = new LastValueTable(OsgiStubs.context(), "(a=b)");
+        Provider pv = new Provider();
+        Provider battery = new Provider();
+        pv.publish(Observation.create(0, 1.0));
+        table.attach("pv", pv);
+        table.attach("battery", battery);
+        assertEquals(2, table.size());
+
+        Changes snapshot = table.snapshot();
+        assertEquals(1, snapshot.getObservations().size());
+        assertEquals(1.0, snapshot.getObservations().get("pv").getValue());
+
+        battery.publish(Observation.create(1, 2.0));
+        battery.publish(Observation.create(2, 3.0));
+        Changes changes = table.changesSince(snapshot.getVersion());
+        assertEquals(1, changes.getObservations().size());
+        assertEquals(3.0, changes.getObservations().get("battery").getValue());
+        assertEquals(3.0, table.getLastObservation("battery").getValue());
+
+        assertTrue(table.changesSince(changes.getVersion()).isEmpty());
+        assertEquals(2, table.snapshot().getObservations().size());
+    }
+
+    @Test
+    public void testAttachOlder() {
+        LastValueTable table = new LastValueTable(OsgiStubs.context());
+        Provider first = new Provider();
+        Provider second = new Provider();
+        first.publish(Observation.create(2, 1.0));
+        second.publish(Observation.create(1, 2.0));
+        table.attach("pv", first);
+        long version = table.getVersion();
+
+        // The older observation of the second provider does not replace the newer one
+        table.attach("pv", second);
+        assertEquals(1.0, table.getLastObservation("pv").getValue());
+        assertEquals(version, table.getVersion());
+
+        Provider third = new Provider();
+        third.publish(Observation.create(3, 3.0));
+        table.attach("pv", third);
+        assertEquals(3.0, table.getLastObservation("pv").getValue());
+
+        // Observations that are published after attaching always replace the last one
+        second.publish(Observation.create(1, 4.0));
+        assertEquals(4.0, table.getLastObservation("pv").getValue());
+    }
+
+    @Test
+    public void testPublishWhileAttaching() {
+        LastValueTable table = new LastValueTable(OsgiStubs.context());
+        Provider provider = new RacingProvider();
+        provider.publish(Observation.create(1, 1.0));
+        table.attach("pv", provider);
+        assertEquals(2.0, table.getLastObservation("pv").getValue());
+    }
+}
@@ -0,0 +1,54 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.flexiblepower.observation.Observation;
+import org.junit.Test;
+
+public class ObservationHistoryTest {
+    private static List<Long> times(List<Observation<? extends Integer>> observations) {
+        List<Long> result = new ArrayList<Long>();
+        for (Observation<? extends Integer> observation : observations) {
+            result.add(observation.getObservedAtMillis());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSize() {
+        ObservationHistory<Integer> history = ObservationHistory.ofSize(3);
+        assertEquals(0, history.getObservations().size());
+        assertNull(history.getObservationAt(100));
+
+        for (int time = 10; time <= 50; time += 10) {
+            history.add(Observation.create(time, time));
+        }
+        assertFalse(history.add(Observation.create(40, 0)));
+
+        assertEquals(Arrays.asList(30L, 40L, 50L), times(history.getObservations()));
+        assertEquals(Arrays.asList(40L), times(history.getObservations(31, 50)));
+        assertEquals(Arrays.asList(30L, 40L), times(history.getObservations(0, 41)));
+        assertEquals(40L, history.getObservationAt(49).getObservedAtMillis());
+        assertEquals(50L, history.getObservationAt(50).getObservedAtMillis());
+        assertNull(history.getObservationAt(29));
+    }
+
+    @Test
+    public void testDuration() {
+        ObservationHistory<Integer> history = ObservationHistory.ofDuration(100, 1000);
+        for (int time = 0; time < 500; time++) {
+            history.add(Observation.create(time, time));
+        }
+        List<Observation<? extends Integer>> observations = history.getObservations();
+        assertEquals(101, observations.size());
+        assertEquals(399L, observations.get(0).getObservedAtMillis());
+        assertEquals(499L, observations.get(100).getObservedAtMillis());
+        assertEquals(10, history.getObservations(400, 410).size());
+    }
+}
@@ -0,0 +1,190 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.flexiblepower.observation.DoubleObservation;
+import org.flexiblepower.observation.Observation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObservationLogTest {
+    public static class State {
+        private final double power;
+        private final boolean on;
+
+        public State(double power, boolean on) {
+            this.power = power;
+            this.on = on;
+        }
+
+        public double getPower() {
+            return power;
+        }
+
+        public boolean isOn() {
+            return on;
+        }
+    }
+
+    public static class Counter {
+        private final long count;
+
+        public Counter(long count) {
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("observationlog", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testReplayAndSeek() throws IOException {
+        ObservationLog log = ObservationLog.create(directory).segmentSize(4096).open();
+        for (int ix = 0; ix < 1000; ix++) {
+            log.consume(null, Observation.create(ix * 10, new State(ix, ix % 2 == 0)));
+            log.consume(null, DoubleObservation.<Power> create(ix * 10 + 5, ix, SI.WATT));
+        }
+        log.close();
+        assertTrue(directory.listFiles().length > 1);
+
+        log = ObservationLog.create(directory).open();
+        assertEquals(2, log.getSchemas().size());
+        ObservationLog.Cursor cursor = log.cursor(Long.MIN_VALUE);
+        int count = 0;
+        while (cursor.next()) {
+            count++;
+        }
+        assertEquals(2000, count);
+
+        cursor = log.cursor(5000);
+        assertTrue(cursor.next());
+        assertEquals(5000, cursor.getTimestamp());
+        assertEquals(State.class.getName(), cursor.getSchema().getTypeName());
+        assertEquals(500.0, cursor.getValueMap().get("power"));
+        assertEquals(true, cursor.getValueMap().get("on"));
+        assertTrue(cursor.next());
+        assertEquals(5005, cursor.getTimestamp());
+        assertEquals(500.0, cursor.getValueMap().get("value"));
+        assertEquals("W", cursor.getValueMap().get("unit"));
+        log.close();
+    }
+
+    @Test
+    public void testSmallSegments() throws IOException {
+        // Each segment holds the schema (97 bytes) and 3 records (25 bytes each) after its header (8 bytes), which
+        // leaves 10 bytes: less than the header of the next record
+        ObservationLog log = ObservationLog.create(directory).segmentSize(190).open();
+        for (int ix = 0; ix < 100; ix++) {
+            log.consume(null, Observation.create(ix, new Counter(ix)));
+        }
+        ObservationLog.Cursor cursor = log.cursor(Long.MIN_VALUE);
+        for (int ix = 0; ix < 100; ix++) {
+            assertTrue(cursor.next());
+            assertEquals(ix, cursor.getTimestamp());
+            assertEquals((long) ix, cursor.getValueMap().get("count"));
+        }
+        assertFalse(cursor.next());
+        log.close();
+    }
+
+    @Test
+    public void testCursorBeforeFirstWrite() throws IOException {
+        ObservationLog log = ObservationLog.create(directory).segmentSize(1024).open();
+        ObservationLog.Cursor cursor = log.cursor(Long.MIN_VALUE);
+        assertFalse(cursor.next());
+        for (int ix = 0; ix < 100; ix++) {
+            log.consume(null, Observation.create(ix, new State(ix, true)));
+        }
+        for (int ix = 0; ix < 100; ix++) {
+            assertTrue(cursor.next());
+            assertEquals(ix, cursor.getTimestamp());
+        }
+        assertFalse(cursor.next());
+        log.close();
+    }
+
+    @Test
+    public void testConcurrentReading() throws Exception {
+        final int count = 20000;
+        final ObservationLog log = ObservationLog.create(directory).segmentSize(4096).open();
+        ObservationLog.Cursor cursor = log.cursor(Long.MIN_VALUE);
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                for (int ix = 0; ix < count; ix++) {
+                    log.consume(null, Observation.create(ix, new ObservationLogTest.State(ix, ix % 2 == 0)));
+                }
+            }
+        };
+        writer.start();
+
+        // Every record must be read exactly once and completely, also around the roll-overs
+        long deadline = System.currentTimeMillis() + 10000;
+        int read = 0;
+        while (read < count && System.currentTimeMillis() < deadline) {
+            if (cursor.next()) {
+                assertEquals(read, cursor.getTimestamp());
+                assertEquals((double) read, cursor.getValueMap().get("power"));
+                read++;
+            }
+        }
+        writer.join();
+        assertEquals(count, read);
+        assertFalse(cursor.next());
+        log.close();
+    }
+
+    @Test
+    public void testRetention() throws IOException {
+        ObservationLog log = ObservationLog.create(directory).segmentSize(1024).maxSegments(2).open();
+        for (int ix = 0; ix < 1000; ix++) {
+            log.consume(null, Observation.create(ix, new State(ix, true)));
+        }
+        assertEquals(2, directory.listFiles().length);
+
+        ObservationLog.Cursor cursor = log.cursor(0);
+        assertTrue(cursor.next());
+        long first = cursor.getTimestamp();
+        assertTrue(first > 0);
+        long last = first;
+        while (cursor.next()) {
+            last = cursor.getTimestamp();
+        }
+        assertEquals(999, last);
+        assertFalse(cursor.next());
+
+        log.consume(null, Observation.create(1000, new State(1000, false)));
+        assertTrue(cursor.next());
+        assertEquals(1000, cursor.getTimestamp());
+        log.close();
+    }
+}
@@ -0,0 +1,80 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.flexiblepower.observation.ObservationProvider;
+import org.flexiblepower.observation.ext.ObservationProviderIndex.Snapshot;
+import org.flexiblepower.observation.ext.ObservationProviderIndex.Tracked;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+
+public class ObservationProviderIndexTest {
+    static class Provider extends AbstractObservationProvider<Double> {
+    }
+
+    private static ServiceReference<?> reference(String observationOf, String observedBy, String... types) {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF, observationOf);
+        properties.put(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY, observedBy);
+        properties.put(ObservationProviderRegistrationHelper.KEY_OBSERVATION_TYPE, types);
+        return OsgiStubs.reference(properties);
+    }
+
+    @Test
+    public void testLookups() {
+        ObservationProviderIndex index = new ObservationProviderIndex(OsgiStubs.context());
+        Provider first = new Provider();
+        Provider second = new Provider();
+        Tracked tracked = index.track(reference("pv", "driver", "java.lang.Double", "java.lang.Number"), first);
+        index.track(reference("battery", "driver", "java.lang.Double"), second);
+
+        assertSame(first, index.getProvider("pv", "driver"));
+        assertNull(index.getProvider("pv", "other"));
+        assertEquals(Arrays.asList(first), index.getProvidersOf("pv"));
+        assertEquals(2, index.getProvidersBy("driver").size());
+        assertEquals(2, index.getProvidersOfType(Double.class).size());
+        assertEquals(Arrays.asList(first), index.getProvidersOfType("java.lang.Number"));
+
+        Snapshot snapshot = index.snapshot();
+        index.untrack(tracked);
+        assertNull(index.getProvider("pv", "driver"));
+        assertEquals(0, index.getProvidersOfType(Number.class).size());
+        assertEquals(1, index.getProvidersBy("driver").size());
+
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.getVersion());
+        assertSame(first, snapshot.getProvider("pv", "driver"));
+        assertEquals(3, index.getVersion());
+    }
+
+    @Test
+    public void testMissingProperties() {
+        ObservationProviderIndex index = new ObservationProviderIndex(OsgiStubs.context());
+        Provider anonymous = new Provider();
+        Provider unobserved = new Provider();
+        Provider complete = new Provider();
+        Tracked tracked = index.track(reference(null, "driver"), anonymous);
+        index.track(reference("pv", null), unobserved);
+        index.track(reference("pv", "driver"), complete);
+
+        assertSame(complete, index.getProvider("pv", "driver"));
+        assertNull(index.getProvider("pv", null));
+        assertNull(index.getProvider(null, "driver"));
+        assertNull(index.getProvider("pv", "null"));
+
+        Snapshot snapshot = index.snapshot();
+        assertEquals(3, snapshot.size());
+        assertEquals(Arrays.asList(anonymous, unobserved, complete), snapshot.getProviders());
+        assertNull(snapshot.getProvider(null, "driver"));
+
+        index.untrack(tracked);
+        assertEquals(Arrays.asList(unobserved, complete), index.snapshot().getProviders());
+        assertEquals(3, snapshot.size());
+    }
+}
@@ -0,0 +1,75 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.flexiblepower.observation.ObservationProvider;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class ObservationProviderRegistrationHelperTest {
+    public static class State {
+        @ObservationAttribute(unit = "W")
+        public double getPower() {
+            return 0;
+        }
+
+        public boolean isOn() {
+            return false;
+        }
+    }
+
+    @Test
+    public void testRegisterAll() {
+        OsgiStubs registry = new OsgiStubs();
+        BundleContext context = registry.stub(BundleContext.class);
+        ObservationProviderRegistrationHelper helper = new ObservationProviderRegistrationHelper(context);
+        helper.observationType(State.class);
+
+        Map<Object, String> providers = new LinkedHashMap<Object, String>();
+        providers.put("first", "a");
+        providers.put(Integer.valueOf(2), "b");
+        assertEquals(2, helper.registerAll(providers).size());
+        assertArrayEquals(new String[] { ObservationProvider.class.getName() }, registry.classes.get(0));
+
+        Dictionary<?, ?> first = registry.registered.get(0);
+        Dictionary<?, ?> second = registry.registered.get(1);
+        assertEquals("a", first.get(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF));
+        assertEquals(String.class.getName(), first.get(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY));
+        assertEquals("b", second.get(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF));
+        assertEquals(Integer.class.getName(), second.get(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY));
+
+        String type = ObservationProviderRegistrationHelper.KEY_OBSERVATION_TYPE;
+        assertEquals("double", first.get(type + ".power"));
+        assertEquals("W", first.get(type + ".power.unit"));
+        assertEquals("boolean", second.get(type + ".on"));
+        assertArrayEquals(new String[] { State.class.getName() }, (String[]) first.get(type));
+        assertNotSame(first.get(type), second.get(type));
+    }
+
+    @Test
+    public void testRegisterAllFailure() {
+        OsgiStubs registry = new OsgiStubs();
+        registry.capacity = 2;
+        ObservationProviderRegistrationHelper helper =
+                new ObservationProviderRegistrationHelper(registry.stub(BundleContext.class));
+
+        Map<Object, String> providers = new LinkedHashMap<Object, String>();
+        providers.put("first", "a");
+        providers.put("second", "b");
+        providers.put("third", "c");
+        try {
+            helper.registerAll(providers);
+            fail("Expected the third registration to fail");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(Arrays.asList("first", "second"), registry.unregistered);
+    }
+}
@@ -0,0 +1,107 @@
+package org.flexiblepower.observation.ext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Stubs of the OSGi framework interfaces, made with dynamic proxies. The stubs give their properties for
+ * <code>getProperty</code> and record the services that are registered through them. All other methods return
+ * <code>null</code>.
+ */
+final class OsgiStubs implements InvocationHandler {
+    /**
+     * The registration of a single service, which records when it is unregistered.
+     */
+    private final class Registration implements InvocationHandler {
+        private final Object service;
+
+        Registration(Object service) {
+            this.service = service;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObject(proxy, method, args);
+            } else if ("unregister".equals(method.getName())) {
+                unregistered.add(service);
+            }
+            return null;
+        }
+    }
+
+    static BundleContext context() {
+        return new OsgiStubs().stub(BundleContext.class);
+    }
+
+    static ServiceReference<?> reference(Map<String, Object> properties) {
+        return new OsgiStubs(properties).stub(ServiceReference.class);
+    }
+
+    private static Object invokeObject(Object proxy, Method method, Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+        return "Stub of " + proxy.getClass().getInterfaces()[0].getName();
+    }
+
+    final Map<String, Object> properties;
+    final List<String[]> classes = new ArrayList<String[]>();
+    final List<Object> services = new ArrayList<Object>();
+    final List<Dictionary<?, ?>> registered = new ArrayList<Dictionary<?, ?>>();
+    final List<Object> unregistered = new ArrayList<Object>();
+    /**
+     * The number of services that can be registered, after which <code>registerService</code> fails.
+     */
+    int capacity = Integer.MAX_VALUE;
+
+    OsgiStubs() {
+        this(Collections.<String, Object> emptyMap());
+    }
+
+    OsgiStubs(Map<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, this));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObject(proxy, method, args);
+        } else if ("getProperty".equals(name)) {
+            return properties.get(args[0]);
+        } else if ("createFilter".equals(name)) {
+            return stub(Filter.class);
+        } else if ("getBundleContext".equals(name)) {
+            return stub(BundleContext.class);
+        } else if ("registerService".equals(name)) {
+            if (services.size() == capacity) {
+                throw new IllegalStateException("The registry is full");
+            }
+            classes.add(args[0] instanceof String[] ? (String[]) args[0] : new String[] { String.valueOf(args[0]) });
+            services.add(args[1]);
+            registered.add((Dictionary<?, ?>) args[2]);
+            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                          new Class<?>[] { ServiceRegistration.class },
+                                          new Registration(args[1]));
+        }
+        return null;
+    }
+}
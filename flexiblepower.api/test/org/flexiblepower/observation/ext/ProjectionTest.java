@@ -0,0 +1,108 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.measure.Measurable;
+import javax.measure.Measure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+import org.junit.Test;
+
+public class ProjectionTest {
+    public static class State {
+        private final double power;
+        private final String mode;
+
+        public State(double power, String mode) {
+            this.power = power;
+            this.mode = mode;
+        }
+
+        public Measurable<Power> getPower() {
+            return Measure.valueOf(power, SI.WATT);
+        }
+
+        public String getMode() {
+            return mode;
+        }
+    }
+
+    static class Provider extends AbstractObservationProvider<State> {
+    }
+
+    static class Consumer implements ObservationConsumer<ProjectedRecord> {
+        final List<ProjectedRecord> records = new ArrayList<ProjectedRecord>();
+
+        @Override
+        public void consume(ObservationProvider<? extends ProjectedRecord> source,
+                            Observation<? extends ProjectedRecord> observation) {
+            records.add(observation.getValue());
+        }
+    }
+
+    @Test
+    public void testSharedProjection() {
+        Provider provider = new Provider();
+        ObservationProvider<ProjectedRecord> projected = provider.project(Projection.of(State.class, "power", "mode"));
+        assertSame(projected, provider.project(Projection.of(State.class, "power", "mode")));
+
+        Consumer first = new Consumer();
+        Consumer second = new Consumer();
+        projected.subscribe(first);
+        projected.subscribe(second);
+        provider.publish(Observation.create(1, new State(100, "on")));
+
+        assertEquals(1, first.records.size());
+        ProjectedRecord record = first.records.get(0);
+        assertSame(record, second.records.get(0));
+        assertEquals(100.0, record.get("power"));
+        assertEquals("on", record.get(1));
+        assertEquals(100.0, projected.getLastObservation().getValue().get(0));
+
+        projected.unsubscribe(first);
+        projected.unsubscribe(second);
+        provider.publish(Observation.create(2, new State(200, "off")));
+        assertEquals(1, first.records.size());
+        assertEquals(1, second.records.size());
+    }
+
+    @Test
+    public void testEviction() {
+        Provider provider = new Provider();
+        ObservationProvider<ProjectedRecord> projected = provider.project(Projection.of(State.class, "mode"));
+        Consumer consumer = new Consumer();
+        projected.subscribe(consumer);
+        assertSame(projected, provider.project(Projection.of(State.class, "mode")));
+
+        projected.unsubscribe(consumer);
+        ObservationProvider<ProjectedRecord> next = provider.project(Projection.of(State.class, "mode"));
+        assertNotSame(projected, next);
+
+        // The forgotten provider still works when it is subscribed to again
+        projected.subscribe(consumer);
+        provider.publish(Observation.create(1, new State(100, "on")));
+        assertEquals(1, consumer.records.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAttribute() {
+        // A String can not have any other attributes
+        Projection.of(State.class, "power", "mode.unknown");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnselectedAttribute() {
+        ProjectedRecord record = Projection.of(State.class, "power").apply(new State(1, "on"));
+        assertEquals(1.0, record.get("power"));
+        record.get("mode");
+    }
+}
@@ -0,0 +1,49 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.flexiblepower.observation.Observation;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+
+public class SimpleObservationProviderTest {
+    @Test
+    public void testBuildAll() {
+        OsgiStubs registry = new OsgiStubs();
+        SimpleObservationProvider.Builder<Double> builder =
+                new SimpleObservationProvider.Builder<Double>(registry.stub(Bundle.class), Double.class);
+        List<SimpleObservationProvider<Double>> providers = builder.observationOf("ignored")
+                                                                   .setProperty("site", "home")
+                                                                   .buildAll(Arrays.asList("pv", "battery"));
+
+        assertEquals(2, providers.size());
+        assertEquals(providers, registry.services);
+        assertEquals("pv", registry.registered.get(0).get(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF));
+        assertEquals("battery",
+                     registry.registered.get(1).get(ObservationProviderRegistrationHelper.KEY_OBSERVATION_OF));
+        assertEquals("home", registry.registered.get(1).get("site"));
+        assertEquals(registry.registered.get(0).get(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY),
+                     registry.registered.get(1).get(ObservationProviderRegistrationHelper.KEY_OBSERVED_BY));
+
+        // The providers are independent of each other
+        providers.get(0).publish(Observation.create(1, 2.0));
+        assertEquals(2.0, providers.get(0).getLastObservation().getValue(), 0);
+        assertEquals(null, providers.get(1).getLastObservation());
+
+        providers.get(1).close();
+        assertEquals(1, registry.unregistered.size());
+        assertSame(providers.get(1), registry.unregistered.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBuildAllWithDeadbandFilter() {
+        SimpleObservationProvider.Builder<Double> builder =
+                new SimpleObservationProvider.Builder<Double>(new OsgiStubs().stub(Bundle.class), Double.class);
+        builder.deadbandFilter(DeadbandFilter.create(Double.class).maxSilence(1000).build());
+        builder.buildAll(Arrays.asList("pv"));
+    }
+}
@@ -0,0 +1,38 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SubscriberRegistryTest {
+    @Test
+    public void testAddRemove() {
+        SubscriberRegistry<Integer> registry = new SubscriberRegistry<Integer>();
+        for (int ix = 0; ix < 1000; ix++) {
+            assertTrue(registry.add(ix));
+        }
+        assertFalse(registry.add(5));
+        List<Integer> snapshot = registry.snapshot();
+        assertSame(snapshot, registry.snapshot());
+        assertEquals(1000, snapshot.size());
+
+        for (int ix = 0; ix < 1000; ix += 2) {
+            assertTrue(registry.remove(ix));
+        }
+        assertFalse(registry.remove(0));
+        assertEquals(1000, snapshot.size());
+        assertEquals(500, registry.size());
+
+        HashSet<Integer> remaining = new HashSet<Integer>(registry.snapshot());
+        assertEquals(500, remaining.size());
+        for (int ix = 1; ix < 1000; ix += 2) {
+            assertTrue(remaining.contains(ix));
+        }
+    }
+}
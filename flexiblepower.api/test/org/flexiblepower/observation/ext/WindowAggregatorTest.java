@@ -0,0 +1,82 @@
+package org.flexiblepower.observation.ext;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.measure.Measure;
+import javax.measure.quantity.Power;
+import javax.measure.unit.SI;
+
+import org.flexiblepower.observation.DoubleObservation;
+import org.flexiblepower.observation.Observation;
+import org.flexiblepower.observation.ObservationConsumer;
+import org.flexiblepower.observation.ObservationProvider;
+import org.flexiblepower.observation.ext.WindowAggregator.Aggregate;
+import org.junit.Test;
+
+public class WindowAggregatorTest {
+    static class Collector implements ObservationConsumer<Aggregate<Power>> {
+        final List<Observation<? extends Aggregate<Power>>> observations =
+                new ArrayList<Observation<? extends Aggregate<Power>>>();
+
+        @Override
+        public void consume(ObservationProvider<? extends Aggregate<Power>> source,
+                            Observation<? extends Aggregate<Power>> observation) {
+            observations.add(observation);
+        }
+    }
+
+    @Test
+    public void testTumbling() {
+        WindowAggregator<Power> aggregator = WindowAggregator.tumbling(SI.WATT, 1000);
+        Collector collector = new Collector();
+        aggregator.subscribe(collector);
+
+        aggregator.consume(null, DoubleObservation.create(0, 1, SI.KILO(SI.WATT)));
+        aggregator.consume(null, Observation.create(500, Measure.valueOf(3000.0, SI.WATT)));
+        aggregator.consume(null, DoubleObservation.create(1000, 2000, SI.WATT));
+        assertEquals(1, collector.observations.size());
+
+        Observation<? extends Aggregate<Power>> first = collector.observations.get(0);
+        assertEquals(1000, first.getObservedAtMillis());
+        Aggregate<Power> aggregate = first.getValue();
+        assertEquals(2, aggregate.getCount());
+        assertEquals(1000, aggregate.getMinimum().doubleValue(SI.WATT), 1e-9);
+        assertEquals(3000, aggregate.getMaximum().doubleValue(SI.WATT), 1e-9);
+        assertEquals(2000, aggregate.getMean().doubleValue(SI.WATT), 1e-9);
+        assertEquals(3000, aggregate.getLast().doubleValue(SI.WATT), 1e-9);
+        assertEquals(2000, aggregate.getEnergy().doubleValue(SI.JOULE), 1e-9);
+
+        aggregator.advanceTo(5000);
+        assertEquals(2, collector.observations.size());
+        aggregate = collector.observations.get(1).getValue();
+        assertEquals(1, aggregate.getCount());
+        assertEquals(2000, aggregate.getEnergy().doubleValue(SI.JOULE), 1e-9);
+    }
+
+    @Test
+    public void testSliding() {
+        WindowAggregator<Power> aggregator = WindowAggregator.sliding(SI.WATT, 3000, 1000);
+        Collector collector = new Collector();
+        aggregator.subscribe(collector);
+
+        double[] values = { 5, 1, 4, 2, 3 };
+        for (int ix = 0; ix < values.length; ix++) {
+            aggregator.consume(null, DoubleObservation.create(ix * 1000, values[ix], SI.WATT));
+        }
+        aggregator.advanceTo(5000);
+
+        double[] minimums = { 5, 1, 1, 1, 2 };
+        double[] maximums = { 5, 5, 5, 4, 4 };
+        double[] energies = { 5, 6, 10, 7, 9 };
+        assertEquals(5, collector.observations.size());
+        for (int ix = 0; ix < minimums.length; ix++) {
+            Aggregate<Power> aggregate = collector.observations.get(ix).getValue();
+            assertEquals(minimums[ix], aggregate.getMinimum().doubleValue(SI.WATT), 1e-9);
+            assertEquals(maximums[ix], aggregate.getMaximum().doubleValue(SI.WATT), 1e-9);
+            assertEquals(energies[ix], aggregate.getEnergy().doubleValue(SI.JOULE), 1e-9);
+        }
+    }
+}